@@ -0,0 +1,319 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.actor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+/**
+ * Test the lock-free {@link org.d3.actor.Future}.
+ * 
+ * @author Guilhelm Savin
+ */
+public class TestFuture {
+	static class Recorder implements FutureListener {
+		final ArrayList<String> events;
+		final String name;
+
+		Recorder(ArrayList<String> events, String name) {
+			this.events = events;
+			this.name = name;
+		}
+
+		public void futureAvailable(Future future) {
+			events.add(name + "=" + future.value());
+		}
+	}
+
+	/*
+	 * Count the listeners registered in a future which is not available.
+	 */
+	static int countListeners(Future future) throws Exception {
+		Field state = Future.class.getDeclaredField("state");
+		state.setAccessible(true);
+
+		Object s = state.get(future);
+		int count = 0;
+
+		while (s != null) {
+			Field next = s.getClass().getDeclaredField("next");
+			next.setAccessible(true);
+
+			count++;
+			s = next.get(s);
+		}
+
+		return count;
+	}
+
+	@Test
+	public void testInit() throws CallException {
+		Future future = new Future();
+
+		assertFalse(future.isAvailable());
+
+		try {
+			future.get();
+			fail("value available");
+		} catch (ValueNotAvailableException e) {
+			// Expected
+		}
+
+		future.init("value");
+
+		assertTrue(future.isAvailable());
+		assertEquals("value", future.get());
+	}
+
+	@Test
+	public void testCallException() {
+		Future future = new Future();
+		CallException e = new CallException("failure");
+
+		future.init(e);
+
+		try {
+			future.get();
+			fail("exception not thrown");
+		} catch (CallException thrown) {
+			assertSame(e, thrown);
+		}
+	}
+
+	@Test
+	public void testListenersOrder() {
+		ArrayList<String> events = new ArrayList<String>();
+		Future future = new Future();
+
+		future.onComplete(new Recorder(events, "a"));
+		future.onComplete(new Recorder(events, "b"));
+		future.onComplete(new Recorder(events, "c"));
+
+		assertTrue(events.isEmpty());
+
+		future.init(1);
+
+		assertEquals("[a=1, b=1, c=1]", events.toString());
+
+		future.init(2);
+
+		assertEquals("[a=1, b=1, c=1]", events.toString());
+	}
+
+	@Test
+	public void testOnCompleteAfterInit() {
+		ArrayList<String> events = new ArrayList<String>();
+		Future future = new Future();
+
+		future.init("x");
+		future.onComplete(new Recorder(events, "a"));
+
+		assertEquals("[a=x]", events.toString());
+	}
+
+	@Test(timeout = 10000)
+	public void testWaitForValue() throws Exception {
+		final Future future = new Future();
+
+		Thread t = new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(50);
+				} catch (InterruptedException e) {
+					return;
+				}
+
+				future.init("late");
+			}
+		};
+
+		t.start();
+		future.waitForValue();
+
+		assertEquals("late", future.get());
+		t.join();
+	}
+
+	@Test
+	public void testTimedOutWaitRemovesWaiter() throws Exception {
+		ArrayList<String> events = new ArrayList<String>();
+		Future future = new Future();
+
+		future.waitForValue(1);
+
+		assertFalse(future.isAvailable());
+		assertEquals(0, countListeners(future));
+
+		future.onComplete(new Recorder(events, "a"));
+
+		for (int i = 0; i < 10; i++)
+			future.waitForValue(1);
+
+		assertEquals(1, countListeners(future));
+
+		future.init("x");
+
+		assertEquals("[a=x]", events.toString());
+	}
+
+	@Test
+	public void testThenApply() throws CallException {
+		Future future = new Future();
+		Future next = future.thenApply(new Continuation() {
+			public Object resume(Object value) {
+				return (Integer) value + 1;
+			}
+		});
+
+		assertFalse(next.isAvailable());
+
+		future.init(1);
+
+		assertEquals(2, next.get());
+	}
+
+	@Test
+	public void testThenApplyForwardsCallException() {
+		final boolean[] resumed = { false };
+		Future future = new Future();
+		CallException e = new CallException("failure");
+		Future next = future.thenApply(new Continuation() {
+			public Object resume(Object value) {
+				resumed[0] = true;
+				return value;
+			}
+		});
+
+		future.init(e);
+
+		assertFalse(resumed[0]);
+
+		try {
+			next.get();
+			fail("exception not forwarded");
+		} catch (CallException thrown) {
+			assertSame(e, thrown);
+		}
+	}
+
+	@Test
+	public void testThenApplyFailure() {
+		final IllegalStateException failure = new IllegalStateException();
+		Future future = new Future();
+		Future next = future.thenApply(new Continuation() {
+			public Object resume(Object value) {
+				throw failure;
+			}
+		});
+
+		future.init(1);
+
+		try {
+			next.get();
+			fail("exception not thrown");
+		} catch (CallException thrown) {
+			assertSame(failure, thrown.getCause());
+		}
+	}
+
+	@Test
+	public void testThenCallForwardsCallException() {
+		Future future = new Future();
+		CallException e = new CallException("failure");
+
+		//
+		// The call must not be issued, so no actor is needed.
+		//
+		Future next = future.thenCall(null, "never");
+
+		future.init(e);
+
+		try {
+			next.get();
+			fail("exception not forwarded");
+		} catch (CallException thrown) {
+			assertSame(e, thrown);
+		}
+	}
+
+	@Test
+	public void testInitWithFuture() throws CallException {
+		Future first = new Future();
+		Future second = new Future();
+		Future third = new Future();
+
+		first.init(second);
+		second.init(third);
+
+		assertFalse(first.isAvailable());
+		assertFalse(second.isAvailable());
+
+		third.init("value");
+
+		assertEquals("value", second.get());
+		assertEquals("value", first.get());
+	}
+
+	@Test
+	public void testInitWithAvailableFuture() throws CallException {
+		Future first = new Future();
+		Future second = new Future();
+
+		second.init("value");
+		first.init(second);
+
+		assertEquals("value", first.get());
+	}
+
+	@Test
+	public void testInitWithFailedFuture() {
+		Future first = new Future();
+		Future second = new Future();
+		CallException e = new CallException("failure");
+
+		first.init(second);
+		second.init(e);
+
+		try {
+			first.get();
+			fail("exception not forwarded");
+		} catch (CallException thrown) {
+			assertSame(e, thrown);
+		}
+	}
+
+	@Test
+	public void testInitWithNull() throws CallException {
+		Future future = new Future();
+
+		future.init(null);
+
+		assertTrue(future.isAvailable());
+		assertNull(future.get());
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.actor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Test the binary and hexadecimal forms of {@link org.d3.actor.FutureId}.
+ * 
+ * @author Guilhelm Savin
+ */
+public class TestFutureId {
+	static final FutureId[] IDS = { new FutureId(0, 0), new FutureId(1, 2),
+			new FutureId(-1, -1),
+			new FutureId(Long.MIN_VALUE, Long.MAX_VALUE),
+			new FutureId(0x0123456789abcdefL, 0xfedcba9876543210L) };
+
+	@Test
+	public void testEquals() {
+		assertEquals(new FutureId(1, 2), new FutureId(1, 2));
+		assertEquals(new FutureId(1, 2).hashCode(), new FutureId(1, 2)
+				.hashCode());
+		assertFalse(new FutureId(1, 2).equals(new FutureId(2, 1)));
+		assertFalse(new FutureId(1, 2).equals(null));
+	}
+
+	@Test
+	public void testBufferRoundTrip() {
+		ByteBuffer buffer = ByteBuffer.allocate(IDS.length * FutureId.BYTES);
+
+		for (FutureId id : IDS) {
+			int position = buffer.position();
+			id.writeTo(buffer);
+			assertEquals(FutureId.BYTES, buffer.position() - position);
+		}
+
+		buffer.flip();
+
+		for (FutureId id : IDS) {
+			FutureId read = FutureId.readFrom(buffer);
+
+			assertEquals(id, read);
+			assertEquals(id.getEpoch(), read.getEpoch());
+			assertEquals(id.getCounter(), read.getCounter());
+		}
+
+		assertFalse(buffer.hasRemaining());
+	}
+
+	@Test
+	public void testHexForm() {
+		assertEquals("00000000000000000000000000000000", IDS[0].toString());
+		assertEquals("00000000000000010000000000000002", IDS[1].toString());
+		assertEquals("ffffffffffffffffffffffffffffffff", IDS[2].toString());
+		assertEquals("80000000000000007fffffffffffffff", IDS[3].toString());
+		assertEquals("0123456789abcdeffedcba9876543210", IDS[4].toString());
+
+		for (FutureId id : IDS) {
+			assertEquals(32, id.toString().length());
+			assertEquals(id, FutureId.valueOf(id.toString()));
+		}
+	}
+
+	@Test
+	public void testParse() {
+		assertNull(FutureId.valueOf(null));
+		assertNull(FutureId.valueOf(""));
+		assertNull(FutureId.valueOf(" \n"));
+		assertEquals(IDS[4], FutureId
+				.valueOf(" 0123456789ABCDEFFEDCBA9876543210\n"));
+
+		String[] invalid = { "0", "0123456789abcdef",
+				"0123456789abcdeffedcba98765432100",
+				"0123456789abcdefgedcba9876543210",
+				"-123456789abcdeffedcba9876543210" };
+
+		for (String str : invalid) {
+			try {
+				FutureId.valueOf(str);
+				fail("parsed " + str);
+			} catch (NumberFormatException e) {
+				assertTrue(e.getMessage().contains(str));
+			}
+		}
+	}
+}
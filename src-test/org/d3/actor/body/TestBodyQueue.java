@@ -0,0 +1,275 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.actor.body;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.d3.actor.Call;
+import org.d3.actor.CallException;
+import org.d3.actor.Future;
+import org.d3.actor.ScheduledTask;
+import org.d3.annotation.Priority;
+import org.junit.Test;
+
+/**
+ * Test the inbox of {@link org.d3.actor.body.BodyQueue}, written by many
+ * producers and read by a single consumer.
+ * 
+ * @author Guilhelm Savin
+ */
+public class TestBodyQueue {
+	static final int PRODUCERS = 4;
+	static final int TASKS = 20000;
+
+	static class Task extends ScheduledTask {
+		final int producer;
+		final int index;
+
+		Task(int producer, int index) {
+			super(0, TimeUnit.NANOSECONDS);
+
+			this.producer = producer;
+			this.index = index;
+		}
+
+		Task(Priority.Level priority, int index) {
+			this(0, index);
+			this.priority = priority;
+		}
+	}
+
+	static Call newCall(Priority.Level priority) {
+		Call call = new Call(null, null, TestCallRing.CALLABLE, new Future(),
+				new Object[0]);
+
+		call.setPriority(priority);
+		return call;
+	}
+
+	static void assertDropped(Call call) {
+		assertTrue(call.getFuture().isAvailable());
+
+		try {
+			call.getFuture().get();
+			fail("call not dropped");
+		} catch (CallException e) {
+			assertTrue(e instanceof MailboxOverflowException);
+		}
+	}
+
+	/*
+	 * Start the producers, each one adding TASKS tasks, and take all the tasks
+	 * in the current thread while they are produced.
+	 */
+	static Task[] produceAndTake(final BodyQueue queue)
+			throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		Task[] taken = new Task[PRODUCERS * TASKS];
+
+		for (int p = 0; p < PRODUCERS; p++) {
+			final int producer = p;
+
+			Thread t = new Thread() {
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+
+					for (int i = 0; i < TASKS; i++)
+						queue.add(new Task(producer, i));
+				}
+			};
+
+			t.setDaemon(true);
+			t.start();
+		}
+
+		start.countDown();
+
+		for (int i = 0; i < taken.length; i++)
+			taken[i] = (Task) queue.take();
+
+		return taken;
+	}
+
+	@Test(timeout = 30000)
+	public void testFifoPerProducer() throws InterruptedException {
+		BodyQueue queue = new BodyQueue();
+		Task[] taken = produceAndTake(queue);
+		int[] next = new int[PRODUCERS];
+
+		for (Task task : taken) {
+			assertEquals("order of producer " + task.producer,
+					next[task.producer], task.index);
+			next[task.producer]++;
+		}
+	}
+
+	@Test(timeout = 30000)
+	public void testConcurrentProducers() throws InterruptedException {
+		BodyQueue queue = new BodyQueue();
+		Task[] taken = produceAndTake(queue);
+		boolean[][] seen = new boolean[PRODUCERS][TASKS];
+
+		for (Task task : taken) {
+			assertTrue("duplicated task", !seen[task.producer][task.index]);
+			seen[task.producer][task.index] = true;
+		}
+
+		for (int p = 0; p < PRODUCERS; p++)
+			for (int i = 0; i < TASKS; i++)
+				assertTrue("lost task", seen[p][i]);
+
+		assertNull(queue.poll());
+		assertEquals(0, queue.size());
+	}
+
+	@Test
+	public void testLaneOrder() {
+		BodyQueue queue = new BodyQueue();
+		Task[] tasks = { new Task(Priority.Level.LOW, 0),
+				new Task(Priority.Level.NORMAL, 1),
+				new Task(Priority.Level.HIGH, 2),
+				new Task(Priority.Level.NORMAL, 3),
+				new Task(Priority.Level.LOW, 4),
+				new Task(Priority.Level.HIGH, 5) };
+
+		for (Task task : tasks)
+			queue.add(task);
+
+		assertEquals(tasks.length, queue.size());
+
+		int[] expected = { 2, 5, 1, 3, 0, 4 };
+
+		for (int i = 0; i < expected.length; i++)
+			assertSame(tasks[expected[i]], queue.poll());
+
+		assertNull(queue.poll());
+		assertEquals(0, queue.size());
+	}
+
+	@Test
+	public void testLaneOrderWhileProducing() {
+		BodyQueue queue = new BodyQueue();
+		Task low = new Task(Priority.Level.LOW, 0);
+		Task normal = new Task(Priority.Level.NORMAL, 1);
+		Task high = new Task(Priority.Level.HIGH, 2);
+
+		queue.add(low);
+		queue.add(normal);
+		assertSame(normal, queue.poll());
+
+		queue.add(high);
+		assertSame(high, queue.poll());
+		assertSame(low, queue.poll());
+		assertNull(queue.poll());
+	}
+
+	@Test
+	public void testDropOldest() {
+		BodyQueue queue = new BodyQueue();
+		queue.setCapacity(3, BodyQueue.OverflowPolicy.DROP_OLDEST);
+
+		Call normal = newCall(Priority.Level.NORMAL);
+		Call low = newCall(Priority.Level.LOW);
+		Call high = newCall(Priority.Level.HIGH);
+		Call last = newCall(Priority.Level.NORMAL);
+
+		assertTrue(queue.offer(normal));
+		assertTrue(queue.offer(low));
+		assertTrue(queue.offer(high));
+		assertTrue(queue.offer(last));
+		assertEquals(1L, queue.getOverflowCount());
+
+		//
+		// The oldest call of the lowest lane is dropped.
+		//
+		assertSame(high, queue.poll());
+		assertDropped(low);
+		assertSame(normal, queue.poll());
+		assertSame(last, queue.poll());
+		assertNull(queue.poll());
+		assertEquals(0, queue.size());
+		assertFalse(normal.getFuture().isAvailable());
+	}
+
+	@Test
+	public void testDropOldestSkipsHigh() {
+		BodyQueue queue = new BodyQueue();
+		queue.setCapacity(3, BodyQueue.OverflowPolicy.DROP_OLDEST);
+
+		Call high = newCall(Priority.Level.HIGH);
+		Call first = newCall(Priority.Level.NORMAL);
+		Call second = newCall(Priority.Level.NORMAL);
+		Call third = newCall(Priority.Level.NORMAL);
+
+		assertTrue(queue.offer(high));
+		assertTrue(queue.offer(first));
+		assertTrue(queue.offer(second));
+		assertTrue(queue.offer(third));
+
+		assertSame(high, queue.poll());
+		assertDropped(first);
+		assertSame(second, queue.poll());
+		assertSame(third, queue.poll());
+		assertNull(queue.poll());
+		assertFalse(high.getFuture().isAvailable());
+	}
+
+	@Test
+	public void testDropOldestInRing() {
+		BodyQueue queue = new BodyQueue();
+		queue.setCapacity(1, BodyQueue.OverflowPolicy.DROP_OLDEST);
+		queue.setRing(4);
+
+		Future first = new Future();
+		Future second = new Future();
+		Call last = newCall(Priority.Level.NORMAL);
+
+		assertTrue(queue.offerCall(null, null, TestCallRing.CALLABLE, first,
+				new Object[0]));
+		assertTrue(queue.offerCall(null, null, TestCallRing.CALLABLE, second,
+				new Object[0]));
+		assertTrue(queue.offer(last));
+		assertTrue(queue.offer(newCall(Priority.Level.NORMAL)));
+
+		//
+		// Calls of the ring are older than the calls of the inbox.
+		//
+		ScheduledTask task = queue.poll();
+
+		assertTrue(first.isAvailable());
+		assertTrue(task instanceof Call);
+		assertSame(second, ((Call) task).getFuture());
+		assertSame(last, queue.poll());
+		assertNotNull(queue.poll());
+		assertNull(queue.poll());
+	}
+}
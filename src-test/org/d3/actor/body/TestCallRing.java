@@ -0,0 +1,179 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.actor.body;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.d3.actor.ScheduledTask;
+import org.junit.Test;
+
+/**
+ * Test the ring of call slots of {@link org.d3.actor.body.BodyQueue}.
+ * 
+ * @author Guilhelm Savin
+ */
+public class TestCallRing {
+	static final CallableDescriptor CALLABLE = new CallableDescriptor(0,
+			"test", null, 1);
+
+	static boolean offer(CallRing ring, int index) {
+		return ring.offer(null, null, CALLABLE, null,
+				new Object[] { index }, false);
+	}
+
+	static int indexOf(ScheduledTask task) {
+		assertTrue("not a slot : " + task, task instanceof CallSlot);
+		return (Integer) ((CallSlot) task).getArgs()[0];
+	}
+
+	@Test
+	public void testCapacity() {
+		assertEquals(2, new CallRing(1).capacity());
+		assertEquals(2, new CallRing(2).capacity());
+		assertEquals(4, new CallRing(4).capacity());
+		assertEquals(8, new CallRing(5).capacity());
+	}
+
+	@Test
+	public void testFullWithoutWait() {
+		CallRing ring = new CallRing(4);
+
+		for (int i = 0; i < ring.capacity(); i++)
+			assertTrue(offer(ring, i));
+
+		assertFalse(offer(ring, -1));
+		assertEquals(ring.capacity(), ring.size());
+
+		for (int i = 0; i < ring.capacity(); i++)
+			assertEquals(i, indexOf(ring.poll()));
+
+		assertNull(ring.poll());
+	}
+
+	@Test
+	public void testWrapAround() {
+		CallRing ring = new CallRing(4);
+		int next = 0;
+
+		for (int lap = 0; lap < 10 * ring.capacity(); lap++) {
+			assertTrue(offer(ring, lap));
+
+			if (lap % 3 == 2) {
+				while (ring.isReady())
+					assertEquals(next++, indexOf(ring.poll()));
+
+				ring.release();
+				assertEquals(0, ring.size());
+			}
+		}
+
+		while (ring.isReady())
+			assertEquals(next++, indexOf(ring.poll()));
+
+		assertEquals(10 * ring.capacity(), next);
+	}
+
+	@Test
+	public void testNoReuseBeforeRelease() {
+		CallRing ring = new CallRing(2);
+
+		assertTrue(offer(ring, 0));
+		assertTrue(offer(ring, 1));
+
+		CallSlot slot = ring.poll();
+		assertEquals(0, indexOf(slot));
+
+		//
+		// The slot is held by the consumer until it is released.
+		//
+		assertFalse(offer(ring, 2));
+		assertEquals(0, indexOf(slot));
+
+		ring.release();
+		assertNull(slot.getArgs());
+		assertTrue(offer(ring, 2));
+		assertFalse(offer(ring, 3));
+
+		//
+		// Polling the next slot releases the previous one.
+		//
+		assertEquals(1, indexOf(ring.poll()));
+		assertFalse(offer(ring, 3));
+		assertEquals(2, indexOf(ring.poll()));
+		assertTrue(offer(ring, 3));
+		assertEquals(3, indexOf(ring.poll()));
+		assertNull(ring.poll());
+	}
+
+	@Test
+	public void testInterleavingWithInbox() {
+		BodyQueue queue = new BodyQueue();
+		queue.setRing(16);
+
+		for (int i = 0; i < 4; i++) {
+			queue.add(new TestBodyQueue.Task(0, i));
+			assertTrue(queue.offerCall(null, null, CALLABLE, null,
+					new Object[] { i }));
+		}
+
+		assertEquals(8, queue.size());
+
+		for (int i = 0; i < 4; i++) {
+			ScheduledTask task = queue.poll();
+
+			assertTrue(task instanceof TestBodyQueue.Task);
+			assertEquals(i, ((TestBodyQueue.Task) task).index);
+			assertEquals(i, indexOf(queue.poll()));
+		}
+
+		assertNull(queue.poll());
+		assertEquals(0, queue.size());
+	}
+
+	@Test
+	public void testRingOnlyThenInbox() {
+		BodyQueue queue = new BodyQueue();
+		queue.setRing(4);
+
+		for (int i = 0; i < 3; i++)
+			assertTrue(queue.offerCall(null, null, CALLABLE, null,
+					new Object[] { i }));
+
+		ScheduledTask task = new TestBodyQueue.Task(0, 0);
+		queue.add(task);
+
+		assertSame(task, queue.poll());
+
+		for (int i = 0; i < 3; i++) {
+			ScheduledTask slot = queue.poll();
+
+			assertNotNull(slot);
+			assertEquals(i, indexOf(slot));
+		}
+
+		assertNull(queue.poll());
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.actor.body;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.d3.Args;
+import org.d3.actor.ScheduledTask;
+import org.junit.Test;
+
+/**
+ * Test the hashed {@link org.d3.actor.body.TimingWheel}, pushing delayed tasks
+ * in their body queue.
+ * 
+ * @author Guilhelm Savin
+ */
+public class TestTimingWheel {
+	static class DelayedTask extends ScheduledTask {
+		DelayedTask(long delay) {
+			super(delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	static TimingWheel newWheel(int size) {
+		return new TimingWheel(Args.parseArgs(TimingWheel.TICK_ARG
+				+ " = 1 MILLISECONDS", TimingWheel.SIZE_ARG + " = " + size));
+	}
+
+	static BodyQueue newQueue(TimingWheel wheel) {
+		BodyQueue queue = new BodyQueue();
+		queue.setTimer(wheel);
+		return queue;
+	}
+
+	/*
+	 * Take the next task and check that its date is reached.
+	 */
+	static ScheduledTask takeInTime(BodyQueue queue)
+			throws InterruptedException {
+		ScheduledTask task = queue.take();
+		long now = System.nanoTime();
+
+		assertTrue("task handled " + (task.getDate() - now) + "ns early",
+				now >= task.getDate());
+
+		return task;
+	}
+
+	@Test(timeout = 30000)
+	public void testNeverEarly() throws InterruptedException {
+		BodyQueue queue = newQueue(newWheel(512));
+		Random random = new Random(3);
+		HashSet<ScheduledTask> tasks = new HashSet<ScheduledTask>();
+
+		for (int i = 0; i < 200; i++) {
+			ScheduledTask task = new DelayedTask(1 + random.nextInt(50));
+
+			tasks.add(task);
+			queue.add(task);
+		}
+
+		while (!tasks.isEmpty())
+			assertTrue(tasks.remove(takeInTime(queue)));
+
+		assertNull(queue.poll());
+	}
+
+	@Test(timeout = 30000)
+	public void testRounds() throws InterruptedException {
+		TimingWheel wheel = newWheel(4);
+		BodyQueue queue = newQueue(wheel);
+
+		//
+		// A lap of the wheel is 4 ticks, so these tasks are several laps away
+		// and share their slot with the short one.
+		//
+		ScheduledTask far = new DelayedTask(41);
+		ScheduledTask farther = new DelayedTask(81);
+		ScheduledTask near = new DelayedTask(1);
+
+		queue.add(farther);
+		queue.add(far);
+		queue.add(near);
+
+		assertSame(near, takeInTime(queue));
+		assertSame(far, takeInTime(queue));
+		assertSame(farther, takeInTime(queue));
+	}
+
+	@Test(timeout = 30000)
+	public void testCancelled() throws InterruptedException {
+		TimingWheel wheel = newWheel(512);
+		BodyQueue queue = newQueue(wheel);
+		ScheduledTask early = new DelayedTask(20);
+		ScheduledTask late = new DelayedTask(30);
+		ScheduledTask kept = new DelayedTask(50);
+		TimingWheel.Timeout e = wheel.newTimeout(early, queue);
+		TimingWheel.Timeout l = wheel.newTimeout(late, queue);
+		TimingWheel.Timeout k = wheel.newTimeout(kept, queue);
+
+		wheel.schedule(e);
+		wheel.schedule(l);
+		wheel.schedule(k);
+
+		//
+		// One timeout is cancelled before it is moved in its slot, the other
+		// one while it is in the wheel.
+		//
+		assertTrue(e.cancel());
+		assertFalse(e.isPending());
+		assertFalse(e.cancel());
+
+		Thread.sleep(10);
+		assertTrue(l.cancel());
+
+		assertSame(kept, takeInTime(queue));
+		assertFalse(k.isPending());
+		assertFalse(k.cancel());
+
+		Thread.sleep(20);
+		assertNull(queue.poll());
+	}
+
+	@Test(timeout = 30000)
+	public void testWakeFromIdle() throws Exception {
+		TimingWheel wheel = newWheel(512);
+		BodyQueue queue = newQueue(wheel);
+		Field idle = TimingWheel.class.getDeclaredField("idle");
+
+		idle.setAccessible(true);
+
+		ScheduledTask first = new DelayedTask(1);
+		queue.add(first);
+		assertSame(first, takeInTime(queue));
+
+		//
+		// The wheel is empty, so the tick thread parks until a timeout is
+		// scheduled.
+		//
+		while (!idle.getBoolean(wheel))
+			Thread.sleep(1);
+
+		Thread.sleep(50);
+		assertTrue(idle.getBoolean(wheel));
+
+		ScheduledTask second = new DelayedTask(20);
+		long start = System.nanoTime();
+
+		queue.add(second);
+
+		assertSame(second, takeInTime(queue));
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.protocol;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.d3.RegistrationException;
+import org.d3.actor.Agency;
+import org.d3.actor.Future;
+import org.d3.actor.FutureId;
+import org.junit.Test;
+
+/**
+ * Test the registry of exported futures, indexed by the counter of their id.
+ * 
+ * @author Guilhelm Savin
+ */
+public class TestFutures {
+	static Future newFuture(long epoch, long counter) {
+		return new Future(new FutureId(epoch, counter)) {
+		};
+	}
+
+	@Test
+	public void testRegister() throws RegistrationException {
+		Futures futures = new Futures();
+		long epoch = Agency.getLocalEpoch();
+		Future f1 = newFuture(epoch, 1);
+		Future f2 = newFuture(epoch, 2);
+
+		futures.register(f1);
+		futures.register(f2);
+
+		assertSame(f1, futures.get(new FutureId(epoch, 1)));
+		assertSame(f2, futures.get(new FutureId(epoch, 2)));
+		assertNull(futures.get(new FutureId(epoch, 3)));
+		assertNull(futures.get(null));
+
+		futures.unregister(f1);
+
+		assertNull(futures.get(new FutureId(epoch, 1)));
+		assertSame(f2, futures.get(new FutureId(epoch, 2)));
+	}
+
+	@Test
+	public void testOtherEpoch() throws RegistrationException {
+		Futures futures = new Futures();
+		long epoch = Agency.getLocalEpoch();
+
+		futures.register(newFuture(epoch, 1));
+		assertNull(futures.get(new FutureId(epoch + 1, 1)));
+
+		try {
+			futures.register(newFuture(epoch + 1, 2));
+			fail("future of another epoch registered");
+		} catch (RegistrationException e) {
+			// Expected
+		}
+	}
+
+	@Test(expected = RegistrationException.class)
+	public void testRegisterTwice() throws RegistrationException {
+		Futures futures = new Futures();
+		long epoch = Agency.getLocalEpoch();
+
+		futures.register(newFuture(epoch, 1));
+		futures.register(newFuture(epoch, 1));
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test {@link org.d3.tools.LongMap}, the striped open-addressing map indexing
+ * the exported futures.
+ * 
+ * @author Guilhelm Savin
+ */
+public class TestLongMap {
+
+	@Test
+	public void testPutGet() {
+		LongMap<String> map = new LongMap<String>();
+
+		assertNull(map.get(1));
+		assertNull(map.put(1, "a"));
+		assertNull(map.put(-1, "b"));
+		assertNull(map.put(Long.MIN_VALUE, "c"));
+		assertNull(map.put(0, "d"));
+
+		assertEquals("a", map.get(1));
+		assertEquals("b", map.get(-1));
+		assertEquals("c", map.get(Long.MIN_VALUE));
+		assertEquals("d", map.get(0));
+		assertEquals(4, map.size());
+
+		assertEquals("a", map.put(1, "e"));
+		assertEquals("e", map.get(1));
+		assertEquals("e", map.putIfAbsent(1, "f"));
+		assertEquals("e", map.get(1));
+		assertNull(map.putIfAbsent(2, "g"));
+		assertEquals("g", map.get(2));
+		assertEquals(5, map.size());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testNullValue() {
+		new LongMap<String>().put(1, null);
+	}
+
+	@Test
+	public void testResize() {
+		LongMap<Long> map = new LongMap<Long>();
+		int count = 100000;
+
+		for (long i = 0; i < count; i++)
+			map.put(i, i);
+
+		assertEquals(count, map.size());
+
+		for (long i = 0; i < count; i++)
+			assertEquals(i, (long) map.get(i));
+
+		assertNull(map.get(count));
+	}
+
+	@Test
+	public void testRemove() {
+		LongMap<String> map = new LongMap<String>();
+
+		map.put(1, "a");
+		map.put(2, "b");
+
+		assertNull(map.remove(3));
+		assertEquals("a", map.remove(1));
+		assertNull(map.remove(1));
+		assertNull(map.get(1));
+		assertEquals("b", map.get(2));
+		assertEquals(1, map.size());
+	}
+
+	/*
+	 * Keys are removed in random order from small tables, so clusters are
+	 * frequent and often wrap around the end of the table. After each removal,
+	 * entries shifted back by the deletion must still be found.
+	 */
+	@Test
+	public void testBackwardShiftDeletion() {
+		Random random = new Random(7);
+
+		for (int run = 0; run < 100; run++) {
+			LongMap<Long> map = new LongMap<Long>();
+			HashMap<Long, Long> reference = new HashMap<Long, Long>();
+
+			for (int i = 0; i < 150; i++) {
+				long key = random.nextInt(1000);
+
+				map.put(key, key);
+				reference.put(key, key);
+			}
+
+			ArrayList<Long> keys = new ArrayList<Long>(reference.keySet());
+
+			while (!keys.isEmpty()) {
+				long key = keys.remove(random.nextInt(keys.size()));
+
+				assertEquals(key, (long) map.remove(key));
+				reference.remove(key);
+
+				assertNull(map.get(key));
+				assertEquals(reference.size(), map.size());
+
+				for (Map.Entry<Long, Long> e : reference.entrySet())
+					assertEquals(e.getValue(), map.get(e.getKey()));
+			}
+		}
+	}
+
+	@Test
+	public void testRandomOperations() {
+		Random random = new Random(11);
+		LongMap<Long> map = new LongMap<Long>();
+		HashMap<Long, Long> reference = new HashMap<Long, Long>();
+
+		for (int i = 0; i < 200000; i++) {
+			long key = random.nextInt(2000);
+
+			switch (random.nextInt(3)) {
+			case 0:
+				assertEquals(reference.put(key, key), map.put(key, key));
+				break;
+			case 1:
+				assertEquals(reference.remove(key), map.remove(key));
+				break;
+			default:
+				assertEquals(reference.get(key), map.get(key));
+				break;
+			}
+		}
+
+		assertEquals(reference.size(), map.size());
+	}
+
+	@Test(timeout = 30000)
+	public void testConcurrentAccess() throws InterruptedException {
+		final LongMap<Long> map = new LongMap<Long>();
+		final int threads = 4;
+		final int count = 50000;
+		Thread[] workers = new Thread[threads];
+
+		for (int t = 0; t < threads; t++) {
+			final long base = (long) t * count;
+
+			workers[t] = new Thread() {
+				public void run() {
+					for (long i = base; i < base + count; i++)
+						map.put(i, i);
+
+					for (long i = base; i < base + count; i += 2)
+						map.remove(i);
+				}
+			};
+
+			workers[t].start();
+		}
+
+		for (Thread w : workers)
+			w.join();
+
+		assertEquals(threads * count / 2, map.size());
+
+		for (long i = 0; i < threads * count; i++) {
+			if (i % 2 == 0)
+				assertNull(map.get(i));
+			else
+				assertEquals(i, (long) map.get(i));
+		}
+	}
+}
@@ -19,6 +19,7 @@
 package org.d3;
 
 import java.net.URI;
+import java.util.regex.Pattern;
 
 import org.d3.actor.Future;
 import org.d3.annotation.ActorPath;
@@ -44,6 +45,7 @@ import org.d3.annotation.ActorPath;
  * <li>{@link org.d3.actor.Feature},</li>
  * <li>{@link org.d3.actor.Protocol},</li>
  * <li>{@link org.d3.actor.Entity},</li>
+ * <li>{@link org.d3.actor.Router},</li>
  * <li>Application.</li>
  * </ul>
  * 
@@ -79,11 +81,24 @@ import org.d3.annotation.ActorPath;
 @ActorPath("/")
 public abstract class Actor {
 	public static enum IdentifiableType {
-		FEATURE, ENTITY, AGENCY, PROTOCOL, APPLICATION, REMOTE
+		FEATURE, ENTITY, AGENCY, PROTOCOL, APPLICATION, REMOTE, ROUTER
 	}
 
 	public static final String VALID_ID_PATTERN = "^[\\w\\d]([\\w\\d_-[.]]*[\\w\\d])?$";
 
+	private static final Pattern VALID_ID = Pattern.compile(VALID_ID_PATTERN);
+
+	/**
+	 * Check if a string can be used as an actor id.
+	 * 
+	 * @param id
+	 *            the id to check
+	 * @return true if the id matches {@link #VALID_ID_PATTERN}
+	 */
+	public static boolean isValidId(String id) {
+		return VALID_ID.matcher(id).matches();
+	}
+
 	public static String getTypePath(Class<? extends Actor> cls) {
 		return getTypePath(cls, null);
 	}
@@ -158,7 +173,7 @@ public abstract class Actor {
 		if (id == null || agencyId == null)
 			throw new NullPointerException();
 
-		if (!id.matches(VALID_ID_PATTERN))
+		if (!isValidId(id))
 			throw new InvalidIdException(id);
 
 		if (path == null)
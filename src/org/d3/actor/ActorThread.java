@@ -52,6 +52,14 @@ public class ActorThread extends Thread implements
 	public static final Actor getCurrentActor() {
 		Thread t = Thread.currentThread();
 
+		if (t instanceof DispatcherThread) {
+			BodyThread body = ((DispatcherThread) t).getAssumedBody();
+			return body == null ? null : body.getOwner();
+		}
+
+		if (t instanceof BlockingThread)
+			return ((BlockingThread) t).getAssumedActor();
+
 		if (t instanceof ProtocolThread) {
 			try {
 				Actor a = ((ProtocolThread) t).getCurrentRemoteActor();
@@ -69,6 +77,27 @@ public class ActorThread extends Thread implements
 		return null;
 	}
 
+	/**
+	 * Get the actor thread actually running. This is the current thread if it
+	 * is an actor thread, or the body assumed by the current thread if it is a
+	 * dispatcher worker.
+	 * 
+	 * @return the current actor thread or null if the current thread is not
+	 *         an actor thread
+	 * @see org.d3.actor.DispatcherThread
+	 */
+	public static final ActorThread getCurrentActorThread() {
+		Thread t = Thread.currentThread();
+
+		if (t instanceof ActorThread)
+			return (ActorThread) t;
+
+		if (t instanceof DispatcherThread)
+			return ((DispatcherThread) t).getAssumedBody();
+
+		return null;
+	}
+
 	/**
 	 * The actor owning the thread. Only local actors can owned a thread
 	 * directly. Remote actors can owned a thread through a protocol.
@@ -86,8 +115,21 @@ public class ActorThread extends Thread implements
 	 *            the suffix of the thread id.
 	 */
 	public ActorThread(LocalActor owner, String threadId) {
-		super(owner.getThreadGroup(), owner.getFullPath() + "/threads/"
-				+ threadId);
+		this(owner.getThreadGroup(), owner, threadId);
+	}
+
+	/**
+	 * Constructor allowing to define the thread group of the thread.
+	 * 
+	 * @param group
+	 *            the thread group
+	 * @param owner
+	 *            the local actor which will owned the thread.
+	 * @param threadId
+	 *            the suffix of the thread id.
+	 */
+	protected ActorThread(ThreadGroup group, LocalActor owner, String threadId) {
+		super(group, owner.getFullPath() + "/threads/" + threadId);
 		this.owner = owner;
 
 		setDaemon(true);
@@ -104,12 +146,13 @@ public class ActorThread extends Thread implements
 	}
 
 	/**
-	 * Test if the current thread is this thread.
+	 * Test if the current thread is this thread, or a dispatcher worker
+	 * assuming this thread.
 	 * 
 	 * @return true if the current is this thread.
 	 */
 	public final boolean isOwner() {
-		return Thread.currentThread() == this;
+		return getCurrentActorThread() == this;
 	}
 
 	/**
@@ -117,7 +160,7 @@ public class ActorThread extends Thread implements
 	 * not, a SecurityException is thrown.
 	 */
 	public final void checkIsOwner() {
-		if (Thread.currentThread() != this)
+		if (getCurrentActorThread() != this)
 			throw new SecurityException();
 	}
 
@@ -21,6 +21,7 @@ package org.d3.actor;
 import java.net.URI;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -37,8 +38,14 @@ import org.d3.tools.DefaultCache;
 public class Actors implements Iterable<LocalActor>,
 		EventDispatchable<ActorsEvent> {
 
+	/**
+	 * Only one call on this count triggers the CALL event.
+	 */
+	public static final String CALL_SAMPLING_ARG = "actors.events.call.sampling";
+
 	private final ConcurrentHashMap<String, LocalActor> actors;
-	private String digest;
+	private volatile String digest;
+	private long digestVersion;
 	private MessageDigest digestAlgorithm;
 	private final EventDispatcher<ActorsEvent> eventDispatcher;
 	private final DefaultCache<String, Throwable> unregisteredTrace;
@@ -47,6 +54,10 @@ public class Actors implements Iterable<LocalActor>,
 		actors = new ConcurrentHashMap<String, LocalActor>();
 		digest = "";
 		eventDispatcher = new EventDispatcher<ActorsEvent>(ActorsEvent.class);
+
+		if (Agency.getArgs() != null)
+			eventDispatcher.setSampling(ActorsEvent.CALL, Agency.getArgs()
+					.getInteger(CALL_SAMPLING_ARG, 1));
 		unregisteredTrace = new DefaultCache<String, Throwable>(10000);
 
 		try {
@@ -68,6 +79,43 @@ public class Actors implements Iterable<LocalActor>,
 		eventDispatcher.trigger(ActorsEvent.ACTOR_REGISTERED, actor);
 	}
 
+	/**
+	 * Register a batch of actors which bodies have not been started yet. The
+	 * digest is updated once for the whole batch. If a path is already used,
+	 * actors of the batch are unregistered and an exception is thrown.
+	 * 
+	 * @param batch
+	 *            the actors to register
+	 * @throws RegistrationException
+	 *             if one of the actors is already registered
+	 */
+	void registerAll(Collection<? extends LocalActor> batch)
+			throws RegistrationException {
+		int count = 0;
+
+		for (LocalActor actor : batch) {
+			if (actors.putIfAbsent(actor.getFullPath(), actor) != null) {
+				for (LocalActor registered : batch) {
+					if (count-- == 0)
+						break;
+
+					actors.remove(registered.getFullPath());
+				}
+
+				throw new RegistrationException(actor.getFullPath());
+			}
+
+			count++;
+		}
+
+		updateDigest();
+
+		if (eventDispatcher.hasListeners(ActorsEvent.ACTOR_REGISTERED)) {
+			for (LocalActor actor : batch)
+				eventDispatcher.trigger(ActorsEvent.ACTOR_REGISTERED, actor);
+		}
+	}
+
 	public void unregister(LocalActor actor) {
 		Throwable cause = actor.getTerminationCause();
 
@@ -119,10 +167,14 @@ public class Actors implements Iterable<LocalActor>,
 		return la;
 	}
 
-	private void updateDigest() {
-		String date = Long.toString(System.currentTimeMillis());
-		digestAlgorithm.digest(date.getBytes());
-		digest = ObjectCoder.byte2hexa(digestAlgorithm.digest());
+	/*
+	 * Bodies register and unregister concurrently, so the message digest is
+	 * only used under the lock. The version makes two updates in the same
+	 * millisecond give different digests.
+	 */
+	private synchronized void updateDigest() {
+		String date = System.currentTimeMillis() + ":" + (digestVersion++);
+		digest = ObjectCoder.byte2hexa(digestAlgorithm.digest(date.getBytes()));
 	}
 
 	public EventDispatcher<ActorsEvent> getEventDispatcher() {
@@ -21,7 +21,10 @@ package org.d3.actor;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.security.SecureRandom;
-import java.util.concurrent.Semaphore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
 
 import org.d3.Actor;
 import org.d3.Args;
@@ -30,12 +33,18 @@ import org.d3.FaultManager;
 import org.d3.HostAddress;
 import org.d3.RegistrationException;
 import org.d3.FaultManager.FaultPolicy;
+import org.d3.actor.body.TimingWheel;
+import org.d3.actor.body.VirtualTimer;
 import org.d3.agency.AgencyEvents;
 import org.d3.agency.AgencyExitThread;
 import org.d3.agency.IpTables;
 import org.d3.annotation.ActorDescription;
 import org.d3.annotation.ActorPath;
+import org.d3.annotation.Blocking;
 import org.d3.annotation.Callable;
+import org.d3.annotation.Direct;
+import org.d3.annotation.Priority;
+import org.d3.annotation.ReadOnly;
 import org.d3.entity.Traveller;
 import org.d3.entity.TravellerChecker;
 import org.d3.entity.migration.MigrationProtocol;
@@ -71,6 +80,13 @@ public class Agency extends LocalActor implements
 	public static final String CALLABLE_UNREGISTER_AGENCY = "unregister.agency";
 	public static final String CALLABLE_GET_DIGEST = "agency.digest";
 	public static final String CALLABLE_ACTORS_LIST = "actors.list";
+	public static final String CALLABLE_THREADS_LIMIT = "threads.limit";
+	public static final String CALLABLE_SPAWN_ENTITIES = "entities.spawn";
+
+	public static final String SIMULATION_ARG = "actors.simulation";
+	public static final String SIMULATION_SEED_ARG = "actors.simulation.seed";
+	public static final String SIMULATED_ARG = "simulated";
+	public static final String SPAWN_MAX_ARG = "entities.spawn.max";
 
 	public static enum Argument {
 		PROTOCOLS("protocols"), FEATURES("features"), DEFAULT_CHARSET(
@@ -85,9 +101,12 @@ public class Agency extends LocalActor implements
 
 	private static Agency localAgency;
 	private static String localAgencyId;
+	private static long localEpoch;
 	private static Args localArgs;
 	private static HostAddress localHost;
 	private static FaultManager faultManager;
+	private static VirtualTimer virtualTimer;
+	private static Random simulationRandom;
 
 	public static String getArg(String key) {
 		return localArgs.get(key);
@@ -101,6 +120,72 @@ public class Agency extends LocalActor implements
 		return localArgs;
 	}
 
+	/**
+	 * Check if the local agency runs in simulation mode. In this mode, delays
+	 * of the simulated actors follow a virtual clock advanced by the timer of
+	 * the agency once all the pooled bodies are idle, and random generators
+	 * obtained with {@link #newRandom()} are seeded from
+	 * <code>actors.simulation.seed</code>, so a run can be replayed.
+	 * 
+	 * @return true if the agency runs in simulation mode
+	 */
+	public static boolean isSimulation() {
+		return virtualTimer != null;
+	}
+
+	/**
+	 * Check if an actor runs on the virtual clock of the simulation. Entities
+	 * are simulated, other actors only if they opt in with the actor argument
+	 * <code>simulated</code>, for example
+	 * <code>routers.simulated = true</code>. Protocols, features and the
+	 * agency itself, which deal with the outside world, stay on the system
+	 * clock and keep a dedicated body.
+	 * 
+	 * @param actor
+	 *            the actor
+	 * @return true if the actor is simulated
+	 */
+	public static boolean isSimulated(LocalActor actor) {
+		if (virtualTimer == null || actor instanceof Agency)
+			return false;
+
+		if (actor.getArgsPrefix() != null) {
+			Args actorArgs = getActorArgs(actor);
+
+			if (actorArgs.has(SIMULATED_ARG))
+				return actorArgs.getBoolean(SIMULATED_ARG);
+		}
+
+		return actor instanceof Entity;
+	}
+
+	/**
+	 * Get the timer of the simulation, used for example to hold the virtual
+	 * time while the first actors are created.
+	 * 
+	 * @return the virtual timer, or null if the agency is not in simulation
+	 *         mode
+	 */
+	public static VirtualTimer getVirtualTimer() {
+		return virtualTimer;
+	}
+
+	/**
+	 * Create a random generator for an actor. In simulation mode, the seed is
+	 * drawn from the seed of the simulation, else the generator is seeded as
+	 * usual.
+	 * 
+	 * @return a new random generator
+	 */
+	public static Random newRandom() {
+		if (simulationRandom == null)
+			return new Random();
+
+		synchronized (simulationRandom) {
+			return new Random(simulationRandom.nextLong());
+		}
+	}
+
 	public static FaultManager getFaultManager() {
 		return faultManager;
 	}
@@ -150,9 +235,19 @@ public class Agency extends LocalActor implements
 
 			localAgencyId = String.format("%x%x", System.nanoTime(), random
 					.nextLong());
+			localEpoch = random.nextLong();
 
 			localArgs = args;
 
+			if (args.getBoolean(SIMULATION_ARG, false)) {
+				long seed = Long.parseLong(args.get(SIMULATION_SEED_ARG, "0"));
+
+				simulationRandom = new Random(seed);
+				virtualTimer = new VirtualTimer(args);
+
+				Console.info("simulation mode, seed is %d", seed);
+			}
+
 			try {
 				String ifname = localArgs.get("system.net.interface", "etho");
 				InetAddress address;
@@ -192,6 +287,17 @@ public class Agency extends LocalActor implements
 		return localAgencyId;
 	}
 
+	/**
+	 * Get the epoch of the local agency, drawn when the agency is enabled.
+	 * This is used to build the ids of exported futures.
+	 * 
+	 * @return epoch of the local agency
+	 * @see org.d3.actor.FutureId
+	 */
+	public static long getLocalEpoch() {
+		return localEpoch;
+	}
+
 	public static HostAddress getLocalHost() {
 		return localHost;
 	}
@@ -208,22 +314,18 @@ public class Agency extends LocalActor implements
 	private final Features features;
 	private final Actors actors;
 	private final RemoteActors remoteActors;
-	private final Semaphore actorThreadSemaphore;
+	private final ConcurrencyLimiter concurrencyLimiter;
+	private final Dispatcher dispatcher;
+	private final BlockingPool blockingPool;
+	private final TimingWheel timingWheel;
 
 	private Agency(String id) {
 		super(id);
 
-		int concurrentActorThreads = 10;
-
-		if (localArgs.has("actors.threads.concurrent"))
-			concurrentActorThreads = localArgs
-					.getInteger("actors.threads.concurrent");
-
 		int remoteActorsCapacity = 1000;
 
 		if (localArgs.has("actors.remote.cache"))
-			concurrentActorThreads = localArgs
-					.getInteger("actors.remote.cache");
+			remoteActorsCapacity = localArgs.getInteger("actors.remote.cache");
 
 		ipTables = new IpTables();
 
@@ -234,7 +336,10 @@ public class Agency extends LocalActor implements
 		this.features = new Features();
 		this.actors = new Actors();
 		this.remoteActors = new RemoteActors(remoteActorsCapacity);
-		this.actorThreadSemaphore = new Semaphore(concurrentActorThreads);
+		this.concurrencyLimiter = new ConcurrencyLimiter(localArgs);
+		this.dispatcher = new Dispatcher(localArgs, virtualTimer);
+		this.blockingPool = new BlockingPool(localArgs);
+		this.timingWheel = new TimingWheel(localArgs);
 	}
 
 	public final void initAgency() {
@@ -312,9 +417,21 @@ public class Agency extends LocalActor implements
 		return ipTables;
 	}
 
-	public Semaphore getActorThreadSemaphore() {
-		if (Thread.currentThread() instanceof ActorThread)
-			return actorThreadSemaphore;
+	public Dispatcher getDispatcher() {
+		return dispatcher;
+	}
+
+	public BlockingPool getBlockingPool() {
+		return blockingPool;
+	}
+
+	public TimingWheel getTimingWheel() {
+		return timingWheel;
+	}
+
+	public ConcurrencyLimiter getConcurrencyLimiter() {
+		if (ActorThread.getCurrentActorThread() != null)
+			return concurrencyLimiter;
 
 		throw new NotActorThreadException();
 	}
@@ -347,11 +464,119 @@ public class Agency extends LocalActor implements
 		}
 	}
 
+	/**
+	 * Create a batch of entities of the same class and wait until all of them
+	 * are running. Ids of the entities are the prefix followed by their index.
+	 * Entities are registered at once, before their bodies are started, so
+	 * the digest of the actors is only updated once.
+	 * 
+	 * The class needs a constructor taking the id of the entity. Pooled
+	 * bodies should be preferred for large batches.
+	 * 
+	 * @param cls
+	 *            class of the entities
+	 * @param prefix
+	 *            prefix of the ids
+	 * @param count
+	 *            count of entities to create
+	 * @return the created entities
+	 * @throws RegistrationException
+	 *             if the count is negative, or if an entity can not be
+	 *             created, registered or started. Entities which have been
+	 *             started are not terminated.
+	 */
+	public <T extends Entity> List<T> spawn(Class<T> cls, String prefix,
+			int count) throws RegistrationException {
+		if (count < 0)
+			throw new RegistrationException(String.format(
+					"invalid count of entities: %d", count));
+
+		ArrayList<T> batch = new ArrayList<T>(count);
+
+		try {
+			java.lang.reflect.Constructor<T> constructor = cls
+					.getConstructor(String.class);
+
+			for (int i = 0; i < count; i++)
+				batch.add(constructor.newInstance(prefix + "_" + i));
+		} catch (Exception e) {
+			throw new RegistrationException(e);
+		}
+
+		actors.registerAll(batch);
+
+		CountDownLatch ready = new CountDownLatch(batch.size());
+
+		for (int i = 0; i < batch.size(); i++) {
+			try {
+				batch.get(i).spawn(ready);
+			} catch (RuntimeException e) {
+				ready.countDown();
+				Agency.getFaultManager().handle(e, this);
+			}
+		}
+
+		try {
+			ready.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return batch;
+		}
+
+		int failed = 0;
+
+		for (int i = 0; i < batch.size(); i++)
+			if (!batch.get(i).hasBooted())
+				failed++;
+
+		if (failed > 0)
+			throw new RegistrationException(String.format(
+					"%d of %d entities failed to start", failed, count));
+
+		return batch;
+	}
+
+	/**
+	 * Callable allowing remote agencies to spawn entities on this agency.
+	 * 
+	 * @param classname
+	 *            name of the class of the entities
+	 * @param prefix
+	 *            prefix of the ids
+	 * @param count
+	 *            count of entities to create, at most the agency argument
+	 *            <code>entities.spawn.max</code>, 10000 by default
+	 * @return count of created entities
+	 * @see #spawn(Class, String, int)
+	 */
+	@Callable(CALLABLE_SPAWN_ENTITIES)
+	@Blocking
+	public Integer spawn(String classname, String prefix, Integer count) {
+		Class<?> cls;
+		int max = localArgs.getInteger(SPAWN_MAX_ARG, 10000);
+
+		if (count == null || count < 0 || count > max)
+			throw new RegistrationException(String.format(
+					"invalid count of entities: %s (max %d)", count, max));
+
+		try {
+			cls = Class.forName(classname);
+		} catch (ClassNotFoundException e) {
+			throw new RegistrationException(e);
+		}
+
+		if (!Entity.class.isAssignableFrom(cls))
+			throw new RegistrationException(classname + " is not an entity");
+
+		return spawn(cls.asSubclass(Entity.class), prefix, count).size();
+	}
+
 	public EventDispatcher<AgencyEvents> getEventDispatcher() {
 		return eventDispatcher;
 	}
 
 	@Callable(CALLABLE_REGISTER_NEW_HOST)
+	@Priority
 	public RemoteHost registerNewHost(HostAddress host) {
 		RemoteHost remoteHost;
 
@@ -365,6 +590,7 @@ public class Agency extends LocalActor implements
 	}
 
 	@Callable(CALLABLE_REGISTER_NEW_AGENCY)
+	@Priority
 	public RemoteAgency registerNewAgency(RemoteHost host, String id) {
 		RemoteAgency remoteAgency;
 
@@ -378,16 +604,31 @@ public class Agency extends LocalActor implements
 	}
 
 	@Callable(CALLABLE_UNREGISTER_AGENCY)
+	@Priority
 	public void unregisterAgency(RemoteAgency remoteAgency) {
 		remoteHosts.unregisterAgency(remoteAgency);
 	}
 
 	@Callable(CALLABLE_GET_DIGEST)
+	@Priority
+	@ReadOnly
 	public String getDigest() {
 		return actors.getDigest();
 	}
 
+	/**
+	 * Get the actual limit of bodies handling requests at the same time.
+	 * 
+	 * @return limit of the concurrency limiter
+	 */
+	@Callable(CALLABLE_THREADS_LIMIT)
+	@Direct
+	public Integer getConcurrencyLimit() {
+		return concurrencyLimiter.getLimit();
+	}
+
 	@Callable(CALLABLE_ACTORS_LIST)
+	@ReadOnly
 	public String[] getActorsList() {
 		return actors.exportActorsPath();
 	}
@@ -0,0 +1,104 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.actor;
+
+import org.d3.actor.body.CallableDescriptor;
+
+/**
+ * Invocation of a blocking callable. The task is first run by the blocking
+ * pool, then posted back to the body of the actor which initializes the
+ * future with the result. If the call has been received with its arguments
+ * still encoded, they are decoded by the blocking pool too.
+ */
+class BlockingCall extends HandoffTask {
+
+	private final BodyThread body;
+	private final CallableDescriptor callable;
+	private final Object[] args;
+	/**
+	 * Call giving the arguments, if they are decoded by the blocking pool.
+	 */
+	private final Call call;
+	private final Future future;
+	private Object result;
+
+	BlockingCall(BodyThread body, CallableDescriptor callable, Object[] args,
+			Future future) {
+		this.body = body;
+		this.callable = callable;
+		this.args = args;
+		this.call = null;
+		this.future = future;
+		this.priority = callable.getPriority();
+	}
+
+	BlockingCall(BodyThread body, CallableDescriptor callable, Call call) {
+		this.body = body;
+		this.callable = callable;
+		this.args = null;
+		this.call = call;
+		this.future = call.getFuture();
+		this.priority = callable.getPriority();
+	}
+
+	LocalActor getOwner() {
+		return body.getOwner();
+	}
+
+	/*
+	 * A simulated body does not use the blocking pool, its blocking callables
+	 * are invoked inline.
+	 */
+	boolean isSimulated() {
+		return body.isSimulated();
+	}
+
+	/*
+	 * Invoke the callable, in a thread of the blocking pool, then hand the
+	 * result back to the body.
+	 */
+	void run() {
+		Object[] a = args;
+
+		try {
+			if (call != null)
+				a = call.getArgs();
+
+			result = body.getOwner().invoke(callable, a);
+		} catch (Exception e) {
+			result = new CallException(e);
+		}
+
+		body.handoff(this);
+	}
+
+	/*
+	 * Initialize the future, in the body.
+	 */
+	void complete() {
+		future.init(result);
+	}
+
+	/*
+	 * The result is available, so it is still given to the caller.
+	 */
+	void abort(Throwable stopCause) {
+		future.init(result);
+	}
+}
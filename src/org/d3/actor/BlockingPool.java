@@ -0,0 +1,97 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.actor;
+
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.d3.Args;
+
+/**
+ * Pool of threads invoking the blocking callables. The count of threads is
+ * bounded by the argument <code>actors.blocking.threads</code>, requests
+ * waiting for a thread are queued. Threads are started on the first request.
+ * 
+ * Once the callable has returned, the result is handed back to the body of the
+ * actor which initializes the future of the call, so listeners of the future
+ * are notified by the body.
+ * 
+ * In simulation mode, blocking callables of simulated actors are invoked by
+ * the body itself, so their results do not depend on the scheduling of the
+ * threads of the pool.
+ * 
+ * @author Guilhelm Savin
+ * @see org.d3.annotation.Blocking
+ * @see org.d3.actor.BlockingThread
+ */
+public class BlockingPool {
+	public static final String THREADS_ARG = "actors.blocking.threads";
+
+	private final LinkedBlockingQueue<BlockingCall> runQueue;
+	private final BlockingThread[] workers;
+	private boolean started;
+
+	public BlockingPool(Args args) {
+		int threads = args.getInteger(THREADS_ARG, 16);
+
+		this.runQueue = new LinkedBlockingQueue<BlockingCall>();
+		this.workers = new BlockingThread[Math.max(1, threads)];
+		this.started = false;
+	}
+
+	public int getWorkerCount() {
+		return workers.length;
+	}
+
+	/**
+	 * Get the count of blocking calls waiting for a thread.
+	 * 
+	 * @return count of waiting calls
+	 */
+	public int getPendingCount() {
+		return runQueue.size();
+	}
+
+	void execute(BlockingCall call) {
+		if (call.isSimulated()) {
+			call.run();
+			return;
+		}
+
+		if (!started)
+			start();
+
+		runQueue.add(call);
+	}
+
+	BlockingCall next() throws InterruptedException {
+		return runQueue.take();
+	}
+
+	private synchronized void start() {
+		if (started)
+			return;
+
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new BlockingThread(this, i);
+			workers[i].start();
+		}
+
+		started = true;
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.actor;
+
+import org.d3.Console;
+
+/**
+ * Worker thread of a {@link org.d3.actor.BlockingPool}. While it is invoking a
+ * blocking callable, the worker assumes the identity of the actor, so calls
+ * issued by the callable have this actor as source. Unlike dispatcher workers,
+ * it does not own the body of the actor.
+ * 
+ * @author Guilhelm Savin
+ * @see org.d3.actor.ActorThread#getCurrentActor()
+ */
+public class BlockingThread extends Thread {
+
+	private final BlockingPool pool;
+	private volatile LocalActor actor;
+
+	BlockingThread(BlockingPool pool, int index) {
+		super("/blocking/worker-" + index);
+
+		this.pool = pool;
+		this.actor = null;
+
+		setDaemon(true);
+	}
+
+	/**
+	 * Get the actor whose callable is actually invoked by this worker.
+	 * 
+	 * @return the assumed actor or null if the worker is waiting
+	 */
+	public LocalActor getAssumedActor() {
+		return actor;
+	}
+
+	public void run() {
+		while (true) {
+			BlockingCall next;
+
+			try {
+				next = pool.next();
+			} catch (InterruptedException e) {
+				continue;
+			}
+
+			actor = next.getOwner();
+
+			try {
+				next.run();
+			} catch (Throwable e) {
+				Console.error("blocking worker failure: %s", e.getMessage());
+			} finally {
+				actor = null;
+			}
+		}
+	}
+}
@@ -18,22 +18,50 @@
  */
 package org.d3.actor;
 
-import java.util.concurrent.Semaphore;
+import java.util.LinkedList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
 
+import org.d3.Actor;
+import org.d3.Args;
 import org.d3.Console;
 import org.d3.actor.body.BodyQueue;
+import org.d3.actor.body.CallSlot;
+import org.d3.actor.body.CallableDescriptor;
+import org.d3.actor.body.MailboxOverflowException;
+import org.d3.annotation.Priority;
 import org.d3.tools.AtomicState;
+import org.d3.tools.Time;
 
 /**
  * Body is a thread associated with each local actor which will handle received
  * requests.
  * 
+ * A body can be pooled. In this case, the thread is never started and the body
+ * is scheduled on the worker threads of the agency dispatcher when its queue
+ * contains requests to handle.
+ * 
  * @author Guilhelm Savin
+ * @see org.d3.actor.Dispatcher
  * @see org.d3.actor.ActorThread
  */
 public class BodyThread extends ActorThread {
 
+	public static final String BATCH_SIZE_ARG = "actors.batch.size";
+	public static final String BATCH_TIME_ARG = "actors.batch.time";
+	public static final String MAILBOX_CAPACITY_ARG = "mailbox.capacity";
+	public static final String MAILBOX_POLICY_ARG = "mailbox.policy";
+	public static final String DEFAULT_MAILBOX_CAPACITY_ARG = "actors.mailbox.capacity";
+	public static final String DEFAULT_MAILBOX_POLICY_ARG = "actors.mailbox.policy";
+	public static final String MAILBOX_RING_ARG = "mailbox.ring";
+	public static final String DEFAULT_MAILBOX_RING_ARG = "actors.mailbox.ring";
+
+	private static final int DEFAULT_BATCH_SIZE = 32;
+	private static final long DEFAULT_BATCH_TIME = TimeUnit.MILLISECONDS
+			.toNanos(2);
+
 	/**
 	 * Special actions which can be handle by the body.
 	 */
@@ -49,7 +77,12 @@ public class BodyThread extends ActorThread {
 		 * 
 		 * @see org.d3.actor.StepActor
 		 */
-		STEP
+		STEP,
+		/**
+		 * Tell the body to stop, once the requests it has already received
+		 * have been handled.
+		 */
+		STOP
 	}
 
 	/**
@@ -65,6 +98,19 @@ public class BodyThread extends ActorThread {
 		}
 	}
 
+	/*
+	 * Special action STOP, with the cause of the termination.
+	 */
+	private static class StopTask extends SpecialActionTask {
+
+		final Throwable cause;
+
+		StopTask(Throwable cause) {
+			super(0, TimeUnit.SECONDS, SpecialAction.STOP);
+			this.cause = cause;
+		}
+	}
+
 	/**
 	 * Defines state of the body.
 	 * 
@@ -84,12 +130,11 @@ public class BodyThread extends ActorThread {
 		IDLE,
 		/**
 		 * The body is handling a request. Before becoming WORKING, body should
-		 * acquire a permit on the agency actor-thread semaphore. When handling
-		 * of the request is finished, permit is released. This is to avoid the
+		 * acquire a permit on the agency concurrency limiter. When handling of
+		 * the request is finished, permit is released. This is to avoid the
 		 * concurrency of too many threads.
 		 * 
-		 * @see org.d3.actor.Agency#getActorThreadSemaphore()
-		 * @see java.concurrent.Semaphore
+		 * @see org.d3.actor.Agency#getConcurrencyLimiter()
 		 */
 		WORKING,
 		/**
@@ -145,6 +190,59 @@ public class BodyThread extends ActorThread {
 	 * remaining requests.
 	 */
 	protected Throwable stopCause;
+	/**
+	 * Flag indicating if the body is scheduled on the dispatcher rather than
+	 * running its own thread.
+	 */
+	private final boolean pooled;
+	/**
+	 * When pooled, indicates if the body is actually on the run queue or
+	 * handled by a worker.
+	 */
+	private final AtomicBoolean scheduled;
+	/**
+	 * Set if the owner has been registered with a batch of actors before the
+	 * body is started, the body then does not register it.
+	 */
+	private boolean registered;
+	/**
+	 * Latch counted down once the body is running, null if nobody waits for
+	 * it.
+	 */
+	private CountDownLatch ready;
+	/**
+	 * Set once the body has entered the RUNNING state.
+	 */
+	private volatile boolean booted;
+	/**
+	 * Bulkhead of the actor class of the owner, null if none.
+	 */
+	private ConcurrencyLimiter.Gate bulkhead;
+	/**
+	 * True while the body holds a permit of the concurrency limiter. Only
+	 * accessed by the body.
+	 */
+	private boolean permitted;
+	/**
+	 * Time, in nanoseconds, the body has spent waiting for futures during the
+	 * actual batch. Only accessed by the body.
+	 */
+	private long waited;
+	/**
+	 * Maximum count of requests handled under a single permit of the agency
+	 * concurrency limiter.
+	 */
+	private final int batchSize;
+	/**
+	 * Maximum time, in nanoseconds, a batch can last before the permit is
+	 * released. Zero means no limit.
+	 */
+	private final long batchTime;
+	/**
+	 * True if the body runs on the virtual clock of the simulation.
+	 */
+	private final boolean simulated;
+	private final Clock clock;
 
 	/**
 	 * Special constructor for extended class, allowing to define its own queue.
@@ -155,10 +253,94 @@ public class BodyThread extends ActorThread {
 	 *            the queue in which remaining requests are stored.
 	 */
 	protected BodyThread(LocalActor owner, BodyQueue queue) {
-		super(owner, "request");
+		super(LocalActor.actorsThreads, owner, "request");
 		this.queue = queue;
 		this.running = false;
 		this.state = new AtomicState<State>(State.class, State.INIT);
+		this.pooled = Dispatcher.isPooled(owner);
+		this.simulated = Agency.isSimulated(owner);
+		this.clock = simulated ? Agency.getVirtualTimer().getClock()
+				: Clock.SYSTEM;
+		this.scheduled = new AtomicBoolean(false);
+
+		Args args = Agency.getArgs();
+		int batchSize = DEFAULT_BATCH_SIZE;
+		long batchTime = DEFAULT_BATCH_TIME;
+
+		if (args != null) {
+			batchSize = args.getInteger(BATCH_SIZE_ARG, batchSize);
+
+			Time t = args.getTime(BATCH_TIME_ARG);
+
+			if (t != null)
+				batchTime = t.unit.toNanos(t.time);
+		}
+
+		this.batchSize = Math.max(1, batchSize);
+		/*
+		 * A batch bounded by the wall-clock would make a simulation depend on
+		 * the speed of the machine.
+		 */
+		this.batchTime = simulated ? 0 : Math.max(0, batchTime);
+
+		configureMailbox();
+
+		if (simulated)
+			queue.setTimer(Agency.getVirtualTimer());
+
+		if (pooled) {
+			queue.setListener(new BodyQueue.Listener() {
+				public void taskReady(BodyQueue queue) {
+					wake();
+				}
+			});
+		}
+	}
+
+	/*
+	 * Bound the queue and give it a ring according to the mailbox args of the
+	 * actor, or to the default mailbox args. The queue of the agency is never
+	 * bounded and has no ring.
+	 */
+	private void configureMailbox() {
+		Args args = Agency.getArgs();
+
+		if (args == null || owner instanceof Agency)
+			return;
+
+		int capacity = args.getInteger(DEFAULT_MAILBOX_CAPACITY_ARG, 0);
+		String policy = args.get(DEFAULT_MAILBOX_POLICY_ARG, "REJECT");
+		int ring = args.getInteger(DEFAULT_MAILBOX_RING_ARG, 0);
+
+		if (owner.getArgsPrefix() != null) {
+			Args actorArgs = Agency.getActorArgs(owner);
+
+			if (actorArgs.has(MAILBOX_CAPACITY_ARG))
+				capacity = actorArgs.getInteger(MAILBOX_CAPACITY_ARG);
+
+			if (actorArgs.has(MAILBOX_POLICY_ARG))
+				policy = actorArgs.get(MAILBOX_POLICY_ARG);
+
+			if (actorArgs.has(MAILBOX_RING_ARG))
+				ring = actorArgs.getInteger(MAILBOX_RING_ARG);
+		}
+
+		if (ring > 0)
+			queue.setRing(ring);
+
+		if (capacity > 0) {
+			BodyQueue.OverflowPolicy p;
+
+			try {
+				p = BodyQueue.OverflowPolicy.valueOf(policy.trim()
+						.toUpperCase());
+			} catch (IllegalArgumentException e) {
+				Console.warning("unknown mailbox policy '%s'", policy);
+				p = BodyQueue.OverflowPolicy.REJECT;
+			}
+
+			queue.setCapacity(capacity, p);
+		}
 	}
 
 	/**
@@ -171,6 +353,29 @@ public class BodyThread extends ActorThread {
 		this(owner, new BodyQueue());
 	}
 
+	/**
+	 * Start the body. A dedicated body starts its thread, a pooled body is put
+	 * on the run queue of the dispatcher.
+	 */
+	public void startBody() {
+		if (pooled) {
+			if (state.get() == State.INIT)
+				wake();
+		} else if (!isAlive())
+			start();
+	}
+
+	/*
+	 * Start the body of an actor which has already been registered. The latch
+	 * is counted down once the body is running, or once it has failed to boot.
+	 */
+	final void spawn(CountDownLatch ready) {
+		this.registered = true;
+		this.ready = ready;
+
+		startBody();
+	}
+
 	/**
 	 * The method which will be run when the body will be started.
 	 * 
@@ -186,17 +391,9 @@ public class BodyThread extends ActorThread {
 	public void run() {
 		checkIsOwner();
 
-		running = true;
-		owner.register();
-
-		state.set(State.RUNNING);
-
-		onRun();
-
+		boot();
 		loop();
-		terminate();
-
-		state.set(State.TERMINATED);
+		shutdown();
 	}
 
 	/**
@@ -206,13 +403,33 @@ public class BodyThread extends ActorThread {
 	protected void onRun() {
 	}
 
-	/**
-	 * The body loop in which requests will be handled.
+	/*
+	 * Register the actor, enter the RUNNING state and enqueue the first step.
 	 */
-	private final void loop() {
-		checkIsOwner();
+	private void boot() {
+		running = true;
 
-		Object current;
+		try {
+			if (!registered)
+				owner.register();
+
+			bulkhead = Agency.getLocalAgency().getConcurrencyLimiter()
+					.getBulkhead(owner);
+
+			state.set(State.RUNNING);
+			booted = true;
+		} finally {
+			//
+			// The spawner is released even if the boot failed, it then finds
+			// out the body has not booted.
+			//
+			if (ready != null) {
+				ready.countDown();
+				ready = null;
+			}
+		}
+
+		onRun();
 
 		if (owner instanceof StepActor) {
 			StepActor sa = (StepActor) owner;
@@ -220,11 +437,20 @@ public class BodyThread extends ActorThread {
 					.getStepDelay(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS,
 					SpecialAction.STEP);
 
-			queue.add(sat);
+			post(sat);
 		}
+	}
+
+	/**
+	 * The body loop in which requests will be handled.
+	 */
+	private final void loop() {
+		checkIsOwner();
 
-		Semaphore actorThreadSemaphore = Agency.getLocalAgency()
-				.getActorThreadSemaphore();
+		ScheduledTask current;
+
+		ConcurrencyLimiter limiter = Agency.getLocalAgency()
+				.getConcurrencyLimiter();
 
 		while (running) {
 			state.set(State.IDLE);
@@ -238,31 +464,199 @@ public class BodyThread extends ActorThread {
 			if (current == null)
 				continue;
 
+			handleBatch(current, batchSize, limiter);
+		}
+	}
+
+	/*
+	 * Handle the requests of a pooled body. This is called by a dispatcher
+	 * worker assuming this body. At most the dispatcher throughput count of
+	 * requests are handled, by batches, before the worker is given back.
+	 */
+	final void runSlice() {
+		checkIsOwner();
+
+		if (state.get() == State.TERMINATED)
+			return;
+
+		try {
+			if (state.get() == State.INIT)
+				boot();
+
+			Dispatcher dispatcher = Agency.getLocalAgency().getDispatcher();
+			ConcurrencyLimiter limiter = Agency.getLocalAgency()
+					.getConcurrencyLimiter();
+			int handled = 0;
+			ScheduledTask current;
+
+			int throughput = dispatcher.getThroughput();
+
+			while (running && handled < throughput
+					&& (current = queue.poll()) != null)
+				handled += handleBatch(current, Math.min(batchSize, throughput
+						- handled), limiter);
+
+			state.set(State.IDLE);
+
+			if (!running)
+				shutdown();
+		} catch (Throwable e) {
+			running = false;
+			uncaughtException(this, e);
+			state.set(State.TERMINATED);
+		}
+	}
+
+	/*
+	 * Called by the dispatcher worker once it has stopped assuming this body.
+	 * The body is scheduled again if requests are ready.
+	 */
+	final void sliceDone() {
+		scheduled.set(false);
+
+		if (state.get() != State.TERMINATED && queue.isReady())
+			wake();
+	}
+
+	/*
+	 * Put a pooled body on the run queue of the dispatcher if it is not
+	 * already scheduled.
+	 */
+	final void wake() {
+		if (pooled && scheduled.compareAndSet(false, true))
+			Agency.getLocalAgency().getDispatcher().schedule(this);
+	}
+
+	/**
+	 * Handle a batch of tasks of the queue. A single permit of the agency
+	 * concurrency limiter is held while the batch is handled. The batch
+	 * begins with the task passed as parameter, then ready tasks are polled
+	 * until the queue is empty, the limit is reached or the batch has lasted
+	 * longer than the batch time. The state of the body becomes WORKING for
+	 * the whole batch.
+	 * 
+	 * @param first
+	 *            the first task of the batch
+	 * @param limit
+	 *            maximum count of tasks to handle
+	 * @param limiter
+	 *            the agency concurrency limiter
+	 * @return the count of handled tasks
+	 */
+	private int handleBatch(ScheduledTask first, int limit,
+			ConcurrencyLimiter limiter) {
+		int handled = 0;
+
+		limiter.acquire(bulkhead);
+
+		long start = System.nanoTime();
+
+		permitted = true;
+		waited = 0;
+
+		try {
+			state.set(State.WORKING);
+
+			long deadline = batchTime > 0 ? start + batchTime : 0;
+			ScheduledTask current = first;
+
+			do {
+				handle(current);
+				handled++;
+			} while (running && handled < limit
+					&& (batchTime == 0 || deadline - System.nanoTime() > 0)
+					&& (current = queue.poll()) != null);
+		} finally {
+			permitted = false;
+			limiter.release(bulkhead, handled, System.nanoTime() - start
+					- waited);
+		}
+
+		return handled;
+	}
+
+	/*
+	 * Called by the body before waiting for a future while handling a batch.
+	 * The permit is given back, so a body waiting for another one can not
+	 * prevent it from working. Return false if the body holds no permit.
+	 */
+	final boolean beginWait() {
+		if (!permitted)
+			return false;
+
+		permitted = false;
+		waited -= System.nanoTime();
+		Agency.getLocalAgency().getConcurrencyLimiter().suspend(bulkhead);
+
+		return true;
+	}
+
+	/*
+	 * Called by the body once the future is available, the permit is acquired
+	 * again.
+	 */
+	final void endWait() {
+		Agency.getLocalAgency().getConcurrencyLimiter().acquire(bulkhead);
+		waited += System.nanoTime();
+		permitted = true;
+	}
+
+	/**
+	 * Handle a task of the queue. If the owner has read-only callables, the
+	 * write lock of the owner is held while the task is handled.
+	 * 
+	 * @param current
+	 *            the task to handle
+	 */
+	private void handle(ScheduledTask current) {
+		Lock writeLock = owner.getWriteLock();
+
+		if (writeLock == null)
+			dispatch(current);
+		else {
+			writeLock.lock();
+
 			try {
-				actorThreadSemaphore.acquireUninterruptibly();
-
-				state.set(State.WORKING);
-
-				if (current instanceof Call) {
-					Call c = (Call) current;
-					executeCall(c);
-				} else if (current instanceof SpecialActionTask) {
-					SpecialActionTask sat = (SpecialActionTask) current;
-
-					switch (sat.action) {
-					case MIGRATE:
-						specialActionMigrate(sat);
-						break;
-					case STEP:
-						specialActionStep(sat);
-						break;
-					}
-				}
+				dispatch(current);
 			} finally {
-				actorThreadSemaphore.release();
+				writeLock.unlock();
 			}
 		}
+	}
+
+	private void dispatch(ScheduledTask current) {
+		if (current instanceof CallSlot) {
+			executeSlot((CallSlot) current);
+		} else if (current instanceof Call) {
+			Call c = (Call) current;
+			executeCall(c);
+		} else if (current instanceof SpecialActionTask) {
+			SpecialActionTask sat = (SpecialActionTask) current;
+
+			switch (sat.action) {
+			case MIGRATE:
+				specialActionMigrate(sat);
+				break;
+			case STEP:
+				specialActionStep(sat);
+				break;
+			case STOP:
+				terminateBody(StopPolicy.FINISH_EXECUTE_REQUEST_AND_STOP,
+						((StopTask) sat).cause);
+				break;
+			}
+		} else if (current instanceof PeriodicCall) {
+			executePeriodicCall((PeriodicCall) current);
+		} else if (current instanceof HandoffTask) {
+			((HandoffTask) current).complete();
+		}
+	}
 
+	/*
+	 * Handle remaining requests according to the stop policy, then terminate
+	 * the body.
+	 */
+	private void shutdown() {
 		state.set(State.TERMINATING);
 
 		switch (stopPolicy) {
@@ -270,27 +664,65 @@ public class BodyThread extends ActorThread {
 			ScheduledTask sat;
 
 			while ((sat = queue.poll()) != null) {
-				if (sat instanceof Call) {
+				if (sat instanceof CallSlot) {
+					executeSlot((CallSlot) sat);
+				} else if (sat instanceof Call) {
 					executeCall((Call) sat);
+				} else if (sat instanceof HandoffTask) {
+					((HandoffTask) sat).complete();
 				}
 			}
 		}
 		case SEND_REDIRECTION_AND_STOP: {
-			for (ScheduledTask sat : queue) {
+			LinkedList<ScheduledTask> remaining = new LinkedList<ScheduledTask>();
+			queue.drainTo(remaining);
+
+			for (ScheduledTask sat : remaining) {
 				if (sat instanceof Call) {
 					Call c = (Call) sat;
 					c.getFuture().init(stopCause);
+				} else if (sat instanceof HandoffTask) {
+					((HandoffTask) sat).abort(stopCause);
 				}
 			}
 
 			break;
 		}
 		}
+
+		terminate();
+
+		state.set(State.TERMINATED);
+	}
+
+	/**
+	 * Put a task in the queue. Delayed tasks are held by the timing wheel of
+	 * the agency until they expire. If the body is pooled, it is scheduled on
+	 * the dispatcher when the task becomes available.
+	 * 
+	 * @param task
+	 *            the task to enqueue
+	 */
+	protected final void post(ScheduledTask task) {
+		queue.add(task);
 	}
 
 	private void executeCall(Call c) {
 		try {
-			Object r = owner.call(c.getName(), c.getArgs());
+			CallableDescriptor callable = c.getCallable();
+			Object r;
+
+			if (callable != null && callable.isBlocking()) {
+				Agency.getLocalAgency().getBlockingPool().execute(
+						new BlockingCall(this, callable, c));
+				return;
+			}
+
+			if (callable != null)
+				r = owner.invoke(callable, c.getArgs());
+			else
+				r = owner.call(c.getName(), c.getArgs());
+
 			c.getFuture().init(r);
 
 			if (r instanceof CallException)
@@ -301,6 +733,53 @@ public class BodyThread extends ActorThread {
 		}
 	}
 
+	/*
+	 * Execute a call written in a slot of the ring. The slot is reused once
+	 * the next task is polled, so nothing should keep a reference to it.
+	 */
+	private void executeSlot(CallSlot slot) {
+		CallableDescriptor callable = slot.getCallable();
+		Future future = slot.getFuture();
+
+		try {
+			if (callable.isBlocking()) {
+				Agency.getLocalAgency().getBlockingPool().execute(
+						new BlockingCall(this, callable, slot.getArgs(), future));
+				return;
+			}
+
+			Object r = owner.invoke(callable, slot.getArgs());
+			future.init(r);
+
+			if (r instanceof CallException)
+				Console.warning("execution of '%s' failed : %s", callable
+						.getName(), ((Exception) r).getMessage());
+		} catch (Exception e) {
+			future.init(new CallException(e));
+		}
+	}
+
+	private void executePeriodicCall(PeriodicCall pc) {
+		if (pc.isCancelled())
+			return;
+
+		try {
+			Object r = owner.call(pc.getName(), pc.getArgs());
+
+			if (r instanceof CallException)
+				Console.warning("periodic execution of '%s' failed : %s", pc
+						.getName(), ((Exception) r).getMessage());
+		} catch (Exception e) {
+			Console.warning("periodic execution of '%s' failed : %s", pc
+					.getName(), e.getMessage());
+		}
+
+		if (!pc.isCancelled() && running) {
+			pc.reset();
+			post(pc);
+		}
+	}
+
 	/**
 	 * Handling of the special action MIGRATE. In a default body, this throws a
 	 * ActorInternalException.
@@ -326,7 +805,7 @@ public class BodyThread extends ActorThread {
 			sat.delay = sa.getStepDelay(sat.unit);
 			sat.reset();
 
-			queue.add(sat);
+			post(sat);
 		}
 	}
 
@@ -351,6 +830,60 @@ public class BodyThread extends ActorThread {
 		enqueue(c);
 	}
 
+	/*
+	 * Enqueue a call of a resolved callable. If the queue has a ring, calls of
+	 * NORMAL priority from other threads are written in a slot of the ring
+	 * rather than allocated.
+	 */
+	final void enqueue(CallableDescriptor callable, Future f, Object[] args) {
+		enqueue(ActorThread.getCurrentActor(), callable, f, args);
+	}
+
+	/*
+	 * Enqueue a call of a resolved callable issued on behalf of a given actor.
+	 */
+	final void enqueue(Actor source, CallableDescriptor callable, Future f,
+			Object[] args) {
+		if (queue.hasRing() && callable.getPriority() == Priority.Level.NORMAL
+				&& !isOwner()) {
+			if (source == null)
+				throw new NullPointerException();
+
+			switch (state.get()) {
+			case TERMINATING:
+			case TERMINATED:
+				f.init(stopCause);
+				break;
+			default:
+				Call.triggerCallEvent(source, owner);
+
+				if (!queue.offerCall(source, owner, callable, f, args))
+					f.init(new MailboxOverflowException("mailbox is full"));
+				break;
+			}
+
+			return;
+		}
+
+		Call c = new Call(source, owner, callable.getName(), f, args);
+		c.setCallable(callable);
+		enqueue(c);
+	}
+
+	/*
+	 * Enqueue a call of a resolved callable which arguments are still
+	 * encoded. The call is never written in the ring, so the arguments are
+	 * decoded by the thread executing the call.
+	 */
+	final void enqueue(Actor source, CallableDescriptor callable, Future f,
+			EncodedArgs args) {
+		if (source == null)
+			throw new NullPointerException();
+
+		Call.triggerCallEvent(source, owner);
+		enqueue(new Call(source, owner, callable, f, args));
+	}
+
 	/**
 	 * Enqueue a call in the body queue.
 	 * 
@@ -364,11 +897,68 @@ public class BodyThread extends ActorThread {
 			c.getFuture().init(stopCause);
 			break;
 		default:
-			queue.add(c);
+			CallableDescriptor callable = c.getCallable();
+
+			if (callable == null) {
+				callable = owner.getBodyMap().resolve(c.getName());
+				c.setCallable(callable);
+			}
+
+			if (callable != null)
+				c.setPriority(callable.getPriority());
+
+			if (!queue.offer(c))
+				c.getFuture().init(
+						new MailboxOverflowException("mailbox is full"));
+			break;
+		}
+	}
+
+	/*
+	 * Called once the result awaited by a handoff task, the return of a
+	 * blocking callable or the value of an awaited future, is available. The
+	 * task is completed by the body, or aborted if the body is terminated.
+	 */
+	final void handoff(HandoffTask task) {
+		switch (state.get()) {
+		case TERMINATING:
+		case TERMINATED:
+			task.abort(stopCause);
+			break;
+		default:
+			post(task);
+			break;
+		}
+	}
+
+	/**
+	 * Schedule a periodic call in the body.
+	 * 
+	 * @param pc
+	 *            the periodic call
+	 */
+	public final void schedule(PeriodicCall pc) {
+		switch (state.get()) {
+		case TERMINATING:
+		case TERMINATED:
+			pc.cancel();
+			break;
+		default:
+			pc.setPriority(owner.getBodyMap().getPriority(pc.getName()));
+			post(pc);
 			break;
 		}
 	}
 
+	/**
+	 * Get the count of requests waiting in the queue of the body.
+	 * 
+	 * @return depth of the queue
+	 */
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
 	/**
 	 * Get the actual body state. The access is thread safe, but the returned
 	 * state object just describe the state of the body at the invocation of the
@@ -380,6 +970,68 @@ public class BodyThread extends ActorThread {
 		return state.get();
 	}
 
+	/**
+	 * Test if the body is pooled.
+	 * 
+	 * @return true if the body is scheduled on the agency dispatcher
+	 */
+	public boolean isPooled() {
+		return pooled;
+	}
+
+	/**
+	 * Test if the body runs on the virtual clock of the simulation.
+	 * 
+	 * @return true if the owner is a simulated actor
+	 * @see org.d3.actor.Agency#isSimulated(LocalActor)
+	 */
+	public boolean isSimulated() {
+		return simulated;
+	}
+
+	/**
+	 * Get the clock of the delays of this body.
+	 * 
+	 * @return the virtual clock if the body is simulated, else the system one
+	 */
+	public Clock getClock() {
+		return clock;
+	}
+
+	/*
+	 * Test if the body has entered the RUNNING state, even if it has been
+	 * terminated since.
+	 */
+	final boolean hasBooted() {
+		return booted;
+	}
+
+	/**
+	 * Test if the body has been started and is not terminated yet. Unlike
+	 * {@link java.lang.Thread#isAlive()}, this works for pooled bodies.
+	 * 
+	 * @return true if the body is alive
+	 */
+	public boolean isBodyAlive() {
+		if (!pooled)
+			return isAlive();
+
+		State s = state.get();
+		return s != State.INIT && s != State.TERMINATED;
+	}
+
+	/**
+	 * Wait for the termination of the body.
+	 * 
+	 * @throws InterruptedException
+	 */
+	public void joinBody() throws InterruptedException {
+		if (pooled)
+			state.waitForState(State.TERMINATED);
+		else
+			join();
+	}
+
 	/**
 	 * Allows to wait until the body becomes ready.
 	 * 
@@ -413,14 +1065,24 @@ public class BodyThread extends ActorThread {
 
 		SpecialActionTask sat = new SpecialActionTask(0, TimeUnit.SECONDS,
 				SpecialAction.MIGRATE);
-		queue.add(sat);
+		post(sat);
+	}
+
+	/*
+	 * PRIVATE. Enqueue a stop request, so the body can be stopped by any
+	 * thread.
+	 */
+	void requestStop(Throwable cause) {
+		post(new StopTask(cause));
 	}
 
 	/**
-	 * Terminate the body. The actor owning the body is unregistered.
+	 * Terminate the body. The termination hook of the owner is called, then
+	 * the owner is unregistered.
 	 */
 	protected void terminate() {
 		super.terminate();
+		owner.terminate();
 		owner.unregister();
 	}
 
@@ -438,7 +1100,7 @@ public class BodyThread extends ActorThread {
 		running = false;
 		stopCause = cause;
 
-		if (state.get() == State.IDLE)
+		if (!pooled && state.get() == State.IDLE)
 			interrupt();
 	}
 }
@@ -22,7 +22,9 @@ import java.util.concurrent.TimeUnit;
 
 import org.d3.Actor;
 import org.d3.ActorNotFoundException;
+import org.d3.actor.body.CallableDescriptor;
 import org.d3.entity.migration.CallData;
+import org.d3.events.EventDispatcher;
 import org.d3.remote.UnknownAgencyException;
 
 public class Call extends ScheduledTask {
@@ -30,8 +32,13 @@ public class Call extends ScheduledTask {
 	private final Actor source;
 	private final Actor target;
 	private final String name;
-	private final Object[] args;
+	private Object[] args;
 	private final Future future;
+	private CallableDescriptor callable;
+	/**
+	 * Arguments not decoded yet, null once they have been decoded.
+	 */
+	private EncodedArgs encoded;
 
 	public Call(Actor target, String name, Object... args) {
 		this(0, TimeUnit.NANOSECONDS, target, name, args);
@@ -48,9 +55,36 @@ public class Call extends ScheduledTask {
 
 	public Call(long delay, TimeUnit unit, Actor target, String name,
 			Future future, Object... args) {
+		this(delay, unit, ActorThread.getCurrentActor(), target, name, future,
+				args);
+	}
+
+	/**
+	 * Create a call issued on behalf of a given actor rather than the actor
+	 * owning the current thread. This is used to dispatch calls received from
+	 * remote actors, which have no thread on the local agency.
+	 * 
+	 * @param source
+	 *            the calling actor
+	 * @param target
+	 *            the called actor
+	 * @param name
+	 *            name of the callable
+	 * @param future
+	 *            the future of the call
+	 * @param args
+	 *            arguments of the call
+	 */
+	public Call(Actor source, Actor target, String name, Future future,
+			Object... args) {
+		this(0, TimeUnit.NANOSECONDS, source, target, name, future, args);
+	}
+
+	private Call(long delay, TimeUnit unit, Actor source, Actor target,
+			String name, Future future, Object[] args) {
 		super(delay, unit);
 
-		source = ActorThread.getCurrentActor();
+		this.source = source;
 
 		if (source == null || name == null || target == null)
 			throw new NullPointerException();
@@ -60,8 +94,56 @@ public class Call extends ScheduledTask {
 		this.args = args;
 		this.future = future;
 
-		Agency.getLocalAgency().getActors().getEventDispatcher()
-				.trigger(ActorsEvent.CALL, source, target);
+		triggerCallEvent(source, target);
+	}
+
+	/**
+	 * Rebuild a call which has already been issued, for example a call written
+	 * in a slot of a body queue ring. No event is triggered.
+	 * 
+	 * @param source
+	 *            the calling actor
+	 * @param target
+	 *            the called actor
+	 * @param callable
+	 *            the callable of the target, already resolved
+	 * @param future
+	 *            the future of the call
+	 * @param args
+	 *            arguments of the call
+	 */
+	public Call(Actor source, Actor target, CallableDescriptor callable,
+			Future future, Object[] args) {
+		super(0, TimeUnit.NANOSECONDS);
+
+		this.source = source;
+		this.target = target;
+		this.name = callable.getName();
+		this.args = args;
+		this.future = future;
+		this.callable = callable;
+	}
+
+	/**
+	 * Build a call of a resolved callable which arguments are still encoded.
+	 * They are decoded the first time {@link #getArgs()} is called. No event
+	 * is triggered.
+	 * 
+	 * @param source
+	 *            the calling actor
+	 * @param target
+	 *            the called actor
+	 * @param callable
+	 *            the callable of the target, already resolved
+	 * @param future
+	 *            the future of the call
+	 * @param args
+	 *            encoded arguments of the call
+	 */
+	public Call(Actor source, Actor target, CallableDescriptor callable,
+			Future future, EncodedArgs args) {
+		this(source, target, callable, future, (Object[]) null);
+		this.encoded = args;
 	}
 
 	public Call(CallData data) throws CallException {
@@ -105,14 +187,52 @@ public class Call extends ScheduledTask {
 	}
 
 	public int getArgCount() {
+		Object[] args = getArgs();
 		return args == null ? 0 : args.length;
 	}
 
+	/**
+	 * Get the arguments of the call. If they are still encoded, they are
+	 * decoded by the calling thread, which should be the thread invoking the
+	 * callable.
+	 * 
+	 * @return arguments of the call
+	 */
 	public Object[] getArgs() {
+		if (encoded != null) {
+			args = encoded.decode();
+			encoded = null;
+		}
+
 		return args;
 	}
 
 	public Future getFuture() {
 		return future;
 	}
+
+	/**
+	 * Get the callable of the target resolved for this call. This is null
+	 * until the call is enqueued by the body of the target.
+	 * 
+	 * @return the resolved callable or null
+	 */
+	public CallableDescriptor getCallable() {
+		return callable;
+	}
+
+	void setCallable(CallableDescriptor callable) {
+		this.callable = callable;
+	}
+
+	/*
+	 * Notify the listeners of the actors that a call has been issued.
+	 */
+	static void triggerCallEvent(Actor source, Actor target) {
+		EventDispatcher<ActorsEvent> events = Agency.getLocalAgency()
+				.getActors().getEventDispatcher();
+
+		if (events.shouldTrigger(ActorsEvent.CALL))
+			events.trigger(ActorsEvent.CALL, source, target);
+	}
 }
@@ -0,0 +1,78 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.actor;
+
+/**
+ * Source of the time used to schedule the tasks of bodies. The clock is the
+ * system one, unless the agency runs in simulation mode and the body is the
+ * one of a simulated actor. The time is then virtual and advanced by the timer
+ * of the simulation.
+ * 
+ * Code of actors computing delays of tasks or durations which should follow
+ * the virtual time should use {@link #now()} rather than
+ * <code>System.nanoTime()</code>.
+ * 
+ * @author Guilhelm Savin
+ * @see org.d3.actor.body.VirtualTimer
+ */
+public abstract class Clock {
+	/**
+	 * Clock based on <code>System.nanoTime()</code>.
+	 */
+	public static final Clock SYSTEM = new Clock() {
+		public long nanoTime() {
+			return System.nanoTime();
+		}
+	};
+
+	/**
+	 * Get the actual time of the clock of the current body.
+	 * 
+	 * @return time in nanoseconds
+	 */
+	public static long now() {
+		return get().nanoTime();
+	}
+
+	/**
+	 * Get the clock of the body running in the current thread. Threads which
+	 * are not running a body use the system clock.
+	 * 
+	 * @return the current clock
+	 */
+	public static Clock get() {
+		Thread t = Thread.currentThread();
+		BodyThread body = null;
+
+		if (t instanceof BodyThread)
+			body = (BodyThread) t;
+		else if (t instanceof DispatcherThread)
+			body = ((DispatcherThread) t).getAssumedBody();
+
+		return body == null ? SYSTEM : body.getClock();
+	}
+
+	/**
+	 * Get the time of this clock, in nanoseconds. As for
+	 * <code>System.nanoTime()</code>, the origin is arbitrary.
+	 * 
+	 * @return time in nanoseconds
+	 */
+	public abstract long nanoTime();
+}
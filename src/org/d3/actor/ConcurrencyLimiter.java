@@ -0,0 +1,375 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.actor;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.d3.Args;
+import org.d3.tools.Time;
+
+/**
+ * Limit of the count of bodies handling requests at the same time. A body
+ * acquires a permit of the limiter before handling a batch of requests and
+ * releases it once the batch is done.
+ * 
+ * The limit is adaptive by default. The limiter measures the time needed to
+ * handle a request and keeps the lowest time observed. At the end of each
+ * window, the limit is multiplied by the ratio between this lowest time, with
+ * some tolerance, and the actual time, so it decreases when bodies slow each
+ * other down. If bodies are waiting for a permit while the time is stable, the
+ * limit grows by the square root of the limit. The lowest time is forgotten
+ * from time to time to follow changes of the load.
+ * 
+ * The argument <code>actors.threads.concurrent</code> gives the initial
+ * limit, which stays fixed if <code>actors.threads.adaptive</code> is false
+ * or if the agency runs in simulation mode.
+ * Bounds of the adaptive limit are given by <code>actors.threads.min</code> and
+ * <code>actors.threads.max</code>, by default the count of processors and
+ * eight times this count. A body waiting for a future gives back its permit
+ * until the future is available, and the time it has waited is not accounted.
+ * 
+ * A class of actors can be given a bulkhead using the actor args prefix, for
+ * example <code>entity.traveller.threads.concurrent</code>. Bodies of these
+ * actors have to acquire a permit of the bulkhead before the one of the
+ * limiter, so they can not use more than the bulkhead limit.
+ * 
+ * @author Guilhelm Savin
+ * @see org.d3.actor.BodyThread
+ */
+public class ConcurrencyLimiter {
+	public static final String LIMIT_ARG = "actors.threads.concurrent";
+	public static final String ADAPTIVE_ARG = "actors.threads.adaptive";
+	public static final String MIN_LIMIT_ARG = "actors.threads.min";
+	public static final String MAX_LIMIT_ARG = "actors.threads.max";
+	public static final String WINDOW_ARG = "actors.threads.window";
+	public static final String BULKHEAD_ARG = "threads.concurrent";
+
+	private static final double TOLERANCE = 2.0;
+	private static final double SMOOTHING = 0.2;
+	private static final int PROBE_WINDOWS = 100;
+
+	/**
+	 * Counting gate with a limit which can be changed while permits are held.
+	 */
+	public static class Gate {
+		private volatile int limit;
+		private final AtomicInteger inFlight;
+		/**
+		 * Count of threads waiting for a permit.
+		 */
+		private final AtomicInteger waiting;
+		private final ReentrantLock lock;
+		private final Condition available;
+
+		Gate(int limit) {
+			this.limit = limit;
+			this.inFlight = new AtomicInteger(0);
+			this.waiting = new AtomicInteger(0);
+			this.lock = new ReentrantLock();
+			this.available = lock.newCondition();
+		}
+
+		public int getLimit() {
+			return limit;
+		}
+
+		public int getInFlight() {
+			return inFlight.get();
+		}
+
+		public int getWaiting() {
+			return waiting.get();
+		}
+
+		void acquire() {
+			if (tryAcquire())
+				return;
+
+			waiting.incrementAndGet();
+			lock.lock();
+
+			try {
+				while (!tryAcquire())
+					available.awaitUninterruptibly();
+			} finally {
+				lock.unlock();
+				waiting.decrementAndGet();
+			}
+		}
+
+		void release() {
+			inFlight.decrementAndGet();
+
+			if (waiting.get() > 0)
+				signal(false);
+		}
+
+		void setLimit(int limit) {
+			int old = this.limit;
+			this.limit = limit;
+
+			if (limit > old && waiting.get() > 0)
+				signal(true);
+		}
+
+		private boolean tryAcquire() {
+			int n;
+
+			do {
+				n = inFlight.get();
+
+				if (n >= limit)
+					return false;
+			} while (!inFlight.compareAndSet(n, n + 1));
+
+			return true;
+		}
+
+		private void signal(boolean all) {
+			lock.lock();
+
+			try {
+				if (all)
+					available.signalAll();
+				else
+					available.signal();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	private final Gate gate;
+	private final ConcurrentHashMap<String, Gate> bulkheads;
+	private final boolean adaptive;
+	private final int minLimit;
+	private final int maxLimit;
+	private final long window;
+	/**
+	 * Count of requests and time spent handling them in the current window.
+	 */
+	private final AtomicLong samples;
+	private final AtomicLong sampleTime;
+	private final AtomicBoolean updating;
+	private volatile long windowStart;
+	/*
+	 * Following fields are only accessed by the thread updating the limit.
+	 */
+	private double estimate;
+	private double minTime;
+	private int windows;
+
+	public ConcurrencyLimiter(Args args) {
+		int processors = Runtime.getRuntime().availableProcessors();
+		int limit = args.getInteger(LIMIT_ARG, processors * 2);
+		long window = TimeUnit.MILLISECONDS.toNanos(100);
+
+		Time t = args.getTime(WINDOW_ARG);
+
+		if (t != null)
+			window = t.unit.toNanos(t.time);
+
+		this.adaptive = args.getBoolean(ADAPTIVE_ARG, true)
+				&& !Agency.isSimulation();
+		this.minLimit = Math.max(1, args.getInteger(MIN_LIMIT_ARG, processors));
+		this.maxLimit = Math.max(minLimit, args.getInteger(MAX_LIMIT_ARG,
+				processors * 8));
+		this.window = Math.max(1, window);
+
+		if (adaptive)
+			limit = Math.max(minLimit, Math.min(maxLimit, limit));
+		else
+			limit = Math.max(1, limit);
+
+		this.gate = new Gate(limit);
+		this.bulkheads = new ConcurrentHashMap<String, Gate>();
+		this.samples = new AtomicLong(0);
+		this.sampleTime = new AtomicLong(0);
+		this.updating = new AtomicBoolean(false);
+		this.windowStart = System.nanoTime();
+		this.estimate = limit;
+		this.minTime = 0;
+		this.windows = 0;
+	}
+
+	/**
+	 * Get the actual limit of concurrent bodies.
+	 * 
+	 * @return current limit
+	 */
+	public int getLimit() {
+		return gate.getLimit();
+	}
+
+	/**
+	 * Get the count of bodies actually holding a permit.
+	 * 
+	 * @return count of working bodies
+	 */
+	public int getInFlight() {
+		return gate.getInFlight();
+	}
+
+	/**
+	 * Get the count of bodies waiting for a permit.
+	 * 
+	 * @return count of waiting bodies
+	 */
+	public int getWaiting() {
+		return gate.getWaiting();
+	}
+
+	public boolean isAdaptive() {
+		return adaptive;
+	}
+
+	/**
+	 * Get the bulkhead of an actor, if its args define one. Actors of the same
+	 * args prefix share the same bulkhead. The agency has no bulkhead.
+	 * 
+	 * @param actor
+	 *            the actor
+	 * @return the bulkhead or null
+	 */
+	public Gate getBulkhead(LocalActor actor) {
+		String prefix = actor.getArgsPrefix();
+
+		if (prefix == null || actor instanceof Agency)
+			return null;
+
+		Gate bulkhead = bulkheads.get(prefix);
+
+		if (bulkhead == null) {
+			Args actorArgs = Agency.getActorArgs(actor);
+
+			if (!actorArgs.has(BULKHEAD_ARG))
+				return null;
+
+			bulkhead = new Gate(Math.max(1, actorArgs
+					.getInteger(BULKHEAD_ARG)));
+
+			Gate previous = bulkheads.putIfAbsent(prefix, bulkhead);
+
+			if (previous != null)
+				bulkhead = previous;
+		}
+
+		return bulkhead;
+	}
+
+	/**
+	 * Wait for a permit of the bulkhead, if any, then for a permit of the
+	 * limiter.
+	 * 
+	 * @param bulkhead
+	 *            the bulkhead of the body, or null
+	 */
+	public void acquire(Gate bulkhead) {
+		if (bulkhead != null)
+			bulkhead.acquire();
+
+		gate.acquire();
+	}
+
+	/**
+	 * Release the permits acquired by a body and account the requests it has
+	 * handled.
+	 * 
+	 * @param bulkhead
+	 *            the bulkhead of the body, or null
+	 * @param handled
+	 *            count of requests handled under the permit
+	 * @param elapsed
+	 *            time, in nanoseconds, the permit has been held
+	 */
+	public void release(Gate bulkhead, int handled, long elapsed) {
+		gate.release();
+
+		if (bulkhead != null)
+			bulkhead.release();
+
+		if (adaptive && handled > 0)
+			sample(handled, elapsed);
+	}
+
+	/**
+	 * Give back the permits of a body which is going to wait. The permits
+	 * should be acquired again once the wait is over.
+	 * 
+	 * @param bulkhead
+	 *            the bulkhead of the body, or null
+	 */
+	public void suspend(Gate bulkhead) {
+		gate.release();
+
+		if (bulkhead != null)
+			bulkhead.release();
+	}
+
+	private void sample(int handled, long elapsed) {
+		samples.addAndGet(handled);
+		sampleTime.addAndGet(elapsed);
+
+		long now = System.nanoTime();
+
+		if (now - windowStart < window || !updating.compareAndSet(false, true))
+			return;
+
+		try {
+			long n = samples.getAndSet(0);
+			long time = sampleTime.getAndSet(0);
+
+			windowStart = now;
+
+			if (n > 0)
+				update(time / (double) n);
+		} finally {
+			updating.set(false);
+		}
+	}
+
+	/*
+	 * Compute the new limit from the mean time of a request in the last
+	 * window.
+	 */
+	private void update(double time) {
+		if (minTime == 0 || time < minTime || ++windows >= PROBE_WINDOWS) {
+			minTime = time;
+			windows = 0;
+		}
+
+		double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * minTime
+				/ time));
+		double target = estimate * gradient;
+
+		if (gate.getWaiting() > 0)
+			target += Math.sqrt(estimate);
+
+		estimate = estimate * (1 - SMOOTHING) + target * SMOOTHING;
+		estimate = Math.max(minLimit, Math.min(maxLimit, estimate));
+
+		gate.setLimit((int) Math.round(estimate));
+	}
+}
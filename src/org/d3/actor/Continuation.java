@@ -0,0 +1,38 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.actor;
+
+/**
+ * Computation applied to the value of a future once it is available.
+ * 
+ * @author Guilhelm Savin
+ * @see org.d3.actor.Future#thenApply(Continuation)
+ */
+public interface Continuation {
+	/**
+	 * Compute a new value from the value of a future. If an exception is
+	 * thrown, it is wrapped in a CallException.
+	 * 
+	 * @param value
+	 *            the value of the future
+	 * @return the new value
+	 * @throws Exception
+	 */
+	Object resume(Object value) throws Exception;
+}
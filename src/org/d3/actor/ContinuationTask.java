@@ -0,0 +1,65 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.actor;
+
+/**
+ * Continuation registered by an actor awaiting a future. When the future is
+ * available, the task is posted to the body of the actor which applies the
+ * continuation and initializes the result future.
+ * 
+ * @see org.d3.actor.LocalActor#await(Future, Continuation)
+ */
+class ContinuationTask extends HandoffTask implements FutureListener {
+
+	private final BodyThread body;
+	private final Continuation continuation;
+	private final Future result;
+	private Object value;
+
+	ContinuationTask(BodyThread body, Continuation continuation, Future result) {
+		this.body = body;
+		this.continuation = continuation;
+		this.result = result;
+	}
+
+	public void futureAvailable(Future future) {
+		value = future.value();
+		body.handoff(this);
+	}
+
+	/*
+	 * Apply the continuation, in the body. A CallException is forwarded
+	 * without invoking the continuation.
+	 */
+	void complete() {
+		if (value instanceof CallException) {
+			result.init(value);
+		} else {
+			try {
+				result.init(continuation.resume(value));
+			} catch (Exception e) {
+				result.init(new CallException(e));
+			}
+		}
+	}
+
+	void abort(Throwable stopCause) {
+		result.init(new CallException(stopCause));
+	}
+}
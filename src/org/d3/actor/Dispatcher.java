@@ -0,0 +1,300 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.actor;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.d3.Args;
+import org.d3.Console;
+import org.d3.actor.body.VirtualTimer;
+
+/**
+ * Dispatcher used by pooled bodies. A pooled body does not own a thread: each
+ * time its queue contains requests ready to be handled, the body is scheduled
+ * on one of the worker threads of the dispatcher. A body is never scheduled
+ * twice at the same time, so requests of an actor are still handled one after
+ * the other.
+ * 
+ * Pooled mode is enabled for all actors with the argument
+ * <code>actors.dispatcher.pooled</code>, or for a class of actors using the
+ * actor args prefix, for example <code>entity.traveller.dispatcher.pooled</code>.
+ * The agency itself always runs on a dedicated body.
+ * 
+ * A pooled body should not block, but it may have to wait for a future, for
+ * example in a {@link org.d3.tools.FutureGroup}. While a worker is waiting,
+ * a spare worker is started so the count of running workers is kept. Spare
+ * workers stop once they are idle and no worker is waiting anymore.
+ * 
+ * In simulation mode, the bodies of the simulated actors are always pooled.
+ * Once the run queue is empty and all the workers are idle, the last idle
+ * worker advances the virtual timer of the agency, which makes the next
+ * delayed tasks available. With a single worker, which is the default, a
+ * simulation is reproducible.
+ * 
+ * @author Guilhelm Savin
+ * @see org.d3.actor.DispatcherThread
+ */
+public class Dispatcher {
+	public static final String POOLED_ARG = "dispatcher.pooled";
+	public static final String DEFAULT_POOLED_ARG = "actors.dispatcher.pooled";
+	public static final String THREADS_ARG = "actors.dispatcher.threads";
+	public static final String THROUGHPUT_ARG = "actors.dispatcher.throughput";
+	public static final String SIMULATION_THREADS_ARG = "actors.simulation.threads";
+
+	/**
+	 * Check if the body of an actor has to be pooled.
+	 * 
+	 * @param actor
+	 *            the actor owning the body
+	 * @return true if the body should be scheduled on the dispatcher
+	 */
+	public static boolean isPooled(LocalActor actor) {
+		Args args = Agency.getArgs();
+
+		if (actor instanceof Agency || args == null)
+			return false;
+
+		if (Agency.isSimulated(actor))
+			return true;
+
+		if (actor.getArgsPrefix() != null) {
+			Args actorArgs = Agency.getActorArgs(actor);
+
+			if (actorArgs.has(POOLED_ARG))
+				return actorArgs.getBoolean(POOLED_ARG);
+		}
+
+		return args.getBoolean(DEFAULT_POOLED_ARG, false);
+	}
+
+	private final LinkedBlockingQueue<BodyThread> runQueue;
+	private final DispatcherThread[] workers;
+	private final int throughput;
+	private volatile boolean started;
+	/**
+	 * Count of workers waiting for a future.
+	 */
+	private final AtomicInteger blocked;
+	/**
+	 * Count of spare workers alive.
+	 */
+	private final AtomicInteger spares;
+	private final AtomicInteger spareIds;
+	/**
+	 * Virtual timer advanced when the workers are idle, null if the agency is
+	 * not in simulation mode.
+	 */
+	private final VirtualTimer timer;
+	private final ReentrantLock idleLock;
+	private final Condition idle;
+	/**
+	 * Count of workers waiting for a body, in simulation mode.
+	 */
+	private int waiting;
+
+	public Dispatcher(Args args) {
+		this(args, null);
+	}
+
+	/**
+	 * Create a dispatcher which advances a virtual timer.
+	 * 
+	 * @param args
+	 *            args of the agency
+	 * @param timer
+	 *            the virtual timer, or null
+	 */
+	public Dispatcher(Args args, VirtualTimer timer) {
+		int threads = Runtime.getRuntime().availableProcessors();
+
+		if (timer != null)
+			threads = args.getInteger(SIMULATION_THREADS_ARG, 1);
+		else if (args.has(THREADS_ARG))
+			threads = args.getInteger(THREADS_ARG);
+
+		this.runQueue = new LinkedBlockingQueue<BodyThread>();
+		this.workers = new DispatcherThread[Math.max(1, threads)];
+		this.throughput = Math.max(1, args.getInteger(THROUGHPUT_ARG, 64));
+		this.started = false;
+		this.blocked = new AtomicInteger(0);
+		this.spares = new AtomicInteger(0);
+		this.spareIds = new AtomicInteger(0);
+		this.timer = timer;
+		this.waiting = 0;
+
+		if (timer != null) {
+			this.idleLock = new ReentrantLock();
+			this.idle = idleLock.newCondition();
+
+			timer.setListener(new Runnable() {
+				public void run() {
+					signalIdle();
+				}
+			});
+		} else {
+			this.idleLock = null;
+			this.idle = null;
+		}
+	}
+
+	/**
+	 * Get the maximum count of requests a pooled body can handle before giving
+	 * back its worker thread.
+	 * 
+	 * @return throughput of the dispatcher
+	 */
+	public int getThroughput() {
+		return throughput;
+	}
+
+	public int getWorkerCount() {
+		return workers.length;
+	}
+
+	/**
+	 * Put a body on the run queue. Workers are started on the first call.
+	 * 
+	 * @param body
+	 *            the body to schedule
+	 */
+	void schedule(BodyThread body) {
+		if (!started)
+			start();
+
+		runQueue.add(body);
+
+		if (timer != null)
+			signalIdle();
+	}
+
+	BodyThread next() throws InterruptedException {
+		if (timer == null)
+			return runQueue.take();
+
+		idleLock.lock();
+
+		try {
+			waiting++;
+
+			try {
+				while (true) {
+					BodyThread body = runQueue.poll();
+
+					if (body != null)
+						return body;
+
+					if (waiting == workers.length && timer.advance())
+						continue;
+
+					idle.await();
+				}
+			} finally {
+				waiting--;
+			}
+		} finally {
+			idleLock.unlock();
+		}
+	}
+
+	/*
+	 * Wait for a body, as a spare worker. Return null if no body is received
+	 * before the keep-alive delay.
+	 */
+	BodyThread nextSpare() throws InterruptedException {
+		return runQueue.poll(1, TimeUnit.SECONDS);
+	}
+
+	/*
+	 * Called by a worker before it waits for a future. A spare worker is
+	 * started if there are less spare workers than waiting ones. In
+	 * simulation mode, the count of workers is part of the determinism of the
+	 * run, so no spare worker is started.
+	 */
+	void beginBlocking() {
+		if (timer != null) {
+			Console.warning("a pooled body is blocked, the simulation stalls");
+			return;
+		}
+
+		int b = blocked.incrementAndGet();
+
+		while (true) {
+			int s = spares.get();
+
+			if (s >= b)
+				return;
+
+			if (spares.compareAndSet(s, s + 1)) {
+				DispatcherThread spare = new DispatcherThread(this, "spare-"
+						+ spareIds.getAndIncrement(), true);
+				spare.start();
+				return;
+			}
+		}
+	}
+
+	void endBlocking() {
+		if (timer == null)
+			blocked.decrementAndGet();
+	}
+
+	/*
+	 * Called by an idle spare worker. Return true if the worker has to stop.
+	 */
+	boolean retire() {
+		while (true) {
+			int s = spares.get();
+
+			if (s <= blocked.get())
+				return false;
+
+			if (spares.compareAndSet(s, s - 1))
+				return true;
+		}
+	}
+
+	/*
+	 * Wake up an idle worker in simulation mode.
+	 */
+	private void signalIdle() {
+		idleLock.lock();
+
+		try {
+			idle.signal();
+		} finally {
+			idleLock.unlock();
+		}
+	}
+
+	private synchronized void start() {
+		if (started)
+			return;
+
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new DispatcherThread(this, "worker-" + i, false);
+			workers[i].start();
+		}
+
+		started = true;
+	}
+}
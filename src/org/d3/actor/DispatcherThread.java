@@ -0,0 +1,100 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.actor;
+
+import org.d3.Console;
+
+/**
+ * Worker thread of a {@link org.d3.actor.Dispatcher}. While it is handling the
+ * requests of a pooled body, the worker assumes this body: the actor owning the
+ * body is the current actor and the body ownership checks succeed.
+ * 
+ * @author Guilhelm Savin
+ * @see org.d3.actor.ActorThread#getCurrentActor()
+ */
+public class DispatcherThread extends Thread {
+
+	private final Dispatcher dispatcher;
+	private volatile BodyThread body;
+	/**
+	 * True if the worker has been started to replace a waiting one.
+	 */
+	private final boolean spare;
+
+	DispatcherThread(Dispatcher dispatcher, String id, boolean spare) {
+		super("/dispatcher/" + id);
+
+		this.dispatcher = dispatcher;
+		this.body = null;
+		this.spare = spare;
+
+		setDaemon(true);
+	}
+
+	/**
+	 * Get the body actually assumed by this worker.
+	 * 
+	 * @return the assumed body or null if the worker is waiting
+	 */
+	public BodyThread getAssumedBody() {
+		return body;
+	}
+
+	/*
+	 * Called before the worker waits for a future.
+	 */
+	void beginBlocking() {
+		dispatcher.beginBlocking();
+	}
+
+	void endBlocking() {
+		dispatcher.endBlocking();
+	}
+
+	public void run() {
+		while (true) {
+			BodyThread next;
+
+			try {
+				next = spare ? dispatcher.nextSpare() : dispatcher.next();
+			} catch (InterruptedException e) {
+				continue;
+			}
+
+			if (next == null) {
+				if (dispatcher.retire())
+					return;
+
+				continue;
+			}
+
+			body = next;
+
+			try {
+				next.runSlice();
+			} catch (Throwable e) {
+				Console.error("dispatcher worker failure: %s", e.getMessage());
+			} finally {
+				body = null;
+			}
+
+			next.sliceDone();
+		}
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.actor;
+
+/**
+ * Arguments of a call which are still encoded, as received from a remote
+ * agency. They are decoded by the thread invoking the callable, usually the
+ * body of the target, and not decoded at all if the call can not be routed.
+ * 
+ * @author Guilhelm Savin
+ * @see org.d3.actor.LocalActor#call(org.d3.Actor, String, Future, EncodedArgs)
+ */
+public interface EncodedArgs {
+	/**
+	 * Decode the arguments. This is called at most once per call.
+	 * 
+	 * @return the decoded arguments
+	 */
+	Object[] decode();
+}
@@ -20,92 +20,204 @@ package org.d3.actor;
 
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.security.SecureRandom;
-import java.util.LinkedList;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 
+import org.d3.Actor;
+import org.d3.Console;
+import org.d3.protocol.Futures;
+
+/**
+ * Value of a call which will be available later.
+ * 
+ * The state of the future is a single atomic reference: while the value is not
+ * available, it is the stack of the registered listeners, then it becomes the
+ * value. Listeners are notified by the thread initializing the future. Threads
+ * waiting for the value are parked and unparked as soon as the value is
+ * available.
+ * 
+ * A future created for a local call has no id. An id is only allocated, and
+ * the future registered in the futures of the agency, when the future has to
+ * be referenced outside of the agency, ie. when the call is transmitted to a
+ * remote actor or migrated.
+ * 
+ * @author Guilhelm Savin
+ * @see org.d3.actor.FutureListener
+ */
 public class Future {
 	public static enum SpecialReturn {
 		NULL, VOID
 	}
 
-	private static final SecureRandom random = new SecureRandom();
 	private static final AtomicLong futureIdGenerator = new AtomicLong(0);
 
-	private static String newFutureId() {
-		return String.format("%016x%016x%016x", System.nanoTime(),
-				random.nextLong(), futureIdGenerator.getAndIncrement());
+	private static final AtomicReferenceFieldUpdater<Future, Object> STATE = AtomicReferenceFieldUpdater
+			.newUpdater(Future.class, Object.class, "state");
+	private static final AtomicReferenceFieldUpdater<Future, FutureId> ID = AtomicReferenceFieldUpdater
+			.newUpdater(Future.class, FutureId.class, "id");
+
+	private static FutureId newFutureId() {
+		return new FutureId(Agency.getLocalEpoch(), futureIdGenerator
+				.incrementAndGet());
+	}
+
+	/*
+	 * Element of the stack of listeners.
+	 */
+	private static final class Listeners {
+		final FutureListener listener;
+		final Listeners next;
+
+		Listeners(FutureListener listener, Listeners next) {
+			this.listener = listener;
+			this.next = next;
+		}
+	}
+
+	/*
+	 * Box of the value, once available.
+	 */
+	private static final class Value {
+		final Object value;
+
+		Value(Object value) {
+			this.value = value;
+		}
 	}
 
-	private final String id;
-	private Object value;
-	private final AtomicBoolean available;
-	private LinkedList<CountDownLatch> latchs;
+	/*
+	 * Listener unparking a waiting thread.
+	 */
+	private static final class Waiter implements FutureListener {
+		final Thread thread;
+
+		Waiter(Thread thread) {
+			this.thread = thread;
+		}
+
+		public void futureAvailable(Future future) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	private volatile FutureId id;
+	/**
+	 * Either null or a Listeners object while the future is not initialized,
+	 * then a Value object.
+	 */
+	private volatile Object state;
 
 	public Future() {
-		this(newFutureId());
-		Agency.getLocalAgency().getProtocols().getFutures().register(this);
+		this(null);
 	}
 
-	protected Future(String id) {
+	protected Future(FutureId id) {
 		this.id = id;
-		this.value = null;
-		this.available = new AtomicBoolean(false);
-		this.latchs = null;
+		this.state = null;
 	}
 
 	@SuppressWarnings("unchecked")
 	public <T> T getValue() throws CallException, InterruptedException {
-		synchronized (available) {
-			if (!available.get())
-				available.wait();
-		}
+		waitForValue();
+
+		Object obj = ((Value) state).value;
 
-		if (value instanceof CallException)
-			throw (CallException) value;
+		if (obj instanceof CallException)
+			throw (CallException) obj;
 
-		return (T) value;
+		return (T) obj;
 	}
 
-	public String getId() {
+	/**
+	 * Get the id of the future.
+	 * 
+	 * @return the id or null if the future has not been exported
+	 */
+	public FutureId getId() {
 		return id;
 	}
 
+	/**
+	 * Get the id of the future, allocating it if needed. When the id is
+	 * allocated, the future is registered in the futures of the agency so its
+	 * value can be received from a remote agency.
+	 * 
+	 * @return the id of the future
+	 */
+	public FutureId exportId() {
+		FutureId current = id;
+
+		if (current != null)
+			return current;
+
+		current = newFutureId();
+
+		if (!ID.compareAndSet(this, null, current))
+			return id;
+
+		Futures futures = Agency.getLocalAgency().getProtocols().getFutures();
+		futures.register(this);
+
+		if (isAvailable())
+			futures.unregister(this);
+
+		return current;
+	}
+
+	/**
+	 * Initialize the future. Listeners, including waiting threads, are
+	 * notified in their order of registration. If the future has already been
+	 * initialized, the value is replaced but listeners are not notified again.
+	 * 
+	 * If the value is another future, like the one returned by a callable
+	 * awaiting a result, this future is initialized with the value of the other
+	 * one once it is available.
+	 * 
+	 * @param value
+	 *            value of the future
+	 */
 	public void init(Object value) {
-		if (value instanceof SpecialReturn) {
-			SpecialReturn sr = (SpecialReturn) value;
-
-			switch (sr) {
-			case VOID:
-			case NULL:
-			default:
-				this.value = null;
-			}
-		} else {
-			this.value = value;
+		if (value instanceof SpecialReturn)
+			value = null;
+
+		if (value instanceof Future && value != this) {
+			((Future) value).onComplete(new FutureListener() {
+				public void futureAvailable(Future future) {
+					init(future.value());
+				}
+			});
+
+			return;
 		}
 
-		Agency.getLocalAgency().getProtocols().getFutures().unregister(this);
+		Value v = new Value(value);
+		Object s;
 
-		synchronized (available) {
-			available.set(true);
-			available.notifyAll();
+		do {
+			s = state;
+		} while (!STATE.compareAndSet(this, s, v));
 
-			if (latchs != null) {
-				while (latchs.size() > 0)
-					latchs.pop().countDown();
-				
-				latchs = null;
-			}
-		}
+		//
+		// The value is published before the id is checked, so either this
+		// sees the id, or exportId() sees the value once it has registered.
+		//
+		if (id != null)
+			Agency.getLocalAgency().getProtocols().getFutures()
+					.unregister(this);
+
+		if (s instanceof Listeners)
+			notifyListeners((Listeners) s);
 	}
 
 	@SuppressWarnings("unchecked")
 	public <T> T get() throws CallException {
-		if (available.get()) {
-			Object obj = value;
+		Object s = state;
+
+		if (s instanceof Value) {
+			Object obj = ((Value) s).value;
 
 			if (obj instanceof CallException)
 				throw (CallException) obj;
@@ -117,45 +229,287 @@ public class Future {
 	}
 
 	public boolean isAvailable() {
-		return available.get();
+		return state instanceof Value;
 	}
 
+	/**
+	 * Wait until the value of the future is available.
+	 * 
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting
+	 */
 	public void waitForValue() throws InterruptedException {
-		while (!available.get()) {
-			synchronized (available) {
-				available.wait(1000);
+		if (isAvailable())
+			return;
+
+		Waiter waiter = new Waiter(Thread.currentThread());
+		onComplete(waiter);
+
+		BodyThread body = beginWait();
+
+		try {
+			while (!isAvailable()) {
+				LockSupport.park(this);
+
+				if (Thread.interrupted())
+					throw new InterruptedException();
 			}
+		} finally {
+			endWait(body);
+			removeWaiter(waiter);
 		}
 	}
 
+	/**
+	 * Wait until the value of the future is available or the timeout is
+	 * expired.
+	 * 
+	 * @param timeout
+	 *            maximum time to wait, in milliseconds
+	 * @throws InterruptedException
+	 *             if the thread is interrupted while waiting
+	 */
 	public void waitForValue(long timeout) throws InterruptedException {
-		if (available.get())
+		if (isAvailable())
 			return;
 
-		synchronized (available) {
-			available.wait(timeout);
+		long deadline = System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(timeout);
+		long remaining;
+		Waiter waiter = new Waiter(Thread.currentThread());
+
+		onComplete(waiter);
+
+		BodyThread body = beginWait();
+
+		try {
+			while (!isAvailable()
+					&& (remaining = deadline - System.nanoTime()) > 0) {
+				LockSupport.parkNanos(this, remaining);
+
+				if (Thread.interrupted())
+					throw new InterruptedException();
+			}
+		} finally {
+			endWait(body);
+			removeWaiter(waiter);
 		}
 	}
 
+	/*
+	 * Remove the waiter of a thread which gave up waiting, so a future which is
+	 * never initialized does not keep a waiter for each timed out wait.
+	 */
+	private void removeWaiter(Waiter waiter) {
+		Object s;
+		Listeners kept;
+
+		do {
+			s = state;
+
+			if (!(s instanceof Listeners))
+				return;
+
+			kept = null;
+			boolean found = false;
+
+			for (Listeners l = (Listeners) s; l != null; l = l.next) {
+				if (l.listener == waiter)
+					found = true;
+				else
+					kept = new Listeners(l.listener, kept);
+			}
+
+			if (!found)
+				return;
+
+			Listeners stack = null;
+
+			for (Listeners l = kept; l != null; l = l.next)
+				stack = new Listeners(l.listener, stack);
+
+			kept = stack;
+		} while (!STATE.compareAndSet(this, s, kept));
+	}
+
+	/*
+	 * If the current thread is a body handling a request, it gives back its
+	 * permit of the concurrency limiter while it is waiting. If it is a worker
+	 * of the dispatcher, a spare worker may be started.
+	 */
+	private static BodyThread beginWait() {
+		ActorThread current = ActorThread.getCurrentActorThread();
+		Thread t = Thread.currentThread();
+
+		if (t instanceof DispatcherThread)
+			((DispatcherThread) t).beginBlocking();
+
+		if (current instanceof BodyThread && ((BodyThread) current).beginWait())
+			return (BodyThread) current;
+
+		return null;
+	}
+
+	private static void endWait(BodyThread body) {
+		Thread t = Thread.currentThread();
+
+		if (body != null)
+			body.endWait();
+
+		if (t instanceof DispatcherThread)
+			((DispatcherThread) t).endBlocking();
+	}
+
+	/**
+	 * Register a listener which will be notified once the value is available.
+	 * If the value is already available, the listener is notified immediately
+	 * by the current thread.
+	 * 
+	 * @param listener
+	 *            the listener
+	 */
+	public void onComplete(FutureListener listener) {
+		Object s;
+
+		do {
+			s = state;
+
+			if (s instanceof Value) {
+				notifyListener(listener);
+				return;
+			}
+		} while (!STATE.compareAndSet(this, s, new Listeners(listener,
+				(Listeners) s)));
+	}
+
+	/**
+	 * Create a future which will be initialized with the result of a
+	 * continuation applied to the value of this future. If this future is
+	 * initialized with a CallException, the exception is forwarded without
+	 * invoking the continuation.
+	 * 
+	 * @param continuation
+	 *            the continuation to apply
+	 * @return a new future
+	 */
+	public Future thenApply(final Continuation continuation) {
+		final Future next = new Future();
+
+		onComplete(new FutureListener() {
+			public void futureAvailable(Future future) {
+				Object value = future.value();
+
+				if (value instanceof CallException) {
+					next.init(value);
+				} else {
+					try {
+						next.init(continuation.resume(value));
+					} catch (Exception e) {
+						next.init(new CallException(e));
+					}
+				}
+			}
+		});
+
+		return next;
+	}
+
+	/**
+	 * Create a future which will be initialized with the result of a call to
+	 * an actor, using the value of this future as argument. The call is issued
+	 * by the thread initializing this future. If the value is null, the
+	 * callable is invoked without argument. If this future is initialized with
+	 * a CallException, the exception is forwarded and the call is not issued.
+	 * 
+	 * @param actor
+	 *            the actor to call
+	 * @param name
+	 *            name of the callable
+	 * @return a new future
+	 */
+	public Future thenCall(final Actor actor, final String name) {
+		final Future next = new Future();
+
+		onComplete(new FutureListener() {
+			public void futureAvailable(Future future) {
+				Object value = future.value();
+
+				if (value instanceof CallException) {
+					next.init(value);
+				} else {
+					try {
+						if (value == null)
+							actor.call(name, next);
+						else
+							actor.call(name, next, value);
+					} catch (Exception e) {
+						next.init(new CallException(e));
+					}
+				}
+			}
+		});
+
+		return next;
+	}
+
+	/**
+	 * Get the id of the agency owning this future.
+	 * 
+	 * @return id of the local agency
+	 */
+	public String getAgencyId() {
+		return Agency.getLocalAgencyId();
+	}
+
+	/**
+	 * Get the uri of the future. This exports the future.
+	 * 
+	 * @return uri of the future
+	 * @see #exportId()
+	 */
 	public URI getURI() {
 		try {
 			return new URI(String.format("//%s/%s/%s", Agency.getLocalHost()
-					.getHost(), Agency.getLocalAgencyId(), getId()));
+					.getHost(), Agency.getLocalAgencyId(), exportId()));
 		} catch (URISyntaxException e) {
 			return null;
 		}
 	}
 
-	public void putLatch(CountDownLatch latch) {
-		synchronized (available) {
-			if (available.get()) {
+	public void putLatch(final CountDownLatch latch) {
+		onComplete(new FutureListener() {
+			public void futureAvailable(Future future) {
 				latch.countDown();
-			} else {
-				if (latchs == null)
-					latchs = new LinkedList<CountDownLatch>();
-
-				latchs.add(latch);
 			}
+		});
+	}
+
+	/*
+	 * Raw value, exceptions included. Only valid once the future is available.
+	 */
+	Object value() {
+		return ((Value) state).value;
+	}
+
+	private void notifyListeners(Listeners stack) {
+		Listeners ordered = null;
+
+		while (stack != null) {
+			ordered = new Listeners(stack.listener, ordered);
+			stack = stack.next;
+		}
+
+		while (ordered != null) {
+			notifyListener(ordered.listener);
+			ordered = ordered.next;
+		}
+	}
+
+	private void notifyListener(FutureListener listener) {
+		try {
+			listener.futureAvailable(this);
+		} catch (Throwable e) {
+			Console.error("future listener failure: %s", e.getMessage());
 		}
 	}
 }
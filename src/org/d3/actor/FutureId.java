@@ -0,0 +1,140 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.actor;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+/**
+ * Identifier of an exported future. It is made of the epoch of the agency
+ * which created the future and of a counter local to this agency. The epoch is
+ * drawn when the agency is enabled, so identifiers of a previous run of an
+ * agency cannot be confused with current ones.
+ * 
+ * On the wire, an id is written as 16 bytes or as 32 hexadecimal characters.
+ * 
+ * @author Guilhelm Savin
+ * @see org.d3.actor.Future#exportId()
+ */
+public final class FutureId implements Serializable {
+	private static final long serialVersionUID = 4118946563407318523L;
+
+	/**
+	 * Size of an id written in a buffer.
+	 */
+	public static final int BYTES = 16;
+
+	/**
+	 * Parse an id written as hexadecimal characters.
+	 * 
+	 * @param str
+	 *            the string to parse
+	 * @return the id, or null if the string is null or empty
+	 * @throws NumberFormatException
+	 *             if the string is not a valid id
+	 */
+	public static FutureId valueOf(String str) {
+		if (str == null)
+			return null;
+
+		str = str.trim();
+
+		if (str.length() == 0)
+			return null;
+
+		if (str.length() != 32)
+			throw new NumberFormatException("invalid future id: " + str);
+
+		return new FutureId(parseHex(str, 0), parseHex(str, 16));
+	}
+
+	/**
+	 * Read an id from a buffer.
+	 * 
+	 * @param buffer
+	 *            the buffer
+	 * @return the id
+	 */
+	public static FutureId readFrom(ByteBuffer buffer) {
+		long epoch = buffer.getLong();
+		return new FutureId(epoch, buffer.getLong());
+	}
+
+	private static long parseHex(String str, int offset) {
+		long v = 0;
+
+		for (int i = offset; i < offset + 16; i++) {
+			int d = Character.digit(str.charAt(i), 16);
+
+			if (d < 0)
+				throw new NumberFormatException("invalid future id: " + str);
+
+			v = (v << 4) | d;
+		}
+
+		return v;
+	}
+
+	private final long epoch;
+	private final long counter;
+
+	public FutureId(long epoch, long counter) {
+		this.epoch = epoch;
+		this.counter = counter;
+	}
+
+	public long getEpoch() {
+		return epoch;
+	}
+
+	public long getCounter() {
+		return counter;
+	}
+
+	/**
+	 * Write this id in a buffer.
+	 * 
+	 * @param buffer
+	 *            the buffer
+	 */
+	public void writeTo(ByteBuffer buffer) {
+		buffer.putLong(epoch);
+		buffer.putLong(counter);
+	}
+
+	public boolean equals(Object o) {
+		if (o == this)
+			return true;
+
+		if (!(o instanceof FutureId))
+			return false;
+
+		FutureId id = (FutureId) o;
+		return id.epoch == epoch && id.counter == counter;
+	}
+
+	public int hashCode() {
+		long h = epoch * 31 + counter;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	public String toString() {
+		return String.format("%016x%016x", epoch, counter);
+	}
+}
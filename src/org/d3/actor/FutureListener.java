@@ -0,0 +1,37 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.actor;
+
+/**
+ * Listener notified when a future is initialized.
+ * 
+ * @author Guilhelm Savin
+ * @see org.d3.actor.Future#onComplete(FutureListener)
+ */
+public interface FutureListener {
+	/**
+	 * Called once the value of the future is available. This is called by the
+	 * thread initializing the future, or by the thread registering the
+	 * listener if the future was already initialized, so it should not block.
+	 * 
+	 * @param future
+	 *            the initialized future
+	 */
+	void futureAvailable(Future future);
+}
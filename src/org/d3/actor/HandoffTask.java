@@ -0,0 +1,44 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.actor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Task completed by a body on behalf of another thread, once the result this
+ * thread was waiting for is available.
+ * 
+ * @see org.d3.actor.BodyThread#handoff(HandoffTask)
+ */
+abstract class HandoffTask extends ScheduledTask {
+
+	HandoffTask() {
+		super(0, TimeUnit.NANOSECONDS);
+	}
+
+	/*
+	 * Complete the task, in the body.
+	 */
+	abstract void complete();
+
+	/*
+	 * Complete the task without the body, which is terminated.
+	 */
+	abstract void abort(Throwable stopCause);
+}
@@ -18,10 +18,18 @@
  */
 package org.d3.actor;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 import org.d3.Actor;
 import org.d3.actor.body.BodyMap;
+import org.d3.actor.body.CallableDescriptor;
 import org.d3.agency.AgencyThread;
 import org.d3.annotation.Callable;
+import org.d3.annotation.Direct;
+import org.d3.annotation.Priority;
 import org.d3.entity.EntityThread;
 import org.d3.feature.FeatureThread;
 
@@ -38,6 +46,13 @@ import org.d3.feature.FeatureThread;
  * when it is started. When the body thread stop, the associated actor is
  * unregistered.
  * 
+ * Read-only callables are invoked by the calling thread under the read lock of
+ * the actor, the body holding the write lock while it handles a request. So,
+ * readers never see a request being handled.
+ * 
+ * Blocking callables are never invoked by the body, even when the body calls
+ * its own actor, but by the blocking pool of the agency.
+ * 
  * @author Guilhelm Savin
  * 
  */
@@ -45,9 +60,10 @@ public abstract class LocalActor extends Actor {
 
 	protected static final ThreadGroup actorsThreads = new ThreadGroup("/");
 
-	private final ThreadGroup threadGroup;
+	private volatile ThreadGroup threadGroup;
 	private final BodyThread bodyThread;
 	private final BodyMap bodyMap;
+	private final ReentrantReadWriteLock readWriteLock;
 
 	public LocalActor(String id) {
 		super(Agency.getLocalHost(), Agency.getLocalAgencyId(), null, id);
@@ -61,13 +77,14 @@ public abstract class LocalActor extends Actor {
 		else
 			bodyThread = new BodyThread(this);
 
-		threadGroup = new ThreadGroup(actorsThreads, getFullPath());
+		threadGroup = null;
 		bodyMap = BodyMap.getBodyMap(getClass());
+		readWriteLock = bodyMap.hasReadOnly() ? new ReentrantReadWriteLock()
+				: null;
 	}
 
 	public void init() {
-		if (!bodyThread.isAlive())
-			bodyThread.start();
+		bodyThread.startBody();
 
 		try {
 			bodyThread.waitUntilBodyReady();
@@ -77,12 +94,37 @@ public abstract class LocalActor extends Actor {
 		}
 	}
 
+	/*
+	 * Start the body of an actor registered by the agency with a batch of
+	 * actors, without waiting for it.
+	 */
+	final void spawn(CountDownLatch ready) {
+		bodyThread.spawn(ready);
+	}
+
+	final boolean hasBooted() {
+		return bodyThread.hasBooted();
+	}
+
+	/**
+	 * Hook called by the body once it has terminated, before the actor is
+	 * unregistered. It can be overridden to release the resources of the
+	 * actor.
+	 */
 	public void terminate() {
 
 	}
 
+	/*
+	 * Request the body to stop once the requests it has already received have
+	 * been handled.
+	 */
+	final void requestStop(Throwable cause) {
+		bodyThread.requestStop(cause);
+	}
+
 	public final boolean isAlive() {
-		return bodyThread.isAlive();
+		return bodyThread.isBodyAlive();
 	}
 
 	void migrate() {
@@ -105,13 +147,38 @@ public abstract class LocalActor extends Actor {
 	}
 
 	public void join() throws InterruptedException {
-		bodyThread.join();
+		bodyThread.joinBody();
 	}
 
+	/**
+	 * Get the thread group of the actor threads. The group is only created when
+	 * needed, the body thread itself does not use it.
+	 * 
+	 * @return thread group of this actor
+	 */
 	public final ThreadGroup getThreadGroup() {
+		if (threadGroup == null) {
+			synchronized (actorsThreads) {
+				if (threadGroup == null)
+					threadGroup = new ThreadGroup(actorsThreads, getFullPath());
+			}
+		}
+
 		return threadGroup;
 	}
 
+	final BodyMap getBodyMap() {
+		return bodyMap;
+	}
+
+	/*
+	 * Lock held by the body while handling a request, null if the actor has no
+	 * read-only callable.
+	 */
+	final Lock getWriteLock() {
+		return readWriteLock == null ? null : readWriteLock.writeLock();
+	}
+
 	public final void checkBodyThreadAccess() {
 		bodyThread.checkIsOwner();
 	}
@@ -121,24 +188,54 @@ public abstract class LocalActor extends Actor {
 	}
 
 	public final void checkActorThreadAccess() {
-		if (Thread.currentThread() instanceof ActorThread) {
-			if (((ActorThread) Thread.currentThread()).getOwner() != this)
-				throw new SecurityException();
-		} else
+		ActorThread current = ActorThread.getCurrentActorThread();
+
+		if (current == null || current.getOwner() != this)
 			throw new SecurityException();
 	}
 
-	private Object directCall(String name, Object... args) {
-		if (!bodyMap.has(name))
-			return new CallableNotFoundException(name);
-
+	/**
+	 * Invoke a resolved callable of this actor in the current thread.
+	 * 
+	 * @param callable
+	 *            the callable, resolved by the body map of this actor
+	 * @param args
+	 *            arguments of the invocation
+	 * @return result of the invocation
+	 */
+	final Object invoke(CallableDescriptor callable, Object[] args) {
 		try {
-			return bodyMap.invoke(this, name, args);
+			return callable.invoke(this, args);
 		} catch (Exception e) {
 			return new CallException(e);
 		}
 	}
 
+	/*
+	 * Invoke a read-only callable in the current thread if the read lock is
+	 * available. Return false if the body is handling a request or waiting for
+	 * the readers to leave, the call has then to be enqueued. The read lock is
+	 * not taken while the body is waiting, else a steady flow of readers would
+	 * starve it.
+	 */
+	private boolean readCall(CallableDescriptor callable, Future future,
+			Object[] args) {
+		Lock lock = readWriteLock.readLock();
+		Object r;
+
+		if (readWriteLock.hasQueuedThreads() || !lock.tryLock())
+			return false;
+
+		try {
+			r = invoke(callable, args);
+		} finally {
+			lock.unlock();
+		}
+
+		future.init(r);
+		return true;
+	}
+
 	/**
 	 * Enqueue a call in the body queue.
 	 * 
@@ -149,18 +246,72 @@ public abstract class LocalActor extends Actor {
 	}
 
 	public void call(String name, Future future, Object... args) {
-		if (bodyMap.isLocal(name) && ActorThread.getCurrentActor().isRemote())
+		call(ActorThread.getCurrentActor(), name, future, args);
+	}
+
+	/**
+	 * Call a callable of this actor on behalf of another actor. The source is
+	 * used in place of the actor owning the current thread, so a call received
+	 * from a remote actor can be dispatched by any thread.
+	 * 
+	 * @param source
+	 *            the calling actor
+	 * @param name
+	 *            name of the callable
+	 * @param future
+	 *            future initialized with the result of the call
+	 * @param args
+	 *            arguments of the call
+	 */
+	public void call(Actor source, String name, Future future, Object... args) {
+		CallableDescriptor callable = bodyMap.resolve(name);
+
+		if (callable == null)
+			future.init(new CallableNotFoundException(name));
+		else if (callable.isLocal() && source.isRemote())
 			future.init(new CallException(new LocalCallableException()));
 		else {
-			if (bodyThread.isOwner() || bodyMap.isDirect(name)) {
-				Object o = directCall(name, args);
+			if (callable.isDirect()
+					|| (bodyThread.isOwner() && !callable.isBlocking())) {
+				Object o = invoke(callable, args);
 				future.init(o);
-			} else {
-				bodyThread.enqueue(name, future, args);
+			} else if (callable.isBlocking() || !callable.isReadOnly()
+					|| !readCall(callable, future, args)) {
+				bodyThread.enqueue(source, callable, future, args);
 			}
 		}
 	}
 
+	/**
+	 * Call a callable of this actor on behalf of another actor, with arguments
+	 * which are still encoded. If the call is enqueued, the arguments are
+	 * decoded by the body when it handles the call. Direct and read-only
+	 * callables are invoked by the calling thread, which decodes the arguments
+	 * first. If the callable can not be found, the arguments are not decoded.
+	 * 
+	 * @param source
+	 *            the calling actor
+	 * @param name
+	 *            name of the callable
+	 * @param future
+	 *            future initialized with the result of the call
+	 * @param args
+	 *            encoded arguments of the call
+	 */
+	public void call(Actor source, String name, Future future, EncodedArgs args) {
+		CallableDescriptor callable = bodyMap.resolve(name);
+
+		if (callable == null)
+			future.init(new CallableNotFoundException(name));
+		else if (callable.isLocal() && source.isRemote())
+			future.init(new CallException(new LocalCallableException()));
+		else if (callable.isDirect() || callable.isReadOnly()
+				|| bodyThread.isOwner())
+			call(source, name, future, args.decode());
+		else
+			bodyThread.enqueue(source, callable, future, args);
+	}
+
 	/**
 	 * This method can have two issue depending of the thread invoking it. If
 	 * the thread is the body thread of the actor, then the callable is invoked
@@ -175,20 +326,88 @@ public abstract class LocalActor extends Actor {
 	 * @return result of the invocation if in body thread, a future else.
 	 */
 	public Object call(String name, Object... args) {
-		if (bodyMap.isLocal(name) && ActorThread.getCurrentActor().isRemote())
+		CallableDescriptor callable = bodyMap.resolve(name);
+
+		if (callable == null)
+			return new CallableNotFoundException(name);
+		else if (callable.isLocal() && ActorThread.getCurrentActor().isRemote())
 			return new CallException(new LocalCallableException());
 		else {
-			if (bodyThread.isOwner()) {
-				return directCall(name, args);
+			if (bodyThread.isOwner() && !callable.isBlocking()) {
+				return invoke(callable, args);
 			} else {
-				Future f = bodyThread.enqueue(name, args);
+				Future f = new Future();
+
+				if (callable.isBlocking() || !callable.isReadOnly()
+						|| !readCall(callable, f, args))
+					bodyThread.enqueue(callable, f, args);
+
 				return f;
 			}
 		}
 	}
 
+	/**
+	 * Await a future without blocking the body. Once the future is available,
+	 * the continuation is enqueued in the body of this actor and applied to the
+	 * value, while other requests are handled meanwhile. If the future is
+	 * initialized with a CallException, it is forwarded without applying the
+	 * continuation.
+	 * 
+	 * A callable can return the future returned by this method, the future of
+	 * the caller is then initialized with the result of the continuation. The
+	 * continuation can itself return a future to await another result.
+	 * 
+	 * @param future
+	 *            the future to await
+	 * @param continuation
+	 *            the continuation applied by the body
+	 * @return a future initialized with the result of the continuation
+	 */
+	public Future await(Future future, Continuation continuation) {
+		Future result = new Future();
+		future.onComplete(new ContinuationTask(bodyThread, continuation, result));
+
+		return result;
+	}
+
+	/**
+	 * Schedule a periodic invocation of a callable of this actor. The callable
+	 * is invoked by the body, first after one period, until the returned
+	 * periodic call is cancelled or the actor is terminated.
+	 * 
+	 * @param name
+	 *            name of the callable.
+	 * @param period
+	 *            period between two invocations.
+	 * @param unit
+	 *            unit of the period.
+	 * @param args
+	 *            arguments of the invocations.
+	 * @return the periodic call, which can be cancelled
+	 */
+	public PeriodicCall schedule(String name, long period, TimeUnit unit,
+			Object... args) {
+		PeriodicCall pc = new PeriodicCall(period, unit, name, args);
+		bodyThread.schedule(pc);
+
+		return pc;
+	}
+
 	@Callable("ping")
+	@Priority
 	public Boolean ping() {
 		return Boolean.TRUE;
 	}
+
+	/**
+	 * Get the count of requests waiting in the mailbox of this actor.
+	 * 
+	 * @return depth of the mailbox
+	 */
+	@Callable("mailbox.depth")
+	@Direct
+	public Integer getMailboxDepth() {
+		return bodyThread.getQueueDepth();
+	}
 }
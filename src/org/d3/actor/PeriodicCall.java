@@ -0,0 +1,77 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.actor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A callable of a local actor invoked periodically by its body. An actor can
+ * have several periodic calls, with their own period, in addition to the step
+ * of a StepActor.
+ * 
+ * The first invocation happens after one period. Once cancelled, the call is
+ * not invoked anymore.
+ * 
+ * @author Guilhelm Savin
+ * @see org.d3.actor.LocalActor#schedule(String, long, TimeUnit, Object...)
+ */
+public class PeriodicCall extends ScheduledTask {
+
+	private final String name;
+	private final Object[] args;
+	private volatile boolean cancelled;
+
+	public PeriodicCall(long period, TimeUnit unit, String name,
+			Object... args) {
+		super(period, unit);
+
+		if (period <= 0)
+			throw new IllegalArgumentException("period should be positive");
+
+		if (name == null)
+			throw new NullPointerException();
+
+		this.name = name;
+		this.args = args;
+		this.cancelled = false;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Object[] getArgs() {
+		return args;
+	}
+
+	public long getPeriod(TimeUnit unit) {
+		return unit.convert(delay, this.unit);
+	}
+
+	/**
+	 * Stop the periodic invocation of the callable.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+}
@@ -49,8 +49,11 @@ public abstract class Protocol extends LocalActor {
 		return IdentifiableType.PROTOCOL;
 	}
 
+	/**
+	 * Check that the current thread is one of the threads of this protocol.
+	 */
 	public final void checkProtocolThreadAccess() {
-		protocolThread.checkIsOwner();
+		getCurrentProtocolThread();
 	}
 
 	public final InetAddress getAddress() {
@@ -69,11 +72,25 @@ public abstract class Protocol extends LocalActor {
 	}
 	
 	public final void startAssuming(RemoteActor ra) {
-		protocolThread.assumeRole(ra);
+		getCurrentProtocolThread().assumeRole(ra);
 	}
 	
 	public final void stopAssuming() {
-		protocolThread.stopAssuming();
+		getCurrentProtocolThread().stopAssuming();
+	}
+
+	/*
+	 * A protocol can have other threads than the protocol thread, for example
+	 * the reactors of transmitters.
+	 */
+	private ProtocolThread getCurrentProtocolThread() {
+		Thread t = Thread.currentThread();
+
+		if (t instanceof ProtocolThread
+				&& ((ProtocolThread) t).getOwner() == this)
+			return (ProtocolThread) t;
+
+		throw new SecurityException();
 	}
 	
 	public abstract void listen();
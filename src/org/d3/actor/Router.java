@@ -0,0 +1,347 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.actor;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.d3.Actor;
+import org.d3.Args;
+import org.d3.Console;
+import org.d3.annotation.ActorPath;
+import org.d3.annotation.Callable;
+import org.d3.annotation.Direct;
+
+/**
+ * Router spreading the calls it receives across a pool of identical workers,
+ * so a hot service is no longer bound to a single body. Callers use the router
+ * like any other actor: calls of callables that the router does not define
+ * itself are forwarded to one of the workers, chosen according to the strategy
+ * of the router. Remote calls and entity references reach the router through
+ * its path, as for any actor.
+ * 
+ * Workers are local actors of the same class, created by the router with the
+ * id of the router followed by their index. When not given to the constructor,
+ * the count of workers, the strategy and the argument used to hash calls are
+ * read from the actor args, for example <code>routers.workers</code>,
+ * <code>routers.strategy</code> and <code>routers.hash.arg</code>.
+ * 
+ * Workers do not share their state, so a callable should only be routed if it
+ * does not depend on previous calls, or with the CONSISTENT_HASH strategy if
+ * it only depends on previous calls with the same key.
+ * 
+ * Only callables the router does not define are routed. Callables inherited
+ * from {@link org.d3.actor.LocalActor}, such as <code>ping</code> or
+ * <code>mailbox.depth</code>, are defined by the router too, so they are
+ * answered by the router about itself and not by a worker.
+ * 
+ * Workers live as long as their router: once the body of the router has
+ * terminated, each worker stops after handling the calls it has received.
+ * 
+ * @author Guilhelm Savin
+ */
+@ActorPath("/routers")
+public class Router extends LocalActor {
+	public static final String WORKERS_ARG = "workers";
+	public static final String STRATEGY_ARG = "strategy";
+	public static final String HASH_ARG = "hash.arg";
+
+	/**
+	 * Count of points of each worker on the hash ring.
+	 */
+	private static final int VIRTUAL_NODES = 64;
+
+	/**
+	 * Defines how the worker receiving a call is chosen.
+	 */
+	public static enum Strategy {
+		/**
+		 * The worker with the least count of requests waiting in its mailbox.
+		 */
+		LEAST_DEPTH,
+		/**
+		 * Workers one after the other.
+		 */
+		ROUND_ROBIN,
+		/**
+		 * The worker owning the hash of one of the arguments of the call on a
+		 * hash ring, so calls with equal keys are handled by the same worker.
+		 */
+		CONSISTENT_HASH
+	}
+
+	private final LocalActor[] workers;
+	private final Strategy strategy;
+	private final int hashArg;
+	private final AtomicInteger next;
+	/**
+	 * Sorted points of the hash ring, and the index of the worker owning each
+	 * point.
+	 */
+	private int[] points;
+	private int[] owners;
+
+	/**
+	 * Create a router which workers, strategy and hashed argument are defined
+	 * by the actor args.
+	 * 
+	 * @param id
+	 *            id of the router
+	 * @param workerClass
+	 *            class of the workers, which needs a constructor taking the
+	 *            id of the worker
+	 */
+	public Router(String id, Class<? extends LocalActor> workerClass) {
+		this(id, workerClass, -1, null, -1);
+	}
+
+	/**
+	 * Create a router.
+	 * 
+	 * @param id
+	 *            id of the router
+	 * @param workerClass
+	 *            class of the workers, which needs a constructor taking the
+	 *            id of the worker
+	 * @param count
+	 *            count of workers, the count of processors if not positive
+	 * @param strategy
+	 *            strategy used to choose workers
+	 * @param hashArg
+	 *            index of the argument hashed with the CONSISTENT_HASH
+	 *            strategy
+	 */
+	public Router(String id, Class<? extends LocalActor> workerClass,
+			int count, Strategy strategy, int hashArg) {
+		super(id);
+
+		Args args = Agency.getActorArgs(this);
+
+		if (count <= 0)
+			count = args.getInteger(WORKERS_ARG, Runtime.getRuntime()
+					.availableProcessors());
+
+		if (strategy == null) {
+			String s = args.get(STRATEGY_ARG, Strategy.LEAST_DEPTH.name());
+
+			try {
+				strategy = Strategy.valueOf(s.trim().toUpperCase());
+			} catch (IllegalArgumentException e) {
+				Console.warning("unknown router strategy '%s'", s);
+				strategy = Strategy.LEAST_DEPTH;
+			}
+		}
+
+		if (hashArg < 0)
+			hashArg = args.getInteger(HASH_ARG, 0);
+
+		this.workers = new LocalActor[Math.max(1, count)];
+		this.strategy = strategy;
+		this.hashArg = hashArg;
+		this.next = new AtomicInteger(0);
+
+		for (int i = 0; i < workers.length; i++) {
+			try {
+				workers[i] = workerClass.getConstructor(String.class)
+						.newInstance(id + "_" + i);
+			} catch (Exception e) {
+				throw new ActorInternalException(e);
+			}
+		}
+
+		if (strategy == Strategy.CONSISTENT_HASH)
+			buildRing();
+	}
+
+	public IdentifiableType getType() {
+		return IdentifiableType.ROUTER;
+	}
+
+	/**
+	 * Init the workers, then the router.
+	 */
+	public void init() {
+		for (int i = 0; i < workers.length; i++)
+			workers[i].init();
+
+		super.init();
+	}
+
+	/**
+	 * Stop the workers once the router has terminated.
+	 */
+	public void terminate() {
+		Throwable cause = getTerminationCause();
+
+		for (int i = 0; i < workers.length; i++)
+			workers[i].requestStop(cause);
+	}
+
+	public Strategy getStrategy() {
+		return strategy;
+	}
+
+	/**
+	 * Get the count of workers of this router.
+	 * 
+	 * @return count of workers
+	 */
+	@Callable("router.workers")
+	@Direct
+	public Integer getWorkerCount() {
+		return workers.length;
+	}
+
+	/**
+	 * Test if a callable is forwarded to the workers, ie. if it is not defined
+	 * by the router.
+	 * 
+	 * @param name
+	 *            name of the callable
+	 * @return true if calls of the callable are routed
+	 */
+	public boolean isRouted(String name) {
+		return getBodyMap().resolve(name) == null;
+	}
+
+	public void call(Actor source, String name, Future future, Object... args) {
+		if (isRouted(name))
+			select(args).call(source, name, future, args);
+		else
+			super.call(source, name, future, args);
+	}
+
+	/**
+	 * Route a call which arguments are still encoded. They are only decoded
+	 * here if the strategy needs them to choose the worker, else the worker
+	 * receives them encoded.
+	 */
+	public void call(Actor source, String name, Future future, EncodedArgs args) {
+		if (!isRouted(name))
+			super.call(source, name, future, args);
+		else if (strategy == Strategy.CONSISTENT_HASH)
+			call(source, name, future, args.decode());
+		else
+			select(null).call(source, name, future, args);
+	}
+
+	public Object call(String name, Object... args) {
+		if (isRouted(name))
+			return select(args).call(name, args);
+
+		return super.call(name, args);
+	}
+
+	/**
+	 * Choose the worker which will receive a call.
+	 * 
+	 * @param args
+	 *            arguments of the call, null if they are still encoded and
+	 *            the strategy does not use them
+	 * @return the chosen worker
+	 */
+	protected LocalActor select(Object[] args) {
+		switch (strategy) {
+		case ROUND_ROBIN:
+			return workers[(next.getAndIncrement() & Integer.MAX_VALUE)
+					% workers.length];
+		case CONSISTENT_HASH:
+			if (args != null && hashArg < args.length && args[hashArg] != null)
+				return workers[owner(mix(args[hashArg].hashCode()))];
+
+			return workers[0];
+		default:
+			return leastDepth();
+		}
+	}
+
+	/*
+	 * Scan the workers from a rotating offset, so ties are not always given
+	 * to the same worker.
+	 */
+	private LocalActor leastDepth() {
+		int n = workers.length;
+		int start = (next.getAndIncrement() & Integer.MAX_VALUE) % n;
+		LocalActor best = workers[start];
+		int depth = best.getMailboxDepth();
+
+		for (int i = 1; i < n && depth > 0; i++) {
+			LocalActor w = workers[(start + i) % n];
+			int d = w.getMailboxDepth();
+
+			if (d < depth) {
+				best = w;
+				depth = d;
+			}
+		}
+
+		return best;
+	}
+
+	private void buildRing() {
+		int n = workers.length * VIRTUAL_NODES;
+		long[] ring = new long[n];
+
+		for (int i = 0; i < workers.length; i++) {
+			String wid = workers[i].getId();
+
+			for (int v = 0; v < VIRTUAL_NODES; v++) {
+				long point = mix((wid + "#" + v).hashCode());
+				ring[i * VIRTUAL_NODES + v] = (point << 32) | i;
+			}
+		}
+
+		Arrays.sort(ring);
+
+		points = new int[n];
+		owners = new int[n];
+
+		for (int i = 0; i < n; i++) {
+			points[i] = (int) (ring[i] >> 32);
+			owners[i] = (int) ring[i];
+		}
+	}
+
+	/*
+	 * Index of the worker owning the first point of the ring following the
+	 * hash.
+	 */
+	private int owner(int hash) {
+		int i = Arrays.binarySearch(points, hash);
+
+		if (i < 0)
+			i = -i - 1;
+
+		return owners[i == points.length ? 0 : i];
+	}
+
+	/*
+	 * Spread the bits of a hash code, as the hash codes of keys are often
+	 * close to each other.
+	 */
+	private static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+
+		return h;
+	}
+}
@@ -21,29 +21,125 @@ package org.d3.actor;
 import java.util.concurrent.Delayed;
 import java.util.concurrent.TimeUnit;
 
+import org.d3.annotation.Priority;
+
+/**
+ * Base of the tasks handled by a body. A task is immediate if its delay is not
+ * positive, else it becomes available when its delay has expired.
+ * 
+ * Immediate tasks never read the clock, this is the common case of calls.
+ * Delayed tasks are first dated according to the clock of the current body,
+ * then dated again with the clock of the target when they are added to its
+ * queue, this clock being virtual for simulated actors.
+ * 
+ * Available tasks are handled by decreasing priority, tasks of the same
+ * priority in their order of arrival.
+ */
 public class ScheduledTask implements Delayed {
 
 	protected long date;
 	protected long delay;
 	protected TimeUnit unit;
+	protected Priority.Level priority;
+	protected Clock clock;
 	
 	public ScheduledTask(long delay, TimeUnit unit) {
 		this.delay = delay;
 		this.unit = unit;
+		this.priority = Priority.Level.NORMAL;
+		this.clock = Clock.get();
 		
 		reset();
 	}
-	
+
+	/**
+	 * Get the clock according to which the task is dated.
+	 * 
+	 * @return the clock of the task
+	 */
+	public Clock getClock() {
+		return clock;
+	}
+
+	/**
+	 * Date the task again, according to another clock. This is done by the
+	 * queue receiving the task, before the task is scheduled.
+	 * 
+	 * @param clock
+	 *            the new clock
+	 */
+	public void setClock(Clock clock) {
+		this.clock = clock;
+		reset();
+	}
+
+	public Priority.Level getPriority() {
+		return priority;
+	}
+
+	/**
+	 * Set the priority of the task. This has to be done before the task is
+	 * added to a queue.
+	 * 
+	 * @param priority
+	 *            the new priority
+	 */
+	public void setPriority(Priority.Level priority) {
+		this.priority = priority;
+	}
+
+	/**
+	 * Test if this task has no delay and can be handled as soon as it is
+	 * received.
+	 * 
+	 * @return true if the delay of the task is not positive
+	 */
+	public boolean isImmediate() {
+		return delay <= 0;
+	}
+
+	/**
+	 * Get the date, according to the clock of the task, at which the
+	 * task becomes available. This is meaningless for immediate tasks.
+	 * 
+	 * @return date of the task in nanoseconds
+	 */
+	public long getDate() {
+		return date;
+	}
+
 	public int compareTo(Delayed o) {
-		TimeUnit unit = TimeUnit.NANOSECONDS;
-		return (int) Math.signum(getDelay(unit) - o.getDelay(unit));
+		if (o == this)
+			return 0;
+
+		if (o instanceof ScheduledTask) {
+			ScheduledTask st = (ScheduledTask) o;
+
+			if (isImmediate())
+				return st.isImmediate() ? 0 : -1;
+			else if (st.isImmediate())
+				return 1;
+
+			long d = date - st.date;
+			return d < 0 ? -1 : (d > 0 ? 1 : 0);
+		}
+
+		long d = getDelay(TimeUnit.NANOSECONDS)
+				- o.getDelay(TimeUnit.NANOSECONDS);
+		return d < 0 ? -1 : (d > 0 ? 1 : 0);
 	}
 
 	public long getDelay(TimeUnit unit) {
-		return date - System.nanoTime();
+		if (isImmediate())
+			return 0;
+
+		return unit.convert(date - clock.nanoTime(), TimeUnit.NANOSECONDS);
 	}
 
 	public void reset() {
-		date = System.nanoTime() + TimeUnit.NANOSECONDS.convert(delay, unit);
+		if (isImmediate())
+			date = 0;
+		else
+			date = clock.nanoTime() + TimeUnit.NANOSECONDS.convert(delay, unit);
 	}
 }
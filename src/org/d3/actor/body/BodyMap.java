@@ -20,6 +20,7 @@ package org.d3.actor.body;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -30,10 +31,14 @@ import javassist.CtMethod;
 import org.d3.Console;
 import org.d3.actor.Agency;
 import org.d3.actor.LocalActor;
+import org.d3.annotation.Blocking;
 import org.d3.annotation.Callable;
 import org.d3.annotation.Direct;
 import org.d3.annotation.Local;
+import org.d3.annotation.Priority;
+import org.d3.annotation.ReadOnly;
 import org.d3.template.Template;
+import org.d3.tools.Utils;
 
 public class BodyMap {
 	private static final ConcurrentHashMap<Class<? extends LocalActor>, BodyMap> maps = new ConcurrentHashMap<Class<? extends LocalActor>, BodyMap>();
@@ -50,6 +55,21 @@ public class BodyMap {
 		Object call(Object target, Object[] args);
 	}
 
+	/**
+	 * Suffix of the routine providers generated at build time.
+	 */
+	public static final String ROUTINES_SUFFIX = "_Callables";
+
+	/**
+	 * Implemented by the classes generated at build time by
+	 * {@link org.d3.tools.processor.CallableProcessor}. A provider gives the
+	 * routines of the callables declared by one actor class. When there is no
+	 * provider, routines are compiled at runtime.
+	 */
+	public static interface RoutineProvider {
+		CallRoutine getRoutine(String name);
+	}
+
 	public static class ReflectRoutine implements CallRoutine {
 		protected Method method;
 
@@ -68,15 +88,14 @@ public class BodyMap {
 
 	private static RoutineLoader loader = new RoutineLoader();
 
-	protected final HashMap<String, CallRoutine> callables;
-
-	protected final HashMap<String, Boolean> direct;
-	protected final HashMap<String, Boolean> local;
+	protected final HashMap<String, CallableDescriptor> callables;
+	protected CallableDescriptor[] slots;
+	protected boolean readOnly;
 
 	public BodyMap(Class<? extends LocalActor> clazz) {
-		callables = new HashMap<String, CallRoutine>();
-		direct = new HashMap<String, Boolean>();
-		local = new HashMap<String, Boolean>();
+		callables = new HashMap<String, CallableDescriptor>();
+		slots = new CallableDescriptor[0];
+		readOnly = false;
 
 		Class<?> cls = clazz;
 		long m1, m2;
@@ -89,15 +108,22 @@ public class BodyMap {
 				for (Method m : methods) {
 					if (m.getAnnotation(Callable.class) != null) {
 						String name = m.getAnnotation(Callable.class).value();
+						CallableDescriptor cd = callables.get(name);
 
-						if (callables.containsKey(name)) {
+						if (cd != null) {
 							Console.warning("duplicate callable \"%s\"", name);
 						} else {
-							create(name, m);
+							cd = create(name, m);
 						}
 
-						direct.put(name, m.getAnnotation(Direct.class) != null);
-						local.put(name, m.getAnnotation(Local.class) != null);
+						cd.direct = m.getAnnotation(Direct.class) != null;
+						cd.local = m.getAnnotation(Local.class) != null;
+						cd.readOnly = m.getAnnotation(ReadOnly.class) != null;
+						readOnly |= cd.readOnly;
+						cd.blocking = m.getAnnotation(Blocking.class) != null;
+
+						if (m.getAnnotation(Priority.class) != null)
+							cd.priority = m.getAnnotation(Priority.class).value();
 					}
 				}
 			}
@@ -110,9 +136,51 @@ public class BodyMap {
 				m2 - m1);
 	}
 
-	protected void create(String name, Method m) {
+	protected CallableDescriptor create(String name, Method m) {
 		CallRoutine cr = loader.getOrCreate(name, m);
-		callables.put(name, cr);
+		CallableDescriptor cd = new CallableDescriptor(slots.length, name, cr,
+				m.getParameterTypes().length);
+
+		slots = Arrays.copyOf(slots, slots.length + 1);
+		slots[cd.getSlot()] = cd;
+		callables.put(name, cd);
+
+		return cd;
+	}
+
+	/**
+	 * Resolve the name of a callable to its descriptor.
+	 * 
+	 * @param name
+	 *            name of the callable
+	 * @return the descriptor, or null if there is no such callable
+	 */
+	public CallableDescriptor resolve(String name) {
+		return callables.get(name);
+	}
+
+	/**
+	 * Get the descriptor of a slot.
+	 * 
+	 * @param slot
+	 *            slot of the callable
+	 * @return the descriptor
+	 */
+	public CallableDescriptor get(int slot) {
+		return slots[slot];
+	}
+
+	public int getSlotCount() {
+		return slots.length;
+	}
+
+	/**
+	 * Test if at least one of the callables is read-only.
+	 * 
+	 * @return true if the actor has read-only callables
+	 */
+	public boolean hasReadOnly() {
+		return readOnly;
 	}
 
 	public boolean has(String name) {
@@ -120,17 +188,29 @@ public class BodyMap {
 	}
 
 	public boolean isDirect(String name) {
-		return direct.get(name);
+		return callables.get(name).isDirect();
 	}
 
 	public boolean isLocal(String name) {
-		return local.get(name);
+		return callables.get(name).isLocal();
+	}
+
+	/**
+	 * Get the priority of the requests of a callable.
+	 * 
+	 * @param name
+	 *            name of the callable
+	 * @return priority of the callable, NORMAL if not defined
+	 */
+	public Priority.Level getPriority(String name) {
+		CallableDescriptor cd = callables.get(name);
+		return cd == null ? Priority.Level.NORMAL : cd.getPriority();
 	}
 
 	public Object invoke(LocalActor obj, String name, Object... args)
 			throws IllegalArgumentException, IllegalAccessException,
 			InvocationTargetException {
-		return callables.get(name).call(obj, args);
+		return callables.get(name).invoke(obj, args);
 	}
 
 	private static final String ROUTINE_TEMPLATE = "public Object call(Object target, Object [] args) {"
@@ -143,12 +223,14 @@ public class BodyMap {
 		protected ClassPool classPool;
 		protected Template template, templateVoid;
 		protected HashMap<String, Class<?>> classes;
+		protected HashMap<Class<?>, RoutineProvider> providers;
 
 		RoutineLoader() {
 			classPool = ClassPool.getDefault();
 			template = new Template(ROUTINE_TEMPLATE);
 			templateVoid = new Template(ROUTINE_VOID_TEMPLATE);
 			classes = new HashMap<String, Class<?>>();
+			providers = new HashMap<Class<?>, RoutineProvider>();
 		}
 
 		protected Class<?> findClass(String name) throws ClassNotFoundException {
@@ -158,6 +240,24 @@ public class BodyMap {
 		}
 
 		synchronized CallRoutine getOrCreate(String name, Method m) {
+			Class<?> declaring = m.getDeclaringClass();
+			RoutineProvider provider;
+
+			if (providers.containsKey(declaring)) {
+				provider = providers.get(declaring);
+			} else {
+				provider = Utils.newGeneratedInstance(declaring,
+						ROUTINES_SUFFIX, RoutineProvider.class);
+				providers.put(declaring, provider);
+			}
+
+			if (provider != null) {
+				CallRoutine cr = provider.getRoutine(name);
+
+				if (cr != null)
+					return cr;
+			}
+
 			String routineName = "Routine_" + m.getDeclaringClass().getName()
 					+ "_" + name;
 			routineName = routineName.replaceAll("[^\\w\\d_]", "_");
@@ -18,31 +18,934 @@
  */
 package org.d3.actor.body;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
-import java.util.concurrent.DelayQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
+import org.d3.Actor;
+import org.d3.actor.ActorThread;
+import org.d3.actor.Agency;
+import org.d3.actor.BodyThread;
+import org.d3.actor.Call;
+import org.d3.actor.DispatcherThread;
+import org.d3.actor.Future;
 import org.d3.actor.ScheduledTask;
+import org.d3.annotation.Priority;
+import org.d3.protocol.ProtocolThread;
 
+/**
+ * Queue of the requests received by a body.
+ * 
+ * Tasks are pushed in a lock-free multi-producers/single-consumer queue. Only
+ * the body, which is the single consumer, is allowed to poll or take tasks.
+ * Tasks are handled in their order of arrival. Delayed tasks are held by the
+ * timing wheel of the agency until their delay has expired, then they are
+ * pushed in the queue.
+ * 
+ * Once a task with a priority other than NORMAL has been pushed, the consumer
+ * sorts the inbox in one lane per priority level. Lanes are polled by
+ * decreasing priority, each lane keeping the order of arrival, so tasks of
+ * the same priority from the same sender are never reordered.
+ * 
+ * A capacity can be given to the queue. It bounds the count of available
+ * tasks offered by callers, the overflow policy defining what happens when
+ * the queue is full. Tasks added by the body itself are never rejected, and
+ * HIGH tasks are accepted even when the queue is full, so a saturated actor
+ * can still be reached by its control requests.
+ * 
+ * The queue can also be given a ring of preallocated call slots. Callers then
+ * write their calls in place in the ring rather than allocating a call and a
+ * node of the inbox. Ring calls are handled after the HIGH tasks and before
+ * the LOW ones, alternately with the NORMAL tasks of the inbox so neither of
+ * them can starve the other. The ring has its own bound: when it is full,
+ * callers wait for a free slot, unless the queue is bounded with the REJECT
+ * policy. Workers of the dispatcher and threads of protocols never wait, their
+ * call is pushed in the inbox as an allocated call and handled after the calls
+ * already written in the ring.
+ * 
+ * @author Guilhelm Savin
+ * @see org.d3.actor.BodyThread
+ * @see org.d3.actor.body.TimingWheel
+ */
 public class BodyQueue implements Iterable<ScheduledTask> {
-	protected DelayQueue<ScheduledTask> theQueue;
+
+	/**
+	 * Listener notified each time a task becomes available in the queue.
+	 */
+	public static interface Listener {
+		void taskReady(BodyQueue queue);
+	}
+
+	/**
+	 * Defines what happens when a call is offered to a full queue.
+	 */
+	public static enum OverflowPolicy {
+		/**
+		 * The call is rejected, its future receives a MailboxOverflowException.
+		 */
+		REJECT,
+		/**
+		 * The caller is blocked until the queue is no longer full. Threads
+		 * which must not block fall back to another policy: the body of the
+		 * queue calling its own actor, and the workers of the dispatcher, get
+		 * the REJECT policy, and the threads of protocols get the BACKPRESSURE
+		 * one, or REJECT if the protocol does not support it.
+		 */
+		BLOCK,
+		/**
+		 * The call is accepted and the oldest call of the queue is dropped, its
+		 * future receives a MailboxOverflowException. The call is dropped by
+		 * the consumer before it polls its next task, it is the oldest LOW call
+		 * if any, else the oldest NORMAL one, calls of the ring included. HIGH
+		 * calls are never dropped.
+		 */
+		DROP_OLDEST,
+		/**
+		 * The call is accepted and, if the caller is the thread of a protocol
+		 * supporting it, the protocol stops reading the connection until the
+		 * queue is drained to half of its capacity.
+		 */
+		BACKPRESSURE
+	}
+
+	/**
+	 * Implemented by protocols able to stop reading incoming requests when the
+	 * queue receiving these requests is full.
+	 */
+	public static interface Backpressure {
+		/**
+		 * Stop reading from the connection actually read. Reading should be
+		 * resumed using {@link BodyQueue#onDrained(Runnable)}.
+		 * 
+		 * @param queue
+		 *            the full queue
+		 */
+		void suspendReading(BodyQueue queue);
+	}
+
+	private static final AtomicReferenceFieldUpdater<BodyQueue, Node> HEAD = AtomicReferenceFieldUpdater
+			.newUpdater(BodyQueue.class, Node.class, "head");
+
+	private static final Comparator<TimingWheel.Timeout> TIMEOUT_ORDER = new Comparator<TimingWheel.Timeout>() {
+		public int compare(TimingWheel.Timeout t1, TimingWheel.Timeout t2) {
+			return t1.getTask().compareTo(t2.getTask());
+		}
+	};
+
+	/*
+	 * Call pushed in the inbox because the ring was full. It is handled after
+	 * the calls already in the ring, so calls of a sender stay in order.
+	 */
+	private static final class OverflowCall extends Call {
+		OverflowCall(Actor source, Actor target, CallableDescriptor callable,
+				Future future, Object[] args) {
+			super(source, target, callable, future, args);
+		}
+	}
+
+	/*
+	 * Node of the inbox. A node is linked after being published as head, so the
+	 * consumer can transiently see the inbox empty while a push is ongoing.
+	 */
+	private static final class Node {
+		volatile Node next;
+		ScheduledTask task;
+
+		Node(ScheduledTask task) {
+			this.task = task;
+		}
+	}
+
+	/**
+	 * Last pushed node, shared by producers.
+	 */
+	private volatile Node head;
+	/**
+	 * Last consumed node, only accessed by the consumer.
+	 */
+	private Node tail;
+	/**
+	 * Tasks which have been removed from the inbox but not handled yet, one
+	 * lane per priority level. Only accessed by the consumer.
+	 */
+	private final ArrayDeque<ScheduledTask>[] lanes;
+	/**
+	 * Set once a task with a priority other than NORMAL has been pushed. Until
+	 * then, the inbox is polled directly.
+	 */
+	private volatile boolean prioritized;
+	/**
+	 * True if the ring is polled before the inbox by the next call to
+	 * next(), only accessed by the consumer.
+	 */
+	private boolean ringTurn;
+	/**
+	 * Timeouts of the delayed tasks of this queue which are still in the
+	 * timing wheel.
+	 */
+	private final Set<TimingWheel.Timeout> delayed;
+	/**
+	 * Thread of the consumer when it is parked in take().
+	 */
+	private volatile Thread waiter;
+	private volatile Listener listener;
+	/**
+	 * Count of available tasks, in the inbox or pending.
+	 */
+	private final AtomicInteger size;
+	/**
+	 * Maximum count of tasks offered to the queue, 0 if unbounded.
+	 */
+	private int capacity;
+	private OverflowPolicy policy;
+	/**
+	 * Count of calls which have overflowed the capacity.
+	 */
+	private final AtomicLong overflows;
+	/**
+	 * Count of calls which have to be dropped by the consumer before its next
+	 * poll, with the DROP_OLDEST policy.
+	 */
+	private AtomicInteger drops;
+	/**
+	 * Count of producers blocked on a full queue, with the BLOCK policy.
+	 */
+	private AtomicInteger blocked;
+	private ReentrantLock fullLock;
+	private Condition notFull;
+	/**
+	 * Actions waiting for the queue to be drained, with the BACKPRESSURE
+	 * policy.
+	 */
+	private ConcurrentLinkedQueue<Runnable> drainedActions;
+	/**
+	 * Ring of call slots, null if calls are only pushed in the inbox.
+	 */
+	private CallRing ring;
+	/**
+	 * Timer of the delayed tasks, null for the timing wheel of the agency.
+	 */
+	private volatile TimingWheel timer;
 
 	public BodyQueue() {
-		theQueue = new DelayQueue<ScheduledTask>();
+		tail = new Node(null);
+		head = tail;
+		lanes = newLanes();
+		prioritized = false;
+		delayed = Collections
+				.newSetFromMap(new ConcurrentHashMap<TimingWheel.Timeout, Boolean>());
+		waiter = null;
+		listener = null;
+		size = new AtomicInteger(0);
+		overflows = new AtomicLong(0);
+		capacity = 0;
+		policy = OverflowPolicy.REJECT;
+		ring = null;
+	}
+
+	/**
+	 * Bound the queue. This should be called before the queue is used.
+	 * 
+	 * @param capacity
+	 *            maximum count of available tasks, 0 for an unbounded queue
+	 * @param policy
+	 *            policy applied when the queue is full
+	 */
+	public void setCapacity(int capacity, OverflowPolicy policy) {
+		this.capacity = Math.max(0, capacity);
+		this.policy = policy;
+
+		if (this.capacity > 0) {
+			drops = new AtomicInteger(0);
+			blocked = new AtomicInteger(0);
+			fullLock = new ReentrantLock();
+			notFull = fullLock.newCondition();
+			drainedActions = new ConcurrentLinkedQueue<Runnable>();
+		}
 	}
 
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Give a ring of call slots to the queue. This should be called before the
+	 * queue is used.
+	 * 
+	 * @param size
+	 *            count of slots, rounded up to a power of two
+	 */
+	public void setRing(int size) {
+		ring = size > 0 ? new CallRing(size) : null;
+	}
+
+	/**
+	 * Test if the queue has a ring of call slots.
+	 * 
+	 * @return true if calls can be offered with
+	 *         {@link #offerCall(Actor, Actor, CallableDescriptor, Future, Object[])}
+	 */
+	public boolean hasRing() {
+		return ring != null;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Get the count of tasks available in the queue. Delayed tasks which have
+	 * not expired are not counted.
+	 * 
+	 * @return depth of the queue
+	 */
+	public int size() {
+		return ring == null ? size.get() : size.get() + ring.size();
+	}
+
+	/**
+	 * Get the count of calls which have been offered while the queue was full.
+	 * 
+	 * @return count of overflows
+	 */
+	public long getOverflowCount() {
+		return overflows.get();
+	}
+
+	/**
+	 * Offer a task to the queue, applying the overflow policy if the queue is
+	 * full. The capacity is checked without lock, so it can be slightly
+	 * exceeded by concurrent producers. HIGH tasks are never subject to the
+	 * capacity.
+	 * 
+	 * @param task
+	 *            the task to offer
+	 * @return false if the task has been rejected
+	 */
+	public boolean offer(ScheduledTask task) {
+		int cap = capacity;
+
+		if (cap <= 0 || size.get() < cap
+				|| task.getPriority() == Priority.Level.HIGH) {
+			add(task);
+			return true;
+		}
+
+		overflows.incrementAndGet();
+
+		switch (policy) {
+		case BLOCK:
+			if (mayBlock(task))
+				awaitNotFull(cap);
+			else if (!suspendReading())
+				return false;
+
+			break;
+		case DROP_OLDEST:
+			drops.incrementAndGet();
+			break;
+		case BACKPRESSURE:
+			suspendReading();
+			break;
+		default:
+			return false;
+		}
+
+		add(task);
+		return true;
+	}
+
+	/*
+	 * The body of the queue calling its own actor would never be woken up, and
+	 * the workers of the dispatcher and the threads of protocols are shared by
+	 * many actors or connections, so they are never blocked.
+	 */
+	private static boolean mayBlock(ScheduledTask task) {
+		Thread t = Thread.currentThread();
+
+		if (isSharedThread())
+			return false;
+
+		if (t instanceof BodyThread && task instanceof Call)
+			return ((Call) task).getTarget() != ((BodyThread) t).getOwner();
+
+		return true;
+	}
+
+	private static boolean isSharedThread() {
+		Thread t = Thread.currentThread();
+		return t instanceof DispatcherThread || t instanceof ProtocolThread;
+	}
+
+	/*
+	 * Ask the protocol of the current thread, if it supports it, to stop
+	 * reading until the queue is drained.
+	 */
+	private boolean suspendReading() {
+		ActorThread current = ActorThread.getCurrentActorThread();
+
+		if (current != null && current.getOwner() instanceof Backpressure) {
+			((Backpressure) current.getOwner()).suspendReading(this);
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Write a call in the ring of the queue. If the ring is full, the caller
+	 * waits for a free slot, or the call is rejected if the queue is bounded
+	 * with the REJECT policy. The queue must have a ring.
+	 * 
+	 * @param source
+	 *            the calling actor
+	 * @param target
+	 *            the called actor
+	 * @param callable
+	 *            the resolved callable
+	 * @param future
+	 *            the future of the call
+	 * @param args
+	 *            arguments of the call
+	 * @return false if the call has been rejected
+	 */
+	public boolean offerCall(Actor source, Actor target,
+			CallableDescriptor callable, Future future, Object[] args) {
+		boolean wait = capacity <= 0 || policy != OverflowPolicy.REJECT;
+		boolean shared = isSharedThread();
+
+		if (!ring.offer(source, target, callable, future, args, wait
+				&& !shared)) {
+			if (wait && shared)
+				return offer(new OverflowCall(source, target, callable,
+						future, args));
+
+			overflows.incrementAndGet();
+			return false;
+		}
+
+		signal();
+		return true;
+	}
+
+	/**
+	 * Register an action which will be run once the queue is drained to half
+	 * of its capacity. If this is already the case, the action is run
+	 * immediately.
+	 * 
+	 * @param action
+	 *            the action to run
+	 */
+	public void onDrained(Runnable action) {
+		if (capacity <= 0) {
+			action.run();
+			return;
+		}
+
+		drainedActions.add(action);
+
+		if (size.get() <= capacity / 2)
+			runDrainedActions();
+	}
+
+	/**
+	 * Set the listener notified when tasks become available.
+	 * 
+	 * @param listener
+	 *            the new listener, or null
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Set the timer of the delayed tasks of this queue, for example the
+	 * virtual timer of a simulation. This should be called before the queue
+	 * is used.
+	 * 
+	 * @param timer
+	 *            the timer, or null for the timing wheel of the agency
+	 */
+	public void setTimer(TimingWheel timer) {
+		this.timer = timer;
+	}
+
+	/**
+	 * Add a task in the queue. This can be called by any thread. If the task
+	 * is delayed, it is dated according to the clock of the timer of the
+	 * queue, then given to this timer.
+	 * 
+	 * @param task
+	 *            the task to add
+	 */
 	public void add(ScheduledTask task) {
-		theQueue.add(task);
+		if (task.isImmediate()) {
+			push(task);
+			return;
+		}
+
+		TimingWheel wheel = timer;
+
+		if (wheel == null)
+			wheel = Agency.getLocalAgency().getTimingWheel();
+
+		if (task.getClock() != wheel.getClock())
+			task.setClock(wheel.getClock());
+
+		if (task.getDelay(TimeUnit.NANOSECONDS) <= 0)
+			push(task);
+		else {
+			TimingWheel.Timeout timeout = wheel.newTimeout(task, this);
+
+			delayed.add(timeout);
+			wheel.schedule(timeout);
+		}
 	}
 
+	/**
+	 * Wait until a task is available and return it. Only the consumer is
+	 * allowed to call this method.
+	 * 
+	 * @return the next task
+	 * @throws InterruptedException
+	 *             if the consumer is interrupted while waiting
+	 */
 	public ScheduledTask take() throws InterruptedException {
-		return theQueue.take();
+		Thread current = Thread.currentThread();
+		ScheduledTask task;
+
+		while ((task = poll()) == null) {
+			waiter = current;
+
+			if (tail.next == null && (ring == null || !ring.isReady()))
+				LockSupport.park(this);
+
+			waiter = null;
+
+			if (Thread.interrupted())
+				throw new InterruptedException();
+		}
+
+		return task;
 	}
 
+	/**
+	 * Get a snapshot of the tasks remaining in the queue, including the delayed
+	 * ones. Only the consumer is allowed to call this method.
+	 */
 	public Iterator<ScheduledTask> iterator() {
-		return theQueue.iterator();
+		drainInbox();
+		drainRing();
+
+		ArrayList<ScheduledTask> snapshot = new ArrayList<ScheduledTask>();
+
+		for (int i = lanes.length - 1; i >= 0; i--)
+			snapshot.addAll(lanes[i]);
+
+		for (TimingWheel.Timeout timeout : sortedDelayed())
+			snapshot.add(timeout.getTask());
+
+		return Collections.unmodifiableList(snapshot).iterator();
 	}
 
+	/**
+	 * Retrieve and remove the next available task, or return null if there is
+	 * not. Only the consumer is allowed to call this method.
+	 * 
+	 * @return the next task or null
+	 */
 	public ScheduledTask poll() {
-		return theQueue.poll();
+		ScheduledTask task;
+
+		//
+		// The previous task has been handled, its slot can be reused.
+		//
+		if (ring != null)
+			ring.release();
+
+		if (capacity > 0 && drops.get() > 0)
+			dropOldest();
+
+		if ((task = next()) != null && !(task instanceof CallSlot))
+			taken(1);
+
+		return task;
+	}
+
+	/**
+	 * Test if a task of the queue can be polled, ie. its delay has expired.
+	 * 
+	 * @return true if a task is ready
+	 */
+	public boolean isReady() {
+		if (tail.next != null || (ring != null && ring.isReady()))
+			return true;
+
+		for (int i = 0; i < lanes.length; i++) {
+			if (!lanes[i].isEmpty())
+				return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Remove all the tasks of the queue, expired or not, and add them to a
+	 * collection. Available tasks come first by decreasing priority and in
+	 * their order of arrival, then delayed tasks ordered by date. Calls of the
+	 * ring are removed as plain calls. Only the consumer is allowed to call
+	 * this method.
+	 * 
+	 * @param c
+	 *            the collection receiving the tasks
+	 * @return the count of removed tasks
+	 */
+	public int drainTo(Collection<? super ScheduledTask> c) {
+		drainInbox();
+		drainRing();
+
+		int count = 0;
+
+		for (int i = lanes.length - 1; i >= 0; i--) {
+			count += lanes[i].size();
+			c.addAll(lanes[i]);
+			lanes[i].clear();
+		}
+
+		taken(count);
+
+		for (TimingWheel.Timeout timeout : sortedDelayed()) {
+			if (timeout.cancel()) {
+				delayed.remove(timeout);
+				c.add(timeout.getTask());
+				count++;
+			}
+		}
+
+		//
+		// Timeouts which have expired while draining are now in the inbox.
+		//
+		ScheduledTask task;
+
+		while ((task = pollInbox()) != null) {
+			c.add(task);
+			taken(1);
+			count++;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Put back tasks previously drained. Available tasks will be handled before
+	 * tasks received since, delayed tasks are scheduled again. Only the
+	 * consumer is allowed to call this method.
+	 * 
+	 * @param tasks
+	 *            the tasks to put back
+	 */
+	public void requeue(Collection<? extends ScheduledTask> tasks) {
+		drainInbox();
+
+		ArrayDeque<ScheduledTask>[] restored = newLanes();
+		int count = 0;
+
+		for (ScheduledTask task : tasks) {
+			if (task.isImmediate() || task.getDelay(TimeUnit.NANOSECONDS) <= 0) {
+				restored[task.getPriority().ordinal()].add(task);
+				count++;
+
+				if (task.getPriority() != Priority.Level.NORMAL)
+					prioritized = true;
+			} else
+				add(task);
+		}
+
+		size.addAndGet(count);
+
+		for (int i = 0; i < lanes.length; i++) {
+			restored[i].addAll(lanes[i]);
+			lanes[i].clear();
+			lanes[i].addAll(restored[i]);
+		}
+	}
+
+	/*
+	 * Called by the timing wheel when the delay of a task has expired.
+	 */
+	void expired(TimingWheel.Timeout timeout) {
+		delayed.remove(timeout);
+		push(timeout.getTask());
+	}
+
+	/*
+	 * Push an available task in the inbox.
+	 */
+	private void push(ScheduledTask task) {
+		size.incrementAndGet();
+
+		if (!prioritized && task.getPriority() != Priority.Level.NORMAL)
+			prioritized = true;
+
+		Node n = new Node(task);
+		Node prev = HEAD.getAndSet(this, n);
+		prev.next = n;
+
+		signal();
+	}
+
+	/*
+	 * Wake up the consumer once a task has been published.
+	 */
+	private void signal() {
+		Thread w = waiter;
+
+		if (w != null)
+			LockSupport.unpark(w);
+
+		Listener l = listener;
+
+		if (l != null)
+			l.taskReady(this);
+	}
+
+	/*
+	 * Update the size once tasks have been removed by the consumer, then wake
+	 * up blocked producers and run the drained actions if needed.
+	 */
+	private void taken(int count) {
+		if (count == 0)
+			return;
+
+		int s = size.addAndGet(-count);
+
+		if (capacity > 0) {
+			if (blocked.get() > 0) {
+				fullLock.lock();
+
+				try {
+					notFull.signalAll();
+				} finally {
+					fullLock.unlock();
+				}
+			}
+
+			if (s <= capacity / 2 && !drainedActions.isEmpty())
+				runDrainedActions();
+		}
+	}
+
+	/*
+	 * Drop the oldest calls for the pending drop requests. The ring then the
+	 * inbox are moved to the lanes first, so every waiting call can be
+	 * dropped, calls of the ring being older than the ones which fell back to
+	 * the inbox. A request for which there is no call to drop is discarded.
+	 */
+	private void dropOldest() {
+		drainRing();
+		drainInbox();
+
+		int d = drops.getAndSet(0);
+
+		while (d-- > 0) {
+			Call c = removeOldestCall();
+
+			if (c == null)
+				break;
+
+			taken(1);
+			c.getFuture().init(new MailboxOverflowException("call dropped"));
+		}
+	}
+
+	/*
+	 * Remove the first call of the lowest lane, HIGH lane excepted.
+	 */
+	private Call removeOldestCall() {
+		for (int i = 0; i < Priority.Level.HIGH.ordinal(); i++) {
+			Iterator<ScheduledTask> it = lanes[i].iterator();
+
+			while (it.hasNext()) {
+				ScheduledTask task = it.next();
+
+				if (task instanceof Call) {
+					it.remove();
+					return (Call) task;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	private void awaitNotFull(int cap) {
+		blocked.incrementAndGet();
+		fullLock.lock();
+
+		try {
+			while (size.get() >= cap)
+				notFull.awaitUninterruptibly();
+		} finally {
+			fullLock.unlock();
+			blocked.decrementAndGet();
+		}
+	}
+
+	private void runDrainedActions() {
+		Runnable action;
+
+		while ((action = drainedActions.poll()) != null)
+			action.run();
+	}
+
+	/*
+	 * Retrieve and remove the next task of the inbox.
+	 */
+	private ScheduledTask pollInbox() {
+		Node next = tail.next;
+
+		if (next == null)
+			return null;
+
+		ScheduledTask task = next.task;
+		next.task = null;
+		tail = next;
+
+		return task;
+	}
+
+	/*
+	 * Move the content of the inbox to the lanes.
+	 */
+	private void drainInbox() {
+		ScheduledTask task;
+
+		while ((task = pollInbox()) != null) {
+			if (task instanceof OverflowCall)
+				drainRing();
+
+			lanes[task.getPriority().ordinal()].add(task);
+		}
+	}
+
+	/*
+	 * Move the calls of the ring to the NORMAL lane, as plain calls.
+	 */
+	private void drainRing() {
+		if (ring == null)
+			return;
+
+		ArrayDeque<ScheduledTask> normal = lanes[Priority.Level.NORMAL
+				.ordinal()];
+		CallSlot slot;
+		int count = 0;
+
+		while ((slot = ring.poll()) != null) {
+			normal.add(new Call(slot.source, slot.target, slot.callable,
+					slot.future, slot.args));
+			count++;
+		}
+
+		ring.release();
+		size.addAndGet(count);
+	}
+
+	/*
+	 * Retrieve and remove the next task, by priority then order of arrival.
+	 * Calls of the ring and NORMAL tasks of the inbox are taken in turn.
+	 */
+	private ScheduledTask next() {
+		ArrayDeque<ScheduledTask> normal = lanes[Priority.Level.NORMAL
+				.ordinal()];
+
+		if (!prioritized) {
+			ScheduledTask task = pollRing();
+
+			if (task != null)
+				return task;
+
+			task = normal.isEmpty() ? pollInbox() : normal.poll();
+
+			if (task instanceof OverflowCall) {
+				drainRing();
+				normal.add(task);
+				task = normal.poll();
+			}
+
+			if (task == null && ring != null)
+				return ring.poll();
+
+			ringTurn = true;
+			return task;
+		}
+
+		drainInbox();
+
+		for (int i = lanes.length - 1; i >= 0; i--) {
+			if (lanes[i] == normal) {
+				ScheduledTask task = pollRing();
+
+				if (task != null)
+					return task;
+
+				if (!normal.isEmpty()) {
+					ringTurn = true;
+					return normal.poll();
+				}
+
+				if (ring != null && (task = ring.poll()) != null)
+					return task;
+			} else if (!lanes[i].isEmpty())
+				return lanes[i].poll();
+		}
+
+		return null;
+	}
+
+	/*
+	 * Poll the ring if this is its turn.
+	 */
+	private ScheduledTask pollRing() {
+		if (ring == null || !ringTurn)
+			return null;
+
+		ringTurn = false;
+		return ring.poll();
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static ArrayDeque<ScheduledTask>[] newLanes() {
+		Priority.Level[] levels = Priority.Level.values();
+		ArrayDeque<ScheduledTask>[] lanes = new ArrayDeque[levels.length];
+
+		for (int i = 0; i < lanes.length; i++)
+			lanes[i] = new ArrayDeque<ScheduledTask>();
+
+		return lanes;
+	}
+
+	/*
+	 * Get the pending timeouts ordered by the date of their task.
+	 */
+	private ArrayList<TimingWheel.Timeout> sortedDelayed() {
+		ArrayList<TimingWheel.Timeout> timeouts = new ArrayList<TimingWheel.Timeout>(
+				delayed);
+
+		Collections.sort(timeouts, TIMEOUT_ORDER);
+
+		return timeouts;
 	}
 }
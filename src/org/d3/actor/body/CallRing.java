@@ -0,0 +1,160 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.actor.body;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.d3.Actor;
+import org.d3.actor.Future;
+
+/**
+ * Ring of preallocated call slots, with multiple producers and a single
+ * consumer. A producer claims a sequence, writes the call in the slot of this
+ * sequence, then publishes the slot by writing the sequence in it. The
+ * consumer reads the slots in the order of the sequences, and releases a slot
+ * when it reads the next one.
+ * 
+ * @see org.d3.actor.body.BodyQueue
+ */
+final class CallRing {
+	private final CallSlot[] slots;
+	private final int mask;
+	/**
+	 * Next sequence to claim, shared by producers.
+	 */
+	private final AtomicLong claimed;
+	/**
+	 * Sequences lower than this one are free.
+	 */
+	private volatile long released;
+	/**
+	 * Next sequence to read, only accessed by the consumer.
+	 */
+	private long next;
+	/**
+	 * True if the consumer holds the slot of the sequence next - 1.
+	 */
+	private boolean held;
+
+	/**
+	 * @param size
+	 *            count of slots, rounded up to a power of two
+	 */
+	CallRing(int size) {
+		int n = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+
+		slots = new CallSlot[n];
+		mask = n - 1;
+
+		for (int i = 0; i < n; i++)
+			slots[i] = new CallSlot();
+
+		claimed = new AtomicLong(0);
+		released = 0;
+		next = 0;
+		held = false;
+	}
+
+	int capacity() {
+		return slots.length;
+	}
+
+	/**
+	 * Count of claimed slots not released yet.
+	 */
+	int size() {
+		return (int) (claimed.get() - released);
+	}
+
+	/**
+	 * Write a call in the next free slot. If the ring is full, the producer
+	 * waits for a slot if allowed, else the call is refused.
+	 */
+	boolean offer(Actor source, Actor target, CallableDescriptor callable,
+			Future future, Object[] args, boolean wait) {
+		int spins = 0;
+		long seq;
+
+		while (true) {
+			seq = claimed.get();
+
+			if (seq - released >= slots.length) {
+				if (!wait)
+					return false;
+
+				backoff(spins++);
+			} else if (claimed.compareAndSet(seq, seq + 1))
+				break;
+		}
+
+		CallSlot slot = slots[(int) seq & mask];
+
+		slot.source = source;
+		slot.target = target;
+		slot.callable = callable;
+		slot.args = args;
+		slot.future = future;
+		slot.published = seq;
+
+		return true;
+	}
+
+	/**
+	 * Retrieve the next published slot, or null. Only the consumer is allowed
+	 * to call this method.
+	 */
+	CallSlot poll() {
+		release();
+
+		CallSlot slot = slots[(int) next & mask];
+
+		if (slot.published != next)
+			return null;
+
+		next++;
+		held = true;
+
+		return slot;
+	}
+
+	/**
+	 * Release the slot previously polled by the consumer.
+	 */
+	void release() {
+		if (held) {
+			slots[(int) (next - 1) & mask].clear();
+			held = false;
+			released = next;
+		}
+	}
+
+	boolean isReady() {
+		return slots[(int) next & mask].published == next;
+	}
+
+	private static void backoff(int spins) {
+		if (spins < 64)
+			return;
+		else if (spins < 128)
+			Thread.yield();
+		else
+			LockSupport.parkNanos(1000L);
+	}
+}
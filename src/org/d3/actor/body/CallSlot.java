@@ -0,0 +1,80 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.actor.body;
+
+import java.util.concurrent.TimeUnit;
+
+import org.d3.Actor;
+import org.d3.actor.Future;
+import org.d3.actor.ScheduledTask;
+
+/**
+ * Reusable slot of the ring of a body queue. Producers write the call in place
+ * in a free slot, then publish it. The slot is given to the body as a task and
+ * becomes free again once the body polls the next task, so a slot must not be
+ * referenced once it has been handled.
+ * 
+ * @author Guilhelm Savin
+ * @see org.d3.actor.body.BodyQueue#setRing(int)
+ */
+public final class CallSlot extends ScheduledTask {
+	/**
+	 * Sequence of the call actually written in the slot.
+	 */
+	volatile long published;
+
+	Actor source;
+	Actor target;
+	CallableDescriptor callable;
+	Object[] args;
+	Future future;
+
+	CallSlot() {
+		super(0, TimeUnit.NANOSECONDS);
+		this.published = -1;
+	}
+
+	public Actor getSource() {
+		return source;
+	}
+
+	public Actor getTarget() {
+		return target;
+	}
+
+	public CallableDescriptor getCallable() {
+		return callable;
+	}
+
+	public Object[] getArgs() {
+		return args;
+	}
+
+	public Future getFuture() {
+		return future;
+	}
+
+	void clear() {
+		source = null;
+		target = null;
+		callable = null;
+		args = null;
+		future = null;
+	}
+}
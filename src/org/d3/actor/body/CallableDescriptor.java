@@ -0,0 +1,111 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.actor.body;
+
+import org.d3.annotation.Priority;
+
+/**
+ * Description of a callable of an actor class, resolved once by the body map.
+ * Each descriptor owns a slot, its index in the body map, so calls can carry
+ * the resolved callable instead of looking up its name each time.
+ * 
+ * @author Guilhelm Savin
+ * @see org.d3.actor.body.BodyMap
+ */
+public final class CallableDescriptor {
+	private final int slot;
+	private final String name;
+	private final BodyMap.CallRoutine routine;
+	private final int arity;
+	boolean direct;
+	boolean local;
+	boolean readOnly;
+	boolean blocking;
+	Priority.Level priority;
+
+	CallableDescriptor(int slot, String name, BodyMap.CallRoutine routine,
+			int arity) {
+		this.slot = slot;
+		this.name = name;
+		this.routine = routine;
+		this.arity = arity;
+		this.direct = false;
+		this.local = false;
+		this.readOnly = false;
+		this.blocking = false;
+		this.priority = Priority.Level.NORMAL;
+	}
+
+	public int getSlot() {
+		return slot;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public BodyMap.CallRoutine getRoutine() {
+		return routine;
+	}
+
+	/**
+	 * Get the count of parameters of the callable method.
+	 * 
+	 * @return arity of the callable
+	 */
+	public int getArity() {
+		return arity;
+	}
+
+	public boolean isDirect() {
+		return direct;
+	}
+
+	public boolean isLocal() {
+		return local;
+	}
+
+	/**
+	 * Test if the callable can be invoked concurrently with other read-only
+	 * callables, outside of the body.
+	 * 
+	 * @return true if the callable is read-only
+	 */
+	public boolean isReadOnly() {
+		return readOnly;
+	}
+
+	/**
+	 * Test if the callable is invoked by the blocking pool rather than by the
+	 * body.
+	 * 
+	 * @return true if the callable is blocking
+	 */
+	public boolean isBlocking() {
+		return blocking;
+	}
+
+	public Priority.Level getPriority() {
+		return priority;
+	}
+
+	public Object invoke(Object target, Object[] args) {
+		return routine.call(target, args);
+	}
+}
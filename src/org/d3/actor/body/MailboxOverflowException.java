@@ -0,0 +1,42 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.actor.body;
+
+import org.d3.actor.CallException;
+
+/**
+ * Value of the future of a call which has been rejected or dropped because the
+ * mailbox of the target actor was full.
+ * 
+ * @see org.d3.actor.body.BodyQueue.OverflowPolicy
+ */
+public class MailboxOverflowException extends CallException {
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = -2675029938823440913L;
+
+	public MailboxOverflowException() {
+		super();
+	}
+
+	public MailboxOverflowException(String msg) {
+		super(msg);
+	}
+}
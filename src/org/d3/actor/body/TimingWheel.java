@@ -0,0 +1,300 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.actor.body;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+import org.d3.Args;
+import org.d3.Console;
+import org.d3.actor.Clock;
+import org.d3.actor.ScheduledTask;
+import org.d3.tools.Time;
+
+/**
+ * Hashed timing wheel holding the delayed tasks of all the bodies of the
+ * agency. A single daemon thread advances the wheel at each tick and pushes the
+ * expired tasks in the queue of their body.
+ * 
+ * The tick duration is defined by <code>actors.timer.tick</code> (default is 1
+ * millisecond) and the count of slots by <code>actors.timer.wheel</code>
+ * (default is 512, rounded up to a power of two). A task is never handled
+ * before its date, but it can be delayed by up to one tick. While the wheel
+ * holds no timeout, the thread is parked until the next one is scheduled.
+ * 
+ * @author Guilhelm Savin
+ * @see org.d3.actor.body.BodyQueue
+ */
+public class TimingWheel implements Runnable {
+	public static final String TICK_ARG = "actors.timer.tick";
+	public static final String SIZE_ARG = "actors.timer.wheel";
+
+	private static final int PENDING = 0;
+	private static final int CANCELLED = 1;
+	private static final int EXPIRED = 2;
+
+	private static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater
+			.newUpdater(Timeout.class, "state");
+
+	/**
+	 * Entry of the wheel, associating a delayed task to the queue in which it
+	 * will be pushed.
+	 */
+	public static final class Timeout {
+		final ScheduledTask task;
+		final BodyQueue target;
+		volatile int state;
+		long rounds;
+		long sequence;
+		Timeout next;
+
+		Timeout(ScheduledTask task, BodyQueue target) {
+			this.task = task;
+			this.target = target;
+			this.state = PENDING;
+		}
+
+		public ScheduledTask getTask() {
+			return task;
+		}
+
+		/**
+		 * Cancel the timeout. The task will not be pushed in its queue.
+		 * 
+		 * @return true if the timeout was pending and is now cancelled
+		 */
+		public boolean cancel() {
+			return STATE.compareAndSet(this, PENDING, CANCELLED);
+		}
+
+		public boolean isPending() {
+			return state == PENDING;
+		}
+
+		boolean expire() {
+			return STATE.compareAndSet(this, PENDING, EXPIRED);
+		}
+	}
+
+	private final ConcurrentLinkedQueue<Timeout> incoming;
+	private final Timeout[] wheel;
+	private final int mask;
+	private final long tickDuration;
+	private long startTime;
+	private long tick;
+	/**
+	 * Count of timeouts in the slots of the wheel, only accessed by the tick
+	 * thread.
+	 */
+	private int count;
+	/**
+	 * Set while the tick thread is parked because the wheel is empty.
+	 */
+	private volatile boolean idle;
+	private volatile Thread worker;
+
+	public TimingWheel(Args args) {
+		long tickDuration = TimeUnit.MILLISECONDS.toNanos(1);
+		int size = 512;
+
+		if (args != null) {
+			Time t = args.getTime(TICK_ARG);
+
+			if (t != null)
+				tickDuration = Math.max(1, t.unit.toNanos(t.time));
+
+			size = args.getInteger(SIZE_ARG, size);
+		}
+
+		int n = 1;
+
+		while (n < size)
+			n <<= 1;
+
+		this.incoming = new ConcurrentLinkedQueue<Timeout>();
+		this.wheel = new Timeout[n];
+		this.mask = n - 1;
+		this.tickDuration = tickDuration;
+		this.count = 0;
+		this.idle = false;
+		this.worker = null;
+	}
+
+	/**
+	 * Get the duration of a tick.
+	 * 
+	 * @param unit
+	 *            unit of the returned duration
+	 * @return tick duration
+	 */
+	public long getTickDuration(TimeUnit unit) {
+		return unit.convert(tickDuration, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Create a timeout for a delayed task. The timeout is not scheduled until
+	 * it is passed to {@link #schedule(Timeout)}.
+	 * 
+	 * @param task
+	 *            the delayed task
+	 * @param target
+	 *            the queue receiving the task
+	 * @return a new pending timeout
+	 */
+	Timeout newTimeout(ScheduledTask task, BodyQueue target) {
+		return new Timeout(task, target);
+	}
+
+	/**
+	 * Get the clock according to which the tasks given to this timer have to
+	 * be dated.
+	 * 
+	 * @return the system clock
+	 */
+	public Clock getClock() {
+		return Clock.SYSTEM;
+	}
+
+	/**
+	 * Schedule a timeout. Once the date of its task is reached, the task is
+	 * pushed in the target queue. The tick thread is started on the first call.
+	 * 
+	 * @param timeout
+	 *            the timeout to schedule
+	 */
+	void schedule(Timeout timeout) {
+		if (worker == null)
+			start();
+
+		incoming.add(timeout);
+
+		if (idle)
+			LockSupport.unpark(worker);
+	}
+
+	public void run() {
+		while (true) {
+			if (count == 0 && incoming.isEmpty())
+				awaitTimeout();
+
+			long deadline = startTime + (tick + 1) * tickDuration;
+			long sleep;
+
+			while ((sleep = deadline - System.nanoTime()) > 0)
+				LockSupport.parkNanos(this, sleep);
+
+			transfer();
+			expire((int) (tick & mask));
+
+			tick++;
+		}
+	}
+
+	/*
+	 * Park until a timeout is scheduled, then skip the ticks elapsed
+	 * meanwhile, as no slot has anything to expire.
+	 */
+	private void awaitTimeout() {
+		idle = true;
+
+		while (incoming.isEmpty())
+			LockSupport.park(this);
+
+		idle = false;
+		tick = Math.max(tick, (System.nanoTime() - startTime) / tickDuration);
+	}
+
+	private synchronized void start() {
+		if (worker != null)
+			return;
+
+		startTime = System.nanoTime();
+		tick = 0;
+
+		Thread t = new Thread(this, "/timer");
+		t.setDaemon(true);
+
+		worker = t;
+		t.start();
+	}
+
+	/*
+	 * Move the new timeouts in their slot.
+	 */
+	private void transfer() {
+		Timeout timeout;
+
+		while ((timeout = incoming.poll()) != null) {
+			if (!timeout.isPending())
+				continue;
+
+			long ticks = (timeout.task.getDate() - startTime) / tickDuration;
+			
+			if (ticks < tick)
+				ticks = tick;
+
+			int slot = (int) (ticks & mask);
+
+			timeout.rounds = (ticks - tick) / wheel.length;
+			timeout.next = wheel[slot];
+			wheel[slot] = timeout;
+			count++;
+		}
+	}
+
+	/*
+	 * Push the expired timeouts of a slot in their queue and drop the
+	 * cancelled ones.
+	 */
+	private void expire(int slot) {
+		Timeout timeout = wheel[slot];
+		Timeout kept = null;
+
+		wheel[slot] = null;
+
+		while (timeout != null) {
+			Timeout next = timeout.next;
+			timeout.next = null;
+			count--;
+
+			if (timeout.isPending()) {
+				if (timeout.rounds <= 0) {
+					if (timeout.expire()) {
+						try {
+							timeout.target.expired(timeout);
+						} catch (Throwable e) {
+							Console.error("timer failure: %s", e.getMessage());
+						}
+					}
+				} else {
+					timeout.rounds--;
+					timeout.next = kept;
+					kept = timeout;
+					count++;
+				}
+			}
+
+			timeout = next;
+		}
+
+		wheel[slot] = kept;
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.actor.body;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+import org.d3.Args;
+import org.d3.Console;
+import org.d3.actor.Clock;
+
+/**
+ * Timer of the agency in simulation mode. There is no tick thread: delayed
+ * tasks are kept ordered by date, then by order of scheduling, and the virtual
+ * time only advances when the dispatcher has nothing more to run. The time
+ * then jumps to the date of the next task, and all the tasks of this date are
+ * pushed in their queue.
+ * 
+ * So delays cost nothing, and a run only depends on the order of the tasks,
+ * not on the speed of the machine.
+ * 
+ * The dispatcher can not see threads which are not workers, so a thread setting
+ * up a simulation, for example creating the first actors, has to hold the timer
+ * until it is done, else the time could advance between two actors.
+ * 
+ * @author Guilhelm Savin
+ * @see org.d3.actor.Clock
+ * @see org.d3.actor.Dispatcher
+ */
+public class VirtualTimer extends TimingWheel {
+
+	private static final Comparator<Timeout> ORDER = new Comparator<Timeout>() {
+		public int compare(Timeout t1, Timeout t2) {
+			long d = t1.task.getDate() - t2.task.getDate();
+
+			if (d == 0)
+				d = t1.sequence - t2.sequence;
+
+			return d < 0 ? -1 : (d > 0 ? 1 : 0);
+		}
+	};
+
+	private final PriorityQueue<Timeout> pending;
+	private long sequence;
+	private volatile long now;
+	private volatile Runnable listener;
+	private int holds;
+	private final Clock clock;
+
+	public VirtualTimer(Args args) {
+		super(args);
+
+		this.pending = new PriorityQueue<Timeout>(1024, ORDER);
+		this.sequence = 0;
+		this.now = 0;
+		this.listener = null;
+		this.holds = 0;
+		this.clock = new Clock() {
+			public long nanoTime() {
+				return now;
+			}
+		};
+	}
+
+	/**
+	 * Get the virtual clock advanced by this timer.
+	 * 
+	 * @return the virtual clock
+	 */
+	public Clock getClock() {
+		return clock;
+	}
+
+	/**
+	 * Set the action run each time a timeout is scheduled, used by the
+	 * dispatcher to wake up its idle workers.
+	 * 
+	 * @param listener
+	 *            the action, or null
+	 */
+	public void setListener(Runnable listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Prevent the time from advancing until {@link #release()} is called.
+	 * Holds are counted.
+	 */
+	public synchronized void hold() {
+		holds++;
+	}
+
+	/**
+	 * Release a hold of the timer. Once the last hold is released, the
+	 * dispatcher is notified so the time can advance again.
+	 */
+	public void release() {
+		synchronized (this) {
+			if (holds == 0)
+				throw new IllegalStateException("timer is not held");
+
+			if (--holds > 0)
+				return;
+		}
+
+		notifyListener();
+	}
+
+	/**
+	 * Count of timeouts not expired yet, including cancelled ones which have
+	 * not been removed.
+	 * 
+	 * @return count of pending timeouts
+	 */
+	public synchronized int getPendingCount() {
+		return pending.size();
+	}
+
+	void schedule(Timeout timeout) {
+		synchronized (this) {
+			timeout.sequence = sequence++;
+			pending.add(timeout);
+		}
+
+		notifyListener();
+	}
+
+	private void notifyListener() {
+		Runnable l = listener;
+
+		if (l != null)
+			l.run();
+	}
+
+	/**
+	 * Advance the virtual time to the date of the next pending task, and push
+	 * all the tasks of this date in their queue.
+	 * 
+	 * @return false if there is no more pending task or if the timer is held
+	 */
+	public boolean advance() {
+		ArrayList<Timeout> expired = new ArrayList<Timeout>();
+
+		synchronized (this) {
+			Timeout timeout;
+
+			if (holds > 0)
+				return false;
+
+			while ((timeout = pending.peek()) != null && !timeout.isPending())
+				pending.poll();
+
+			if (timeout == null)
+				return false;
+
+			long date = timeout.task.getDate();
+
+			if (date > now)
+				now = date;
+
+			while ((timeout = pending.peek()) != null
+					&& timeout.task.getDate() <= now)
+				expired.add(pending.poll());
+		}
+
+		for (int i = 0; i < expired.size(); i++) {
+			Timeout timeout = expired.get(i);
+
+			if (timeout.expire()) {
+				try {
+					timeout.target.expired(timeout);
+				} catch (Throwable e) {
+					Console.error("timer failure: %s", e.getMessage());
+				}
+			}
+		}
+
+		return true;
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Defines a callable which can block, waiting for I/O or for another actor.
+ * Such callable is not invoked by the body but by a thread of the blocking
+ * pool of the agency, so the other requests of the actor are still handled.
+ * The future of the call is then initialized by the body.
+ * 
+ * As a blocking callable runs concurrently with the body, it should not modify
+ * the state of the actor. Modifications have to be done by the body, once the
+ * future is available.
+ * 
+ * @author Guilhelm Savin
+ * @see org.d3.actor.BlockingPool
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Blocking {
+}
@@ -0,0 +1,48 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Defines the priority of the requests of a callable. Requests waiting in the
+ * queue of a body are handled by decreasing priority, then in their order of
+ * arrival. Callables without this annotation have the NORMAL priority.
+ * 
+ * This should be kept for cheap control callables, which have to stay
+ * responsive when the actor is flooded by requests. HIGH requests are not
+ * bounded by the capacity of the mailbox.
+ * 
+ * @author Guilhelm Savin
+ * 
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Priority {
+	public static enum Level {
+		LOW, NORMAL, HIGH
+	}
+
+	Level value() default Level.HIGH;
+}
@@ -18,9 +18,7 @@
  */
 package org.d3.entity;
 
-import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.concurrent.DelayQueue;
 
 import org.d3.actor.Call;
 import org.d3.actor.ScheduledTask;
@@ -29,27 +27,21 @@ import org.d3.entity.migration.CallData;
 
 class EntityBodyQueue extends BodyQueue {
 
-	protected DelayQueue<ScheduledTask> swap;
+	protected LinkedList<ScheduledTask> swap;
 	
 	EntityBodyQueue() {
 		super();
-		swap = new DelayQueue<ScheduledTask>();
+		swap = new LinkedList<ScheduledTask>();
 	}
 	
 	void swap() {
-		DelayQueue<ScheduledTask> t = theQueue;
-		theQueue = swap;
-		swap = t;
+		drainTo(swap);
 	}
 	
 	LinkedList<CallData> exportSwapForMigration() {
 		LinkedList<CallData> data = new LinkedList<CallData>();
 
-		Iterator<ScheduledTask> ite = swap.iterator();
-
-		while (ite.hasNext()) {
-			ScheduledTask d = ite.next();
-
+		for (ScheduledTask d : swap) {
 			if (d instanceof Call)
 				data.add(new CallData((Call) d));
 		}
@@ -62,8 +54,7 @@ class EntityBodyQueue extends BodyQueue {
 	}
 	
 	void restore() {
-		swap();
-		theQueue.addAll(swap);
+		requeue(swap);
 		swap.clear();
 	}
 }
@@ -28,6 +28,7 @@ import org.d3.actor.Entity;
 import org.d3.actor.StepActor;
 import org.d3.annotation.ActorPath;
 import org.d3.annotation.Callable;
+import org.d3.annotation.ReadOnly;
 import org.d3.entity.migration.MigrationException;
 import org.d3.remote.RemoteAgency;
 import org.d3.remote.RemoteHost;
@@ -46,7 +47,7 @@ public class Traveller extends Entity implements StepActor {
 
 	public Traveller(String id) {
 		super(id);
-		r = new Random();
+		r = Agency.newRandom();
 	}
 
 	public Traveller() {
@@ -86,6 +87,7 @@ public class Traveller extends Entity implements StepActor {
 	}
 	
 	@Callable("get_hopes")
+	@ReadOnly
 	public Integer getHopes() {
 		return hop;
 	}
@@ -22,9 +22,11 @@ import java.util.concurrent.TimeUnit;
 
 import org.d3.Console;
 import org.d3.actor.Agency;
+import org.d3.actor.Continuation;
 import org.d3.actor.Entity;
 import org.d3.actor.Future;
 import org.d3.actor.StepActor;
+import org.d3.fault.FaultListener;
 
 public class TravellerChecker extends Entity implements StepActor {
 	/**
@@ -53,10 +55,14 @@ public class TravellerChecker extends Entity implements StepActor {
 	public void step() {
 		try {
 			Future f = reference.call("get_hopes");
-			f.waitForValue();
-			Integer h = f.get();
-			
-			Console.info("reference has done %d hopes", h);
+			Future done = await(f, new Continuation() {
+				public Object resume(Object h) {
+					Console.info("reference has done %d hopes", h);
+					return null;
+				}
+			});
+
+			done.onComplete(new FaultListener());
 		} catch (Exception e) {
 			Agency.getFaultManager().handle(e, null);
 		}
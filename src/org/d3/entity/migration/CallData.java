@@ -25,6 +25,7 @@ import java.util.concurrent.TimeUnit;
 import org.d3.actor.Agency;
 import org.d3.actor.Call;
 import org.d3.actor.Future;
+import org.d3.actor.FutureId;
 import org.d3.protocol.RemoteFuture;
 import org.d3.remote.RemoteAgency;
 import org.d3.remote.UnknownAgencyException;
@@ -39,7 +40,8 @@ public class CallData implements Serializable {
 	URI target;
 	String name;
 	Object[] args;
-	URI future;
+	String futureAgencyId;
+	FutureId future;
 	long delay;
 	TimeUnit unit;
 
@@ -50,7 +52,8 @@ public class CallData implements Serializable {
 		args = c.getArgs();
 		delay = c.getDelay(TimeUnit.NANOSECONDS);
 		unit = TimeUnit.NANOSECONDS;
-		future = c.getFuture().getURI();
+		future = c.getFuture().exportId();
+		futureAgencyId = c.getFuture().getAgencyId();
 	}
 
 	public String getName() {
@@ -70,24 +73,18 @@ public class CallData implements Serializable {
 	}
 
 	public Future getFuture() throws UnknownAgencyException {
-		String agencyId, futureId;
-		String path = future.getPath();
-
-		agencyId = path.substring(1, path.indexOf('/', 1));
-		futureId = path.substring(path.indexOf('/', 1)+1);
-
-		if (Agency.getLocalAgencyId().equals(agencyId)) {
+		if (Agency.getLocalAgencyId().equals(futureAgencyId)) {
 			Future f = Agency.getLocalAgency().getProtocols().getFutures()
-					.get(futureId);
+					.get(future);
 
 			if (f != null)
 				return f;
 		}
 
 		RemoteAgency ra = Agency.getLocalAgency().getRemoteHosts()
-				.getRemoteAgency(agencyId);
+				.getRemoteAgency(futureAgencyId);
 
-		return new RemoteFuture(ra, futureId);
+		return new RemoteFuture(ra, future);
 	}
 	
 	public URI getSourceURI() {
@@ -27,9 +27,53 @@ import java.util.concurrent.ConcurrentHashMap;
 import org.d3.Console;
 import org.d3.actor.Entity;
 import org.d3.entity.Migratable;
+import org.d3.tools.Utils;
 
 public class IOMap {
 
+	/**
+	 * Suffix of the accessor providers generated at build time.
+	 */
+	public static final String MIGRATION_SUFFIX = "_Migration";
+
+	/**
+	 * Read and write a migratable field of an entity.
+	 */
+	public static interface FieldAccessor {
+		Object get(Entity target) throws IllegalAccessException;
+
+		void set(Entity target, Object value) throws IllegalAccessException;
+	}
+
+	/**
+	 * Implemented by the classes generated at build time by
+	 * {@link org.d3.tools.processor.CallableProcessor}. A provider gives the
+	 * accessors of the migratable fields declared by one entity class. Fields
+	 * without generated accessor, like private fields, are accessed using
+	 * reflection.
+	 */
+	public static interface AccessorProvider {
+		FieldAccessor getAccessor(String field);
+	}
+
+	private static class ReflectAccessor implements FieldAccessor {
+		protected Field field;
+
+		ReflectAccessor(Field field) {
+			this.field = field;
+			this.field.setAccessible(true);
+		}
+
+		public Object get(Entity target) throws IllegalAccessException {
+			return field.get(target);
+		}
+
+		public void set(Entity target, Object value)
+				throws IllegalAccessException {
+			field.set(target, value);
+		}
+	}
+
 	private static final ConcurrentHashMap<Class<? extends Entity>, IOMap> maps = new ConcurrentHashMap<Class<? extends Entity>, IOMap>();
 
 	public static synchronized IOMap get(Class<? extends Entity> cls) {
@@ -52,21 +96,33 @@ public class IOMap {
 	}
 
 	private final Class<? extends Entity> associatedClass;
-	private final Map<String, Field> fields;
+	private final Map<String, FieldAccessor> fields;
 
 	@SuppressWarnings("unchecked")
 	private IOMap(Class<? extends Entity> associatedClass) {
 		this.associatedClass = associatedClass;
 
-		HashMap<String, Field> m = new HashMap<String, Field>();
+		HashMap<String, FieldAccessor> m = new HashMap<String, FieldAccessor>();
 
 		while (associatedClass != null) {
 			Field[] fields = associatedClass.getDeclaredFields();
+			AccessorProvider provider = Utils.newGeneratedInstance(
+					associatedClass, MIGRATION_SUFFIX, AccessorProvider.class);
 
 			if (fields != null) {
 				for (int i = 0; i < fields.length; i++) {
-					if (fields[i].getAnnotation(Migratable.class) != null)
-						m.put(fields[i].getName(), fields[i]);
+					if (fields[i].getAnnotation(Migratable.class) != null) {
+						String name = fields[i].getName();
+						FieldAccessor accessor = null;
+
+						if (provider != null)
+							accessor = provider.getAccessor(name);
+
+						if (accessor == null)
+							accessor = new ReflectAccessor(fields[i]);
+
+						m.put(name, accessor);
+					}
 				}
 			}
 
@@ -97,16 +153,14 @@ public class IOMap {
 			}
 
 			for (int i = 0; i < fieldsData.length; i++) {
-				Field f = fields.get(fieldsData[i].getName());
+				FieldAccessor f = fields.get(fieldsData[i].getName());
 
 				try {
-					boolean accessible = f.isAccessible();
-					
-					f.setAccessible(true);
 					f.set(target, fieldsData[i].getValue());
-					f.setAccessible(accessible);
 				} catch (IllegalArgumentException e) {
 					throw new ImportationException(e);
+				} catch (ClassCastException e) {
+					throw new ImportationException(e);
 				} catch (IllegalAccessException e) {
 					throw new ImportationException(e);
 				}
@@ -120,21 +174,14 @@ public class IOMap {
 
 		int i = 0;
 
-		for (Field f : fields.values()) {
-			MigratableField mf;
-			
+		for (Map.Entry<String, FieldAccessor> e : fields.entrySet()) {
 			try {
-				boolean accessible = f.isAccessible();
-				f.setAccessible(true);
-				
-				mf = new MigratableField(f.getName(), f.get(target));
-				fieldsData[i++] = mf;
-				
-				f.setAccessible(accessible);
-			} catch (IllegalArgumentException e) {
-				throw new ExportationException(e);
-			} catch (IllegalAccessException e) {
-				throw new ExportationException(e);
+				fieldsData[i++] = new MigratableField(e.getKey(), e.getValue()
+						.get(target));
+			} catch (IllegalArgumentException ex) {
+				throw new ExportationException(ex);
+			} catch (IllegalAccessException ex) {
+				throw new ExportationException(ex);
 			}
 		}
 
@@ -35,6 +35,10 @@ public class BindableGroup implements Bindable {
 	public void remove(Bindable member) {
 		members.remove(member);
 	}
+
+	public boolean isEmpty() {
+		return members.isEmpty();
+	}
 	
 	public <K extends Enum<K>> void trigger(K event, Object ... data) {
 		for(Bindable member: members)
@@ -27,10 +27,91 @@ public class EventDispatcher<K extends Enum<K>> {
 
 	private final EnumMap<K, BindableGroup> bound;
 	private final BindableGroup all;
+	/**
+	 * For each event, only one occurrence on <code>sampling</code> is
+	 * triggered.
+	 */
+	private final int[] sampling;
+	/**
+	 * Occurrence counters of sampled events. They are updated without
+	 * synchronization, so sampling is only approximate under concurrency.
+	 */
+	private final int[] occurrences;
 
 	public EventDispatcher(Class<K> cls) {
+		int size = cls.getEnumConstants().length;
+
 		this.bound = new EnumMap<K, BindableGroup>(cls);
 		this.all = new BindableGroup();
+		this.sampling = new int[size];
+		this.occurrences = new int[size];
+
+		for (int i = 0; i < size; i++)
+			sampling[i] = 1;
+	}
+
+	/**
+	 * Test if some bindables are bound to an event, directly or through
+	 * binding to all events. This can be used to avoid building data of an
+	 * event that nobody will receive.
+	 * 
+	 * @param event
+	 *            the event
+	 * @return true if the event has listeners
+	 */
+	public boolean hasListeners(K event) {
+		if (!all.isEmpty())
+			return true;
+
+		BindableGroup group = bound.get(event);
+		return group != null && !group.isEmpty();
+	}
+
+	/**
+	 * Set the sampling of an event. Only one occurrence on
+	 * <code>sampling</code> will be triggered when using
+	 * {@link #shouldTrigger(Enum)}.
+	 * 
+	 * @param event
+	 *            the event
+	 * @param sampling
+	 *            the sampling, 1 to trigger all occurrences
+	 */
+	public void setSampling(K event, int sampling) {
+		this.sampling[event.ordinal()] = Math.max(1, sampling);
+	}
+
+	public int getSampling(K event) {
+		return sampling[event.ordinal()];
+	}
+
+	/**
+	 * Test if an occurrence of an event should be triggered, according to its
+	 * listeners and its sampling. Sources of frequent events should check
+	 * this before calling {@link #trigger(Enum, Object...)}.
+	 * 
+	 * @param event
+	 *            the event
+	 * @return true if this occurrence should be triggered
+	 */
+	public boolean shouldTrigger(K event) {
+		if (!hasListeners(event))
+			return false;
+
+		int i = event.ordinal();
+
+		if (sampling[i] == 1)
+			return true;
+
+		int n = occurrences[i] + 1;
+
+		if (n >= sampling[i]) {
+			occurrences[i] = 0;
+			return true;
+		}
+
+		occurrences[i] = n;
+		return false;
 	}
 
 	public void bind(Bindable bindable, K event) {
@@ -0,0 +1,55 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.fault;
+
+import org.d3.actor.Agency;
+import org.d3.actor.CallException;
+import org.d3.actor.Future;
+import org.d3.actor.FutureListener;
+
+/**
+ * Listener giving to the fault manager the exception a future has been
+ * initialized with. This is useful for futures nobody waits for, like the
+ * futures returned by {@link org.d3.actor.LocalActor#await}.
+ * 
+ * @author Guilhelm Savin
+ */
+public class FaultListener implements FutureListener {
+	private final Object context;
+
+	public FaultListener() {
+		this(null);
+	}
+
+	/**
+	 * @param context
+	 *            context given to the fault manager with the exception
+	 */
+	public FaultListener(Object context) {
+		this.context = context;
+	}
+
+	public void futureAvailable(Future future) {
+		try {
+			future.get();
+		} catch (CallException e) {
+			Agency.getFaultManager().handle(e, context);
+		}
+	}
+}
@@ -23,11 +23,12 @@ import java.util.concurrent.TimeUnit;
 
 import org.d3.Console;
 import org.d3.actor.Agency;
-import org.d3.actor.CallException;
+import org.d3.actor.Continuation;
 import org.d3.actor.Feature;
 import org.d3.actor.Future;
 import org.d3.actor.StepActor;
 import org.d3.events.Bindable;
+import org.d3.fault.FaultListener;
 import org.d3.remote.RemoteAgency;
 import org.d3.remote.RemoteEvent;
 
@@ -45,17 +46,11 @@ public class RemoteActorLister extends Feature implements Bindable, StepActor {
 	}
 
 	public void step() {
-		for (RemoteAgency remote : agencies) {
+		for (final RemoteAgency remote : agencies) {
 			Future f = (Future) remote.asRemoteActor().call("actors_list");
-
-			try {
-				f.waitForValue();
-			} catch (InterruptedException e) {
-			}
-
-			if (!Thread.interrupted()) {
-				try {
-					String[] list = f.get();
+			Future done = await(f, new Continuation() {
+				public Object resume(Object value) {
+					String[] list = (String[]) value;
 
 					if (list != null) {
 						StringBuilder builder = new StringBuilder();
@@ -65,10 +60,11 @@ public class RemoteActorLister extends Feature implements Bindable, StepActor {
 						Console.info(builder.toString());
 					}
 
-				} catch (CallException e) {
-					Agency.getFaultManager().handle(e, null);
+					return null;
 				}
-			}
+			});
+
+			done.onComplete(new FaultListener());
 		}
 	}
 
@@ -23,17 +23,24 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import org.d3.Args;
 import org.d3.Console;
 import org.d3.actor.Agency;
 import org.d3.actor.CallException;
+import org.d3.actor.Continuation;
 import org.d3.actor.Feature;
 import org.d3.actor.Future;
+import org.d3.actor.FutureListener;
 import org.d3.actor.StepActor;
 import org.d3.annotation.ActorPath;
+import org.d3.annotation.Blocking;
+import org.d3.annotation.Callable;
+import org.d3.fault.FaultListener;
 import org.d3.remote.HostNotFoundException;
 import org.d3.remote.RemoteAgency;
 import org.d3.remote.RemoteHost;
@@ -42,12 +49,33 @@ import org.d3.tools.Time;
 
 @ActorPath("/features/sibler")
 public class Sibler extends Feature implements StepActor {
+	public static final String CALLABLE_SCAN = "sibler.scan";
+
+	/**
+	 * Result of a scan, handed back to the body.
+	 */
+	public static class ScanResult {
+		/**
+		 * Digest of the description of the local agency after the scan.
+		 */
+		public final String digest;
+		/**
+		 * Digest and protocols of the agencies found, indexed by id.
+		 */
+		public final HashMap<String, String[]> found;
+
+		ScanResult(String digest, HashMap<String, String[]> found) {
+			this.digest = digest;
+			this.found = found;
+		}
+	}
 
 	File container;
 	File description;
 	Time delay;
 	String digest;
 	HashSet<String> knownAgencies;
+	Future scan;
 
 	public Sibler() {
 		this("default");
@@ -103,9 +131,41 @@ public class Sibler extends Feature implements StepActor {
 	 * @see org.d3.actor.StepActor#step()
 	 */
 	public void step() {
+		if (scan != null && !scan.isAvailable())
+			return;
+
+		scan = new Future();
+		scan.onComplete(new FutureListener() {
+			public void futureAvailable(Future future) {
+				try {
+					ScanResult result = future.get();
+					update(result);
+				} catch (CallException e) {
+					Agency.getFaultManager().handle(e, null);
+				}
+			}
+		});
+
+		call(CALLABLE_SCAN, scan, digest);
+	}
+
+	/**
+	 * Write the description of the local agency if its digest has changed,
+	 * then read the descriptions of the other agencies. This is done by the
+	 * blocking pool, a single scan being run at a time. The fields of the
+	 * actor are not modified here, the new digest is returned to the body.
+	 * 
+	 * @param written
+	 *            digest of the description written by the previous scan
+	 * @return the digest written and the agencies found
+	 */
+	@Callable(CALLABLE_SCAN)
+	@Blocking
+	public ScanResult scan(String written) {
 		final Agency agency = Agency.getLocalAgency();
+		HashMap<String, String[]> found = new HashMap<String, String[]>();
 
-		if (!agency.getDigest().equals(digest)) {
+		if (!agency.getDigest().equals(written)) {
 			StringBuilder buffer = new StringBuilder();
 			String protocols = agency.getProtocols().exportDescription();
 			buffer.append("protocols = ").append(protocols).append("\n");
@@ -122,18 +182,16 @@ public class Sibler extends Feature implements StepActor {
 				Agency.getFaultManager().handle(e, null);
 			}
 
-			digest = agency.getDigest();
+			written = agency.getDigest();
 		}
 
 		File[] agencies = container.listFiles();
-		HashSet<String> remaining = new HashSet<String>(knownAgencies);
 
-		for (int i = 0; i < agencies.length; i++) {
+		for (int i = 0; agencies != null && i < agencies.length; i++) {
 			if (!agencies[i].getName().equals(agency.getId())) {
 				String id, digest, protocols;
 
 				id = agencies[i].getName();
-				remaining.remove(id);
 
 				try {
 					FileReader in = new FileReader(agencies[i]);
@@ -144,6 +202,8 @@ public class Sibler extends Feature implements StepActor {
 					while ((r = in.read(buffer)) > 0)
 						content.append(buffer, 0, r);
 
+					in.close();
+
 					Args args = Args.parseArgs(content.toString().split("\n"));
 					digest = args.get("digest");
 					protocols = args.get("protocols");
@@ -155,73 +215,53 @@ public class Sibler extends Feature implements StepActor {
 					continue;
 				}
 
-				RemoteHost host = null;
-
-				try {
-					host = Agency.getLocalAgency().getRemoteHosts().get(
-							agency.getHost());
-				} catch (HostNotFoundException e) {
-					Future f = (Future) Agency.getLocalAgency()
-							.call(Agency.CALLABLE_REGISTER_NEW_HOST,
-									agency.getHost());
-
-					try {
-						f.waitForValue();
-					} catch (InterruptedException ie) {
-						if (!f.isAvailable())
-							continue;
-					}
+				found.put(id, new String[] { digest, protocols });
+			}
+		}
 
-					try {
-						host = f.get();
-					} catch (CallException e1) {
-						Agency.getFaultManager().handle(e1, null);
-						continue;
-					}
-				}
+		return new ScanResult(written, found);
+	}
 
-				RemoteAgency remote = null;
+	/*
+	 * Register the agencies found by a scan and unregister the agencies which
+	 * have disappeared. This is done by the body, registrations are awaited
+	 * without blocking it.
+	 */
+	private void update(ScanResult result) {
+		final Agency agency = Agency.getLocalAgency();
+		HashSet<String> remaining = new HashSet<String>(knownAgencies);
 
-				try {
-					remote = host.getRemoteAgency(id);
-				} catch (UnknownAgencyException e) {
-					Console.info("new agency found : %s\n", agencies[i]
-							.getPath());
-
-					Future f = (Future) Agency.getLocalAgency().call(
-							Agency.CALLABLE_REGISTER_NEW_AGENCY, host, id);
-
-					try {
-						f.waitForValue();
-					} catch (InterruptedException ie) {
-						if (!f.isAvailable())
-							continue;
-					}
+		digest = result.digest;
 
-					if (!Thread.interrupted()) {
-						try {
-							remote = f.get();
-						} catch (CallException e1) {
-							Agency.getFaultManager().handle(e1, null);
-							continue;
-						}
-					}
-				}
+		for (Map.Entry<String, String[]> entry : result.found.entrySet()) {
+			final String id = entry.getKey();
+			final String digest = entry.getValue()[0];
+			final String protocols = entry.getValue()[1];
 
-				knownAgencies.add(id);
+			remaining.remove(id);
 
-				if (!remote.getDigest().equals(digest)) {
-					Console.info("agency digest updated '%s'", id);
-					remote.update(digest, protocols);
-				}
+			try {
+				RemoteHost host = agency.getRemoteHosts().get(agency.getHost());
+				update(host, id, digest, protocols);
+			} catch (HostNotFoundException e) {
+				Future f = (Future) agency.call(
+						Agency.CALLABLE_REGISTER_NEW_HOST, agency.getHost());
+
+				await(f, new Continuation() {
+					public Object resume(Object host) {
+						update((RemoteHost) host, id, digest, protocols);
+						return null;
+					}
+				}).onComplete(new FaultListener());
 			}
 		}
 
 		for (String aid : remaining) {
 			try {
-				RemoteAgency remote = Agency.getLocalAgency().getRemoteHosts()
-						.getRemoteAgency(aid);
+				RemoteAgency remote = agency.getRemoteHosts().getRemoteAgency(
+						aid);
 				agency.call(Agency.CALLABLE_UNREGISTER_AGENCY, remote);
+				knownAgencies.remove(aid);
 				Console.info("agency unregistered '%s'", aid);
 			} catch (UnknownAgencyException e) {
 				// Nothing to do
@@ -229,4 +269,33 @@ public class Sibler extends Feature implements StepActor {
 		}
 	}
 
+	private void update(RemoteHost host, final String id, final String digest,
+			final String protocols) {
+		try {
+			update(host.getRemoteAgency(id), id, digest, protocols);
+		} catch (UnknownAgencyException e) {
+			Console.info("new agency found : %s\n", new File(container, id)
+					.getPath());
+
+			Future f = (Future) Agency.getLocalAgency().call(
+					Agency.CALLABLE_REGISTER_NEW_AGENCY, host, id);
+
+			await(f, new Continuation() {
+				public Object resume(Object remote) {
+					update((RemoteAgency) remote, id, digest, protocols);
+					return null;
+				}
+			}).onComplete(new FaultListener());
+		}
+	}
+
+	private void update(RemoteAgency remote, String id, String digest,
+			String protocols) {
+		knownAgencies.add(id);
+
+		if (!remote.getDigest().equals(digest)) {
+			Console.info("agency digest updated '%s'", id);
+			remote.update(digest, protocols);
+		}
+	}
 }
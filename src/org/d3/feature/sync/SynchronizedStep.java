@@ -25,14 +25,17 @@ import org.d3.Actor;
 import org.d3.ActorNotFoundException;
 import org.d3.actor.ActorThread;
 import org.d3.actor.Agency;
+import org.d3.actor.Clock;
 import org.d3.actor.Feature;
 import org.d3.actor.Future;
+import org.d3.actor.FutureListener;
 import org.d3.actor.LocalActor;
 import org.d3.actor.NotActorThreadException;
 import org.d3.actor.StepActor;
 import org.d3.actor.UnregisteredActorException;
 import org.d3.annotation.ActorPath;
 import org.d3.tools.FutureGroup;
+import org.d3.tools.Time;
 
 @ActorPath("/d3/feature/sync")
 public class SynchronizedStep extends Feature implements StepActor {
@@ -82,12 +85,20 @@ public class SynchronizedStep extends Feature implements StepActor {
 
 	protected long delay;
 	protected TimeUnit delayUnit;
-	protected long lastStepDuration;
+	protected volatile long lastStepDuration;
 	protected ConcurrentLinkedQueue<Entry> entries;
+	/**
+	 * Group of the calls of the current round, null if no round is running.
+	 */
+	protected volatile FutureGroup round;
 
 	protected SynchronizedStep(String id) {
 		super(id);
 		lastStepDuration = -1;
+		delay = 1;
+		delayUnit = TimeUnit.SECONDS;
+		entries = new ConcurrentLinkedQueue<Entry>();
+		round = null;
 	}
 
 	public long getStepDelay(TimeUnit unit) {
@@ -105,30 +116,44 @@ public class SynchronizedStep extends Feature implements StepActor {
 		entries.add(e);
 	}
 
+	/**
+	 * Start a new round by calling all the entries. The step does not wait for
+	 * the calls to be performed: the round is over once all the futures are
+	 * available, and a step happening before that is skipped.
+	 */
 	public void step() {
-		long start = System.currentTimeMillis();
+		if (round != null)
+			return;
 
-		FutureGroup latch = new FutureGroup(FutureGroup.Policy.WAIT_FOR_ALL);
+		final long start = Clock.now();
+		final FutureGroup group = new FutureGroup(
+				FutureGroup.Policy.WAIT_FOR_ALL);
 
 		for (Entry e : entries) {
 			Object r = e.actor.call(e.name, e.args);
 
 			if (r instanceof Future)
-				latch.put((Future) r);
+				group.put((Future) r);
 		}
 
-		try {
-			latch.await();
-		} catch (InterruptedException e) {
-		} finally {
-			lastStepDuration = delayUnit.convert(System.currentTimeMillis()
-					- start, TimeUnit.MILLISECONDS);
-		}
+		round = group;
+
+		group.getFuture().onComplete(new FutureListener() {
+			public void futureAvailable(Future future) {
+				lastStepDuration = delayUnit.convert(Clock.now() - start,
+						TimeUnit.NANOSECONDS);
+				round = null;
+			}
+		});
 	}
 
 	public void initFeature() {
-		// TODO Auto-generated method stub
+		Time t = Agency.getActorArgs(this).getTime("delay");
 
+		if (t != null) {
+			delay = t.time;
+			delayUnit = t.unit;
+		}
 	}
 
 }
@@ -24,6 +24,7 @@ import java.net.URISyntaxException;
 
 import org.d3.HostAddress;
 import org.d3.actor.Agency;
+import org.d3.actor.FutureId;
 import org.d3.protocol.request.ObjectCoder;
 import org.d3.protocol.request.ObjectCoder.CodingMethod;
 import org.d3.remote.RemotePort;
@@ -31,12 +32,12 @@ import org.d3.remote.RemotePort;
 public class FutureRequest implements Serializable {
 	private static final long serialVersionUID = -3651816320747757365L;
 
-	private String id;
+	private FutureId id;
 	private CodingMethod coding;
 	private byte[] value;
 	private URI target;
 
-	public FutureRequest(String id, Object value, Transmitter transmitter,
+	public FutureRequest(FutureId id, Object value, Transmitter transmitter,
 			RemotePort remotePort) {
 		this.id = id;
 		this.coding = transmitter.getPreferredCodingMethod();
@@ -54,7 +55,7 @@ public class FutureRequest implements Serializable {
 		}
 	}
 
-	public FutureRequest(String id, CodingMethod coding, byte[] value,
+	public FutureRequest(FutureId id, CodingMethod coding, byte[] value,
 			URI target) {
 		this.id = id;
 		this.value = value;
@@ -66,7 +67,7 @@ public class FutureRequest implements Serializable {
 		return target;
 	}
 
-	public String getFutureId() {
+	public FutureId getFutureId() {
 		return id;
 	}
 
@@ -18,41 +18,56 @@
  */
 package org.d3.protocol;
 
-import java.util.concurrent.ConcurrentHashMap;
-
+import org.d3.actor.Agency;
 import org.d3.actor.Future;
+import org.d3.actor.FutureId;
 import org.d3.Console;
 import org.d3.RegistrationException;
+import org.d3.tools.LongMap;
 
+/**
+ * Exported futures of the local agency, waiting for a remote value. Futures
+ * are indexed by the counter of their id, ids with another epoch than the
+ * local one are unknown.
+ */
 public class Futures {
 
-	private final ConcurrentHashMap<String, Future> futures;
+	private final LongMap<Future> futures;
 
 	public Futures() {
-		futures = new ConcurrentHashMap<String, Future>();
+		futures = new LongMap<Future>();
 	}
 
-	public void initFuture(String id, Object value) {
-		Future future = futures.get(id);
+	public void initFuture(FutureId id, Object value) {
+		Future future = get(id);
 
 		if (future != null) {
 			future.init(value);
-			futures.remove(id);
+			futures.remove(id.getCounter());
 		} else {
 			Console.error("future not found (%s)", id);
 		}
 	}
 
 	public void register(Future future) throws RegistrationException {
-		if (futures.putIfAbsent(future.getId(), future) != null)
+		FutureId id = future.getId();
+
+		if (id.getEpoch() != Agency.getLocalEpoch()
+				|| futures.putIfAbsent(id.getCounter(), future) != null)
 			throw new RegistrationException();
 	}
 	
 	public void unregister(Future future) {
-		futures.remove(future.getId());
+		FutureId id = future.getId();
+
+		if (id != null && id.getEpoch() == Agency.getLocalEpoch())
+			futures.remove(id.getCounter());
 	}
 	
-	public Future get(String id) {
-		return futures.get(id);
+	public Future get(FutureId id) {
+		if (id == null || id.getEpoch() != Agency.getLocalEpoch())
+			return null;
+
+		return futures.get(id.getCounter());
 	}
 }
@@ -0,0 +1,132 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.protocol;
+
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.d3.actor.Agency;
+
+/**
+ * Serial queue of the tasks received on an incoming connection. The reactor
+ * reading the connection only cuts the data into frames and executes a task
+ * in the lane for each one, the tasks decoding and dispatching the requests
+ * being run by the inbound workers of the transmitter. A lane is never run by
+ * two workers at the same time, so the requests of a connection are still
+ * dispatched in the order they have been received.
+ * 
+ * When too many tasks are waiting in a lane, the reactor stops reading the
+ * connection until the workers have caught up.
+ * 
+ * @author Guilhelm Savin
+ * @see org.d3.protocol.Transmitter#newInboundLane(SelectionKey)
+ */
+public final class InboundLane {
+	/**
+	 * Count of waiting tasks over which the connection is not read anymore.
+	 */
+	public static final int MAX_PENDING = 1024;
+
+	private final Transmitter transmitter;
+	final SelectionKey key;
+	private final ConcurrentLinkedQueue<Runnable> tasks;
+	private final AtomicInteger pending;
+	private final AtomicBoolean scheduled;
+	private volatile boolean suspended;
+
+	InboundLane(Transmitter transmitter, SelectionKey key) {
+		this.transmitter = transmitter;
+		this.key = key;
+		this.tasks = new ConcurrentLinkedQueue<Runnable>();
+		this.pending = new AtomicInteger(0);
+		this.scheduled = new AtomicBoolean(false);
+		this.suspended = false;
+	}
+
+	/**
+	 * Execute a task after the tasks previously executed in this lane. If the
+	 * transmitter has no inbound worker, the task is run by the calling
+	 * thread.
+	 * 
+	 * @param task
+	 *            the task
+	 */
+	public void execute(Runnable task) {
+		if (!transmitter.hasInboundWorkers()) {
+			run(task);
+			return;
+		}
+
+		tasks.add(task);
+
+		if (pending.incrementAndGet() > MAX_PENDING && !suspended
+				&& key.isValid()) {
+			suspended = true;
+			key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+		}
+
+		if (scheduled.compareAndSet(false, true))
+			transmitter.schedule(this);
+	}
+
+	/*
+	 * Run at most throughput tasks. Return true if the lane has to be
+	 * scheduled again.
+	 */
+	boolean runSlice(int throughput) {
+		for (int i = 0; i < throughput; i++) {
+			Runnable task = tasks.poll();
+
+			if (task == null)
+				break;
+
+			pending.decrementAndGet();
+			run(task);
+		}
+
+		if (suspended && pending.get() <= MAX_PENDING / 2)
+			resume();
+
+		if (!tasks.isEmpty())
+			return true;
+
+		scheduled.set(false);
+
+		return !tasks.isEmpty() && scheduled.compareAndSet(false, true);
+	}
+
+	private void run(Runnable task) {
+		try {
+			task.run();
+		} catch (RuntimeException e) {
+			Agency.getFaultManager().handle(e, transmitter);
+		}
+	}
+
+	private void resume() {
+		suspended = false;
+
+		if (key.isValid()) {
+			key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+			key.selector().wakeup();
+		}
+	}
+}
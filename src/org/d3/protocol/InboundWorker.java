@@ -0,0 +1,82 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.protocol;
+
+import java.nio.channels.SelectionKey;
+
+/**
+ * Worker thread of a transmitter, running the inbound lanes scheduled by the
+ * reactors. Requests are decoded and dispatched by these threads, so a reactor
+ * is never delayed by the decoding of a request or by the target of a call.
+ * 
+ * @author Guilhelm Savin
+ * @see org.d3.protocol.InboundLane
+ */
+final class InboundWorker extends ProtocolThread {
+
+	private final Transmitter transmitter;
+	private final int throughput;
+	/**
+	 * Lane actually run by the worker.
+	 */
+	private volatile InboundLane lane;
+
+	InboundWorker(Transmitter transmitter, int index, int throughput) {
+		super(transmitter, "inbound/" + index);
+
+		this.transmitter = transmitter;
+		this.throughput = throughput;
+		this.lane = null;
+	}
+
+	/**
+	 * Get the key of the connection which lane is actually run.
+	 * 
+	 * @return the key or null
+	 */
+	SelectionKey getLaneKey() {
+		InboundLane l = lane;
+		return l == null ? null : l.key;
+	}
+
+	public void run() {
+		while (true) {
+			InboundLane next;
+
+			try {
+				next = transmitter.nextLane();
+			} catch (InterruptedException e) {
+				continue;
+			}
+
+			lane = next;
+
+			boolean again;
+
+			try {
+				again = next.runSlice(throughput);
+			} finally {
+				lane = null;
+			}
+
+			if (again)
+				transmitter.schedule(next);
+		}
+	}
+}
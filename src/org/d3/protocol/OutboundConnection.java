@@ -0,0 +1,161 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.protocol;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.util.ArrayDeque;
+
+import org.d3.actor.FutureId;
+
+/**
+ * Outgoing connection of a transmitter to a remote endpoint. Frames are
+ * queued by the calling threads and written by the reactor of the connection,
+ * when the channel is writable.
+ * 
+ * The queue is guarded by the connection itself and bounded, a frame offered
+ * to a full queue is rejected. Once closed, a connection does not accept
+ * frames anymore and the sender has to open a new one.
+ * 
+ * @author Guilhelm Savin
+ * @see org.d3.protocol.Transmitter
+ */
+final class OutboundConnection {
+	/*
+	 * A frame and the id of the local future waiting for the result of the
+	 * request, if any.
+	 */
+	static class Frame {
+		final ByteBuffer data;
+		final int start;
+		final FutureId future;
+		boolean retried;
+
+		Frame(ByteBuffer data, FutureId future) {
+			this.data = data;
+			this.start = data.position();
+			this.future = future;
+			this.retried = false;
+		}
+	}
+
+	final InetSocketAddress address;
+	final Reactor reactor;
+	final ArrayDeque<Frame> queue;
+	final int capacity;
+	/*
+	 * Set when the connection is waiting for its reactor, so it is only handed
+	 * once.
+	 */
+	boolean writing;
+	boolean closed;
+	/*
+	 * Following fields are only used by the reactor.
+	 */
+	SelectableChannel channel;
+	SelectionKey key;
+	boolean connected;
+	long lastUse;
+	long openedAt;
+
+	OutboundConnection(InetSocketAddress address, Reactor reactor,
+			int capacity) {
+		this.address = address;
+		this.reactor = reactor;
+		this.queue = new ArrayDeque<Frame>();
+		this.capacity = capacity;
+		this.writing = false;
+		this.closed = false;
+		this.connected = false;
+		this.lastUse = System.nanoTime();
+		this.openedAt = 0;
+	}
+
+	/**
+	 * Queue a frame.
+	 * 
+	 * @param frame
+	 *            the frame
+	 * @return 1 if the connection has to be handed to its reactor, 0
+	 *         if it is already, -1 if the connection is closed, -2 if the
+	 *         queue is full
+	 */
+	synchronized int offer(Frame frame) {
+		if (closed)
+			return -1;
+
+		if (queue.size() >= capacity)
+			return -2;
+
+		queue.add(frame);
+
+		if (writing)
+			return 0;
+
+		writing = true;
+		return 1;
+	}
+
+	/**
+	 * Get the next frame to write, or stop writing if there is no more.
+	 * 
+	 * @return the next frame, or null
+	 */
+	synchronized Frame peek() {
+		Frame f = queue.peek();
+
+		if (f == null)
+			writing = false;
+
+		return f;
+	}
+
+	synchronized void written() {
+		queue.poll();
+	}
+
+	/**
+	 * Close the connection if nothing is queued.
+	 * 
+	 * @return true if the connection has been closed
+	 */
+	synchronized boolean closeIfIdle() {
+		if (closed || writing || queue.size() > 0)
+			return false;
+
+		closed = true;
+		return true;
+	}
+
+	/**
+	 * Close the connection and get the frames not written yet.
+	 * 
+	 * @return frames remaining in the queue
+	 */
+	synchronized Frame[] close() {
+		Frame[] remaining = queue.toArray(new Frame[queue.size()]);
+
+		closed = true;
+		queue.clear();
+
+		return remaining;
+	}
+}
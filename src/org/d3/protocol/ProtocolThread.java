@@ -29,7 +29,20 @@ public class ProtocolThread extends ActorThread {
 	private RemoteActor role;
 
 	public ProtocolThread(Protocol owner) {
-		super(owner, "server");
+		this(owner, "server");
+	}
+
+	/**
+	 * Create another thread of a protocol, which can also assume the role of
+	 * remote actors.
+	 * 
+	 * @param owner
+	 *            the protocol
+	 * @param threadId
+	 *            suffix of the thread id
+	 */
+	protected ProtocolThread(Protocol owner, String threadId) {
+		super(owner, threadId);
 		role = null;
 	}
 
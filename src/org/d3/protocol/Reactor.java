@@ -0,0 +1,346 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.d3.actor.Agency;
+import org.d3.protocol.OutboundConnection.Frame;
+
+/**
+ * Selector thread of a transmitter. A transmitter has one or more reactors,
+ * each one owning a part of the connections of the transmitter: it reads the
+ * incoming connections handed by the protocol thread, and writes the outgoing
+ * connections to the remote endpoints it has been assigned.
+ * 
+ * The state of a connection is attached to its selection key, so it is only
+ * accessed by the reactor of the connection.
+ * 
+ * @author Guilhelm Savin
+ * @see org.d3.protocol.Transmitter
+ */
+final class Reactor extends ProtocolThread {
+
+	private final Transmitter transmitter;
+	private final Selector selector;
+	private final ConcurrentLinkedQueue<SelectableChannel> pendingInbound;
+	private final ConcurrentLinkedQueue<OutboundConnection> pendingOutbound;
+	/**
+	 * Outgoing connections of this reactor.
+	 */
+	private final ArrayList<OutboundConnection> connections;
+	private final ByteBuffer probe;
+	private final long idleTimeout;
+	private final long connectTimeout;
+	private long lastEviction;
+	/**
+	 * Key actually read by the reactor.
+	 */
+	private SelectionKey readingKey;
+
+	Reactor(Transmitter transmitter, int index, long idleTimeout,
+			long connectTimeout) throws IOException {
+		super(transmitter, "reactor/" + index);
+
+		this.transmitter = transmitter;
+		this.selector = Selector.open();
+		this.pendingInbound = new ConcurrentLinkedQueue<SelectableChannel>();
+		this.pendingOutbound = new ConcurrentLinkedQueue<OutboundConnection>();
+		this.connections = new ArrayList<OutboundConnection>();
+		this.probe = ByteBuffer.allocate(256);
+		this.idleTimeout = idleTimeout;
+		this.connectTimeout = connectTimeout;
+		this.lastEviction = System.nanoTime();
+	}
+
+	/**
+	 * Hand a channel to read to this reactor.
+	 * 
+	 * @param channel
+	 *            a non-blocking channel
+	 */
+	void register(SelectableChannel channel) {
+		pendingInbound.add(channel);
+		selector.wakeup();
+	}
+
+	/**
+	 * Hand an outgoing connection which has frames to write to this reactor.
+	 * 
+	 * @param c
+	 *            the connection
+	 */
+	void handOver(OutboundConnection c) {
+		pendingOutbound.add(c);
+		selector.wakeup();
+	}
+
+	/**
+	 * Get the key actually read, if the current thread is a reactor.
+	 * 
+	 * @return the key or null
+	 */
+	static SelectionKey getReadingKey() {
+		Thread t = Thread.currentThread();
+
+		if (t instanceof Reactor)
+			return ((Reactor) t).readingKey;
+
+		return null;
+	}
+
+	public void run() {
+		long period = Math.max(1, TimeUnit.NANOSECONDS.toMillis(Math.min(
+				idleTimeout, connectTimeout) / 2));
+
+		while (selector.isOpen()) {
+			registerPending();
+
+			try {
+				selector.select(connections.isEmpty() ? 0 : period);
+			} catch (IOException e) {
+				Agency.getFaultManager().handle(e, transmitter);
+			} catch (ClosedSelectorException e) {
+				Agency.getFaultManager().handle(e, transmitter);
+				break;
+			}
+
+			Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+
+			while (it.hasNext()) {
+				SelectionKey sk = it.next();
+				it.remove();
+
+				if (sk.attachment() instanceof OutboundConnection)
+					processOutbound(sk, (OutboundConnection) sk.attachment());
+				else
+					processInbound(sk);
+			}
+
+			evictIdle();
+		}
+	}
+
+	private void registerPending() {
+		SelectableChannel ch;
+		OutboundConnection c;
+
+		while ((ch = pendingInbound.poll()) != null) {
+			try {
+				ch.register(selector, SelectionKey.OP_READ);
+			} catch (IOException e) {
+				Agency.getFaultManager().handle(e, transmitter);
+			}
+		}
+
+		while ((c = pendingOutbound.poll()) != null) {
+			if (c.channel == null)
+				open(c);
+			else if (c.connected)
+				flush(c);
+		}
+	}
+
+	private void processInbound(SelectionKey sk) {
+		if (!sk.isValid() || !sk.isReadable())
+			return;
+
+		int r = -1;
+
+		readingKey = sk;
+
+		try {
+			r = transmitter.read(sk);
+		} catch (TransmissionException e) {
+			Agency.getFaultManager().handle(e, transmitter);
+		} finally {
+			readingKey = null;
+		}
+
+		if (r < 0) {
+			sk.cancel();
+
+			try {
+				sk.channel().close();
+			} catch (IOException e) {
+				Agency.getFaultManager().handle(e, transmitter);
+			}
+		}
+	}
+
+	private void open(OutboundConnection c) {
+		try {
+			c.openedAt = System.nanoTime();
+			c.channel = transmitter.openOutbound(c.address);
+			connections.add(c);
+
+			if (c.channel instanceof SocketChannel
+					&& ((SocketChannel) c.channel).isConnectionPending())
+				c.key = c.channel.register(selector, SelectionKey.OP_CONNECT, c);
+			else {
+				c.key = c.channel.register(selector, 0, c);
+				connected(c);
+			}
+		} catch (IOException e) {
+			failed(c, e);
+		}
+	}
+
+	private void processOutbound(SelectionKey sk, OutboundConnection c) {
+		try {
+			if (sk.isValid() && sk.isConnectable()) {
+				if (((SocketChannel) c.channel).finishConnect())
+					connected(c);
+			}
+
+			//
+			// Nothing is expected on an outgoing connection, but the end of
+			// the stream tells that the remote side has closed it.
+			//
+			if (sk.isValid() && sk.isReadable()) {
+				probe.clear();
+
+				if (((ReadableByteChannel) c.channel).read(probe) < 0) {
+					failed(c, new IOException("connection closed by remote"));
+					return;
+				}
+			}
+
+			if (sk.isValid() && sk.isWritable())
+				flush(c);
+		} catch (IOException e) {
+			failed(c, e);
+		}
+	}
+
+	private void connected(OutboundConnection c) {
+		c.connected = true;
+
+		if (c.channel instanceof SocketChannel)
+			c.key.interestOps(SelectionKey.OP_READ);
+		else
+			c.key.interestOps(0);
+
+		flush(c);
+	}
+
+	/*
+	 * Write the queued frames until the channel is full.
+	 */
+	private void flush(OutboundConnection c) {
+		WritableByteChannel ch = (WritableByteChannel) c.channel;
+		Frame f;
+
+		try {
+			while ((f = c.peek()) != null) {
+				ch.write(f.data);
+
+				if (f.data.hasRemaining()) {
+					c.key.interestOps(c.key.interestOps()
+							| SelectionKey.OP_WRITE);
+					return;
+				}
+
+				c.written();
+			}
+		} catch (IOException e) {
+			failed(c, e);
+			return;
+		}
+
+		c.lastUse = System.nanoTime();
+		c.key.interestOps(c.key.interestOps() & ~SelectionKey.OP_WRITE);
+	}
+
+	private void failed(OutboundConnection c, IOException e) {
+		Frame[] remaining = c.close();
+		TransmissionException cause = null;
+
+		close(c);
+
+		for (Frame f : remaining) {
+			if (c.connected && !f.retried) {
+				f.retried = true;
+				f.data.position(f.start);
+				transmitter.send(f, c.address);
+			} else {
+				if (cause == null)
+					cause = new TransmissionException(e);
+
+				if (f.future != null)
+					transmitter.failed(f, cause);
+			}
+		}
+
+		if (cause != null)
+			Agency.getFaultManager().handle(cause, transmitter);
+	}
+
+	private void close(OutboundConnection c) {
+		transmitter.removeOutbound(c);
+		connections.remove(c);
+
+		if (c.key != null)
+			c.key.cancel();
+
+		if (c.channel != null) {
+			try {
+				c.channel.close();
+			} catch (IOException e) {
+				// Nothing can be done
+			}
+		}
+	}
+
+	/*
+	 * Close the connections idle for too long, and fail the ones which could
+	 * not be established in time.
+	 */
+	private void evictIdle() {
+		long now = System.nanoTime();
+
+		if (now - lastEviction < Math.min(idleTimeout, connectTimeout) / 2)
+			return;
+
+		lastEviction = now;
+
+		for (int i = connections.size() - 1; i >= 0; i--) {
+			OutboundConnection c = connections.get(i);
+
+			if (!c.connected) {
+				if (now - c.openedAt > connectTimeout)
+					failed(c, new IOException("connection to " + c.address
+							+ " timed out"));
+			} else if (now - c.lastUse > idleTimeout && c.closeIfIdle())
+				close(c);
+		}
+	}
+}
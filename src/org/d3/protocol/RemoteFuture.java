@@ -24,6 +24,7 @@ import java.net.URISyntaxException;
 import org.d3.Console;
 import org.d3.actor.Agency;
 import org.d3.actor.Future;
+import org.d3.actor.FutureId;
 import org.d3.remote.NoRemotePortAvailableException;
 import org.d3.remote.RemoteAgency;
 import org.d3.remote.RemotePort;
@@ -43,14 +44,22 @@ public class RemoteFuture extends Future {
 
 	private RemoteAgency remote;
 
-	public RemoteFuture(RemoteAgency ra, String id) {
+	public RemoteFuture(RemoteAgency ra, FutureId id) {
 		super(id);
 		this.remote = ra;
 	}
 
+	/**
+	 * Initialize the future and transmit its value to the remote future. If
+	 * the value is another future, nothing is transmitted until this future is
+	 * initialized again with the value of the other one.
+	 */
 	public void init(Object value) {
 		super.init(value);
 
+		if (value instanceof Future && value != this)
+			return;
+
 		try {
 			RemotePort rp = remote.getRandomRemotePortTransmittable();
 			Transmitter t = (Transmitter) rp.getCompatibleProtocol();
@@ -64,6 +73,10 @@ public class RemoteFuture extends Future {
 		}
 	}
 
+	public String getAgencyId() {
+		return remote.getId();
+	}
+
 	public URI getURI() {
 		try {
 			return new URI(String.format("//%s/%s/%s", remote.getRemoteHost()
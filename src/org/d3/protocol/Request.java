@@ -25,6 +25,8 @@ import java.net.URI;
 import java.net.URISyntaxException;
 
 import org.d3.actor.Call;
+import org.d3.actor.EncodedArgs;
+import org.d3.actor.FutureId;
 import org.d3.protocol.request.ObjectCoder;
 import org.d3.protocol.request.ObjectCoder.CodingMethod;
 import org.d3.remote.RemotePort;
@@ -83,7 +85,7 @@ public class Request implements Serializable {
 	/**
 	 * If a value should be returned, this is the id of the remote future.
 	 */
-	protected final String futureId;
+	protected final FutureId futureId;
 
 	/**
 	 * Constructor used by transmitter to create a new request. The request is
@@ -105,7 +107,7 @@ public class Request implements Serializable {
 		this.call = call.getName();
 		this.codingMethod = transmitter.getPreferredCodingMethod();
 		this.args = ObjectCoder.encode(codingMethod, call.getArgs());
-		this.futureId = call.getFuture().getId();
+		this.futureId = call.getFuture().exportId();
 	}
 
 	/**
@@ -126,7 +128,7 @@ public class Request implements Serializable {
 	 *            future
 	 */
 	public Request(URI source, URI target, String call, CodingMethod cm,
-			byte[] args, String futureId) {
+			byte[] args, FutureId futureId) {
 		this.source = source;
 		this.target = target;
 		this.call = call;
@@ -155,10 +157,24 @@ public class Request implements Serializable {
 		return args;
 	}
 
-	public String getFutureId() {
+	public FutureId getFutureId() {
 		return futureId;
 	}
 
+	/**
+	 * Get the arguments of the call without decoding them. They are decoded
+	 * once needed, by the thread invoking the callable.
+	 * 
+	 * @return encoded arguments
+	 */
+	public EncodedArgs getEncodedArgs() {
+		return new EncodedArgs() {
+			public Object[] decode() {
+				return getDecodedArgs();
+			}
+		};
+	}
+
 	public Object[] getDecodedArgs() {
 		Object data = ObjectCoder.decode(codingMethod, args);
 
@@ -22,52 +22,147 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.UnknownHostException;
-import java.nio.channels.Channel;
-import java.nio.channels.ClosedChannelException;
-import java.nio.channels.ClosedSelectorException;
-import java.nio.channels.ReadableByteChannel;
+import java.nio.ByteBuffer;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.d3.ActorNotFoundException;
 import org.d3.Args;
 import org.d3.Console;
 import org.d3.HostAddress;
+import org.d3.RegistrationException;
 import org.d3.actor.Agency;
 import org.d3.actor.Call;
 import org.d3.actor.CallException;
+import org.d3.actor.Dispatcher;
+import org.d3.actor.FutureId;
 import org.d3.actor.LocalActor;
 import org.d3.actor.Protocol;
 import org.d3.actor.RemoteActor;
 import org.d3.actor.UnregisteredActorException;
+import org.d3.actor.body.BodyQueue;
+import org.d3.annotation.Callable;
+import org.d3.annotation.Direct;
+import org.d3.protocol.OutboundConnection.Frame;
 import org.d3.protocol.request.ObjectCoder.CodingMethod;
 import org.d3.remote.HostNotFoundException;
 import org.d3.remote.RemotePort;
 import org.d3.remote.UnknownAgencyException;
 import org.d3.tools.CacheCreationException;
-
-public abstract class Transmitter extends Protocol {
+import org.d3.tools.Time;
+
+/**
+ * Base of the protocols transmitting requests to remote agencies. The protocol
+ * thread of a transmitter accepts the incoming connections and spreads them
+ * over the reactors of the transmitter, their count being given by the actor
+ * argument <code>reactors</code>, 1 by default. Each reactor is a selector
+ * thread reading the frames of its incoming connections.
+ * 
+ * The frames are not decoded by the reactors but by the inbound workers of
+ * the transmitter, their count being given by the actor argument
+ * <code>inbound.workers</code>, the count of processors by default. Each
+ * connection has an {@link org.d3.protocol.InboundLane}, so the requests of a
+ * connection are dispatched in order while requests received on different
+ * connections are decoded in parallel. With 0 workers, the reactors decode the
+ * requests themselves. The remote source of a request is given explicitly to
+ * the call of the target, so any thread can dispatch it. The arguments of the
+ * call are given still encoded, and decoded by the body of the target.
+ * 
+ * Sending a request never blocks the calling thread. The frame is queued in
+ * the outgoing connection to the remote endpoint, and the connection is handed
+ * to its reactor, chosen from the endpoint, which connects it if needed and
+ * writes the queued frames when the channel is writable. Connections are kept
+ * open, and closed once they have been idle longer than the actor argument
+ * <code>connections.idle</code>, 30 seconds by default. If an established
+ * connection is lost, the frames not written yet are written once again on a
+ * new connection, else the futures of the requests are initialized with a
+ * {@link org.d3.actor.CallException}.
+ * 
+ * A connection queues at most <code>connections.queue</code> frames, 4096 by
+ * default, and has to be established within <code>connections.timeout</code>,
+ * 10 seconds by default. The future of a frame which can not be queued, or
+ * which was queued in a connection never established, is initialized with a
+ * {@link org.d3.actor.CallException} caused by a
+ * {@link org.d3.protocol.TransmissionException}.
+ * 
+ * @author Guilhelm Savin
+ * @see org.d3.protocol.OutboundConnection
+ */
+public abstract class Transmitter extends Protocol implements
+		BodyQueue.Backpressure {
+	public static final String CONNECTIONS_IDLE_ARG = "connections.idle";
+	public static final String CONNECTIONS_QUEUE_ARG = "connections.queue";
+	public static final String CONNECTIONS_TIMEOUT_ARG = "connections.timeout";
+	public static final String REACTORS_ARG = "reactors";
+	public static final String INBOUND_WORKERS_ARG = "inbound.workers";
 
 	/**
 	 * Default is 1MB.
 	 */
 	protected int maxBytesPerRequest;
+	private final ConcurrentHashMap<InetSocketAddress, OutboundConnection> outbound;
+	private Reactor[] reactors;
+	private InboundWorker[] workers;
+	private int queueCapacity;
+	private final LinkedBlockingQueue<InboundLane> lanes;
 
 	protected Transmitter(String scheme, String id,
 			InetSocketAddress socketAddress) {
 		super(scheme, id, socketAddress);
+
+		this.outbound = new ConcurrentHashMap<InetSocketAddress, OutboundConnection>();
+		this.lanes = new LinkedBlockingQueue<InboundLane>();
 	}
 
 	public void init() {
 		Args args;
+		long idleTimeout = TimeUnit.SECONDS.toNanos(30);
+		long connectTimeout = TimeUnit.SECONDS.toNanos(10);
 
-		super.init();
 		args = Agency.getActorArgs(this);
 
+		Time t = args.getTime(CONNECTIONS_IDLE_ARG);
+
+		if (t != null)
+			idleTimeout = Math.max(1, t.unit.toNanos(t.time));
+
+		t = args.getTime(CONNECTIONS_TIMEOUT_ARG);
+
+		if (t != null)
+			connectTimeout = Math.max(1, t.unit.toNanos(t.time));
+
+		queueCapacity = Math.max(1, args.getInteger(CONNECTIONS_QUEUE_ARG,
+				4096));
+		reactors = new Reactor[Math.max(1, args.getInteger(REACTORS_ARG, 1))];
+
+		for (int i = 0; i < reactors.length; i++) {
+			try {
+				reactors[i] = new Reactor(this, i, idleTimeout,
+						connectTimeout);
+			} catch (IOException e) {
+				throw new RegistrationException(e);
+			}
+		}
+
+		int count = Runtime.getRuntime().availableProcessors();
+		int throughput = Agency.getArgs().getInteger(
+				Dispatcher.THROUGHPUT_ARG, 64);
+
+		if (args.has(INBOUND_WORKERS_ARG))
+			count = args.getInteger(INBOUND_WORKERS_ARG);
+
+		workers = new InboundWorker[Math.max(0, count)];
+
+		for (int i = 0; i < workers.length; i++)
+			workers[i] = new InboundWorker(this, i, Math.max(1, throughput));
+
+		super.init();
+
 		if (args.has("maxBytesPerRequest"))
 			maxBytesPerRequest = args.getInteger("maxBytesPerRequest");
 		else if (Agency.getArgs().has("transmitter.maxBytesPerRequest"))
@@ -77,48 +172,49 @@ public abstract class Transmitter extends Protocol {
 			maxBytesPerRequest = 1024 * 1024;
 	}
 
+	/**
+	 * Start the reactors and the inbound workers, then accept the incoming
+	 * connections and spread them over the reactors. If the channel of the
+	 * transmitter does not accept connections, it is read by the first
+	 * reactor.
+	 */
 	public void listen() {
 		checkProtocolThreadAccess();
 
-		Selector selector = null;
 		SelectableChannel channel = getChannel();
 
-		try {
-			selector = Selector.open();
-		} catch (IOException e) {
-			Agency.getFaultManager().handle(e, this);
-		}
+		for (int i = 0; i < workers.length; i++)
+			workers[i].start();
 
-		try {
-			channel
-					.register(
-							selector,
-							channel.validOps()
-									& (SelectionKey.OP_ACCEPT
-											| SelectionKey.OP_READ | SelectionKey.OP_CONNECT));
-
-		} catch (ClosedChannelException e) {
-			Agency.getFaultManager().handle(e, this);
-		}
+		for (int i = 0; i < reactors.length; i++)
+			reactors[i].start();
+
+		if (!(channel instanceof ServerSocketChannel)) {
+			reactors[0].register(channel);
 
-		while (selector.isOpen()) {
 			try {
-				selector.select();
-			} catch (IOException e) {
-				Agency.getFaultManager().handle(e, this);
-			} catch (ClosedSelectorException e) {
+				reactors[0].join();
+			} catch (InterruptedException e) {
 				Agency.getFaultManager().handle(e, this);
 			}
+		} else {
+			ServerSocketChannel server = (ServerSocketChannel) channel;
+			int next = 0;
 
-			Iterator<SelectionKey> it = selector.selectedKeys().iterator();
-
-			while (it.hasNext()) {
-				SelectionKey sk = it.next();
+			try {
+				server.configureBlocking(true);
+			} catch (IOException e) {
+				Agency.getFaultManager().handle(e, this);
+			}
 
+			while (server.isOpen()) {
 				try {
-					processSelectionKey(sk);
+					SocketChannel sc = server.accept();
+
+					sc.configureBlocking(false);
+					reactors[next].register(sc);
+					next = (next + 1) % reactors.length;
 				} catch (IOException e) {
-					// TODO
 					Agency.getFaultManager().handle(e, this);
 				}
 			}
@@ -127,45 +223,146 @@ public abstract class Transmitter extends Protocol {
 		Console.error("protocol end");
 	}
 
-	protected void processSelectionKey(SelectionKey sk) throws IOException {
-		if (sk.isValid() && sk.isAcceptable()) {
-			ServerSocketChannel ch = (ServerSocketChannel) sk.channel();
+	/**
+	 * Create the lane of an incoming connection. This is called by the reactor
+	 * of the connection, the lane being then attached to the key with the
+	 * state of the connection.
+	 * 
+	 * @param key
+	 *            the key of the connection
+	 * @return a new lane
+	 */
+	protected InboundLane newInboundLane(SelectionKey key) {
+		return new InboundLane(this, key);
+	}
 
-			try {
-				SocketChannel sc = ch.accept();
+	boolean hasInboundWorkers() {
+		return workers.length > 0;
+	}
 
-				if (sc != null) {
-					sc.configureBlocking(false);
-					sc.register(sk.selector(), SelectionKey.OP_READ);
-				}
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-		}
+	void schedule(InboundLane lane) {
+		lanes.add(lane);
+	}
 
-		if (sk.isValid() && sk.isConnectable()) {
-			SocketChannel sChannel = (SocketChannel) sk.channel();
+	InboundLane nextLane() throws InterruptedException {
+		return lanes.take();
+	}
 
-			if (!sChannel.finishConnect())
-				sk.cancel();
-		}
+	/**
+	 * Queue a frame in the connection to a remote endpoint. The frame is
+	 * written later by the reactor of the connection, this method never
+	 * blocks. If the queue of the connection is full, the frame is dropped
+	 * and its future is initialized with an exception.
+	 * 
+	 * @param address
+	 *            the remote endpoint
+	 * @param data
+	 *            the frame
+	 * @param future
+	 *            id of the local future waiting for the result of the request,
+	 *            initialized with an exception if the frame can not be
+	 *            written. This is null if there is no such future.
+	 */
+	protected void send(InetSocketAddress address, ByteBuffer data,
+			FutureId future) {
+		send(new Frame(data, future), address);
+	}
 
-		if (sk.isValid() && sk.isReadable()) {
-			ReadableByteChannel ch = (ReadableByteChannel) sk.channel();
+	void send(Frame frame, InetSocketAddress address) {
+		while (true) {
+			OutboundConnection c = outbound.get(address);
 
-			int r = -1;
+			if (c == null) {
+				Reactor reactor = reactors[(address.hashCode() & 0x7FFFFFFF)
+						% reactors.length];
+				OutboundConnection n = new OutboundConnection(address, reactor,
+						queueCapacity);
+				c = outbound.putIfAbsent(address, n);
 
-			try {
-				r = read(ch);
-			} catch (TransmissionException e) {
-				Agency.getFaultManager().handle(e, this);
+				if (c == null)
+					c = n;
+			}
+
+			int r = c.offer(frame);
+
+			if (r == -2) {
+				failed(frame, new TransmissionException(
+						"too many frames queued to %s", address));
+				return;
 			}
 
 			if (r < 0) {
-				close(ch);
-				ch.close();
+				outbound.remove(address, c);
+				continue;
 			}
+
+			if (r > 0)
+				c.reactor.handOver(c);
+
+			return;
+		}
+	}
+
+	/**
+	 * Open a non-blocking channel to a remote endpoint. The connection may
+	 * still be pending when this method returns. Default is a TCP channel.
+	 * 
+	 * @param address
+	 *            the remote endpoint
+	 * @return a non-blocking channel
+	 * @throws IOException
+	 */
+	protected SelectableChannel openOutbound(InetSocketAddress address)
+			throws IOException {
+		SocketChannel ch = SocketChannel.open();
+
+		try {
+			ch.configureBlocking(false);
+			ch.socket().setTcpNoDelay(true);
+			ch.connect(address);
+		} catch (IOException e) {
+			ch.close();
+			throw e;
+		}
+
+		return ch;
+	}
+
+	/**
+	 * Get the count of outgoing connections, connected or not.
+	 * 
+	 * @return count of connections
+	 */
+	@Callable("connections.count")
+	@Direct
+	public Integer getConnectionCount() {
+		return outbound.size();
+	}
+
+	void removeOutbound(OutboundConnection c) {
+		outbound.remove(c.address, c);
+	}
+
+	/**
+	 * Initialize the future of a frame which will not be written with an
+	 * exception. If there is no such future, the failure is handled by the
+	 * fault manager.
+	 * 
+	 * @param frame
+	 *            the frame
+	 * @param cause
+	 *            the cause of the failure
+	 */
+	void failed(Frame frame, TransmissionException cause) {
+		if (frame.future == null) {
+			Agency.getFaultManager().handle(cause, this);
+			return;
 		}
+
+		Futures futures = Agency.getLocalAgency().getProtocols().getFutures();
+
+		if (futures.get(frame.future) != null)
+			futures.initFuture(frame.future, new CallException(cause));
 	}
 
 	/**
@@ -188,8 +385,6 @@ public abstract class Transmitter extends Protocol {
 	 */
 	public void transmit(RemotePort port, Call c) throws TransmissionException {
 		if (c.getTarget().isRemote()) {
-			// Future f = c.getFuture();
-			// Agency.getLocalAgency().getProtocols().getFutures().register(f);
 			write(new Request(c, this, port));
 		} else {
 			// TODO
@@ -197,7 +392,7 @@ public abstract class Transmitter extends Protocol {
 		}
 	}
 
-	public void transmitFuture(RemotePort remote, String futureId, Object value)
+	public void transmitFuture(RemotePort remote, FutureId futureId, Object value)
 			throws TransmissionException {
 		FutureRequest fr = new FutureRequest(futureId, value, this, remote);
 		write(fr);
@@ -227,43 +422,49 @@ public abstract class Transmitter extends Protocol {
 				Agency.getFaultManager().handle(e, this);
 			}
 
-			startAssuming(source);
-
 			String path = target.getPath();
 			String agencyId = path.substring(1, path.indexOf('/', 1));
 
-			if (Agency.getLocalAgencyId().equals(agencyId)) {
-				String fullPath = path.substring(path.indexOf('/', 1));
-
-				RemoteFuture future = new RemoteFuture(
-						source.getRemoteAgency(), r.getFutureId());
+			//
+			// Direct and read-only callables are invoked by this thread, which
+			// has to be seen as the remote source while doing so.
+			//
+			startAssuming(source);
 
-				try {
-					LocalActor targetActor = Agency.getLocalAgency()
-							.getActors().get(fullPath);
-
-					if (targetActor != null) {
-						targetActor.call(r.getCall(), future, r
-								.getDecodedArgs());
-					} else {
-						Console.error(path);
-						future.init(new CallException(
-								new ActorNotFoundException()));
+			try {
+				if (Agency.getLocalAgencyId().equals(agencyId)) {
+					String fullPath = path.substring(path.indexOf('/', 1));
+
+					RemoteFuture future = new RemoteFuture(source
+							.getRemoteAgency(), r.getFutureId());
+
+					try {
+						LocalActor targetActor = Agency.getLocalAgency()
+								.getActors().get(fullPath);
+
+						if (targetActor != null) {
+							targetActor.call(source, r.getCall(), future, r
+									.getEncodedArgs());
+						} else {
+							Console.error(path);
+							future.init(new CallException(
+									new ActorNotFoundException()));
+						}
+					} catch (ActorNotFoundException e) {
+						Console.error("actor not found '%s'", fullPath);
+						future.init(new CallException(e));
+					} catch (UnregisteredActorException e) {
+						future.init(new CallException(e));
 					}
-				} catch (ActorNotFoundException e) {
-					Console.error("actor not found '%s'", fullPath);
-					future.init(new CallException(e));
-				} catch (UnregisteredActorException e) {
-					future.init(new CallException(e));
-				}
-			} else
-				Console.error("not local agency : %s", agencyId);
-			// writeRequest(r);
+				} else
+					Console.error("not local agency : %s", agencyId);
+				// writeRequest(r);
+			} finally {
+				stopAssuming();
+			}
 		} else
 			Console.error("not local address : %s", address);
 		// writeRequest(r);
-
-		stopAssuming();
 	}
 
 	protected void dispatch(FutureRequest fr) {
@@ -273,10 +474,58 @@ public abstract class Transmitter extends Protocol {
 
 	public abstract SelectableChannel getChannel();
 
-	public abstract int read(ReadableByteChannel ch)
-			throws TransmissionException;
+	/**
+	 * Read the data available on an incoming channel. This is called by the
+	 * reactor owning the channel. The state of the connection, if any, should
+	 * be attached to the key, and is dropped with it once the channel is
+	 * closed. Received frames should be decoded and dispatched by tasks
+	 * executed in the lane of the connection rather than by the reactor.
+	 * 
+	 * @param key
+	 *            the key of the channel
+	 * @return -1 if the channel has to be closed
+	 * @throws TransmissionException
+	 */
+	public abstract int read(SelectionKey key) throws TransmissionException;
+
+	/**
+	 * Stop selecting the key actually read until the queue is drained. This
+	 * is called by a reactor or an inbound worker when it dispatches a request
+	 * to an actor which mailbox is full.
+	 * 
+	 * @see org.d3.actor.body.BodyQueue.OverflowPolicy#BACKPRESSURE
+	 */
+	public void suspendReading(BodyQueue queue) {
+		final SelectionKey key = getReadingKey();
+
+		if (key == null || !key.isValid())
+			return;
+
+		key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+		key.selector().wakeup();
 
-	public abstract void close(Channel ch);
+		queue.onDrained(new Runnable() {
+			public void run() {
+				if (key.isValid()) {
+					key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+					key.selector().wakeup();
+				}
+			}
+		});
+	}
+
+	/*
+	 * Get the key of the connection which request is actually dispatched by
+	 * the current thread.
+	 */
+	private static SelectionKey getReadingKey() {
+		Thread t = Thread.currentThread();
+
+		if (t instanceof InboundWorker)
+			return ((InboundWorker) t).getLaneKey();
+
+		return Reactor.getReadingKey();
+	}
 
 	public abstract void write(Request r) throws TransmissionException;
 
@@ -22,15 +22,16 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.nio.ByteBuffer;
-import java.nio.channels.Channel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.ServerSocketChannel;
-import java.nio.channels.SocketChannel;
-import java.util.HashMap;
 
+import org.d3.actor.Agency;
+import org.d3.actor.FutureId;
 import org.d3.annotation.ActorPath;
 import org.d3.protocol.FutureRequest;
+import org.d3.protocol.InboundLane;
 import org.d3.protocol.InetProtocol;
 import org.d3.protocol.Request;
 import org.d3.protocol.TransmissionException;
@@ -39,37 +40,47 @@ import org.d3.protocol.request.ObjectCoder.CodingMethod;
 import org.d3.remote.HostNotFoundException;
 import org.d3.remote.UnknownAgencyException;
 
+/**
+ * Transmitter sending requests as binary frames over TCP. Frames are written
+ * on the persistent outgoing connections of the transmitter, and a connection
+ * accepted by the transmitter is read frame after frame until the remote side
+ * closes it. Complete frames are decoded by the inbound workers, in the lane of
+ * the connection.
+ * 
+ * @author Guilhelm Savin
+ * @see org.d3.protocol.Transmitter
+ */
 @ActorPath("/protocols/raw/tcp")
 @InetProtocol
 public class RAWTCPTransmitter extends Transmitter {
 	public static final byte TYPE_REQUEST = 0x01;
 	public static final byte TYPE_FUTURE_REQUEST = 0x02;
 
+	/*
+	 * Frame being read on an accepted connection, attached to the key of the
+	 * connection.
+	 */
+	private static class Frame {
+		final ByteBuffer header = ByteBuffer.allocate(4);
+		final InboundLane lane;
+		ByteBuffer data;
+
+		Frame(InboundLane lane) {
+			this.lane = lane;
+		}
+	}
+
 	private final ServerSocketChannel channel;
-	private final HashMap<Channel, ByteBuffer> buffers;
 
 	public RAWTCPTransmitter(InetSocketAddress socketAddress)
 			throws IOException {
 		super("raw", Integer.toString(socketAddress.getPort()), socketAddress);
 
-		buffers = new HashMap<Channel, ByteBuffer>();
-
 		channel = ServerSocketChannel.open();
 		channel.configureBlocking(false);
 		channel.socket().bind(socketAddress);
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see org.d3.protocol.Transmitter#close(java.nio.channels.Channel)
-	 */
-	public void close(Channel ch) {
-		if (buffers.containsKey(ch)) {
-			buffers.remove(ch);
-		}
-	}
-
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -82,54 +93,70 @@ public class RAWTCPTransmitter extends Transmitter {
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see
-	 * org.d3.protocol.Transmitter#read(java.nio.channels.ReadableByteChannel)
+	 * @see org.d3.protocol.Transmitter#read(java.nio.channels.SelectionKey)
 	 */
-	public int read(ReadableByteChannel ch) throws TransmissionException {
-		int r = -1;
-		ByteBuffer data;
-
-		if (!buffers.containsKey(ch)) {
-			ByteBuffer header = ByteBuffer.allocate(4);
-			int size;
-
-			try {
-				r = ch.read(header);
-			} catch (IOException e) {
-				throw new TransmissionException(e);
-			}
-
-			if (r != 4)
-				throw new TransmissionException("headers not read");
-
-			header.rewind();
-			size = header.getInt();
-
-			if (size > maxBytesPerRequest)
-				throw new TransmissionException(
-						"request should not exceed %d bytes",
-						maxBytesPerRequest);
-
-			data = ByteBuffer.allocate(size);
-			data.putInt(size);
-			buffers.put(ch, data);
-		} else
-			data = buffers.get(ch);
+	public int read(SelectionKey key) throws TransmissionException {
+		ReadableByteChannel ch = (ReadableByteChannel) key.channel();
+		Frame frame = (Frame) key.attachment();
+		int r;
+
+		if (frame == null) {
+			frame = new Frame(newInboundLane(key));
+			key.attach(frame);
+		}
 
+		//
+		// Read all the frames available on the connection. The connection
+		// stays open, so -1 is only returned at the end of the stream.
+		//
 		try {
-			r = ch.read(data);
+			while (true) {
+				if (frame.data == null) {
+					r = ch.read(frame.header);
+
+					if (r < 0 || frame.header.hasRemaining())
+						return r;
+
+					frame.header.flip();
+					int size = frame.header.getInt();
+					frame.header.clear();
+
+					if (size < 5 || size > maxBytesPerRequest)
+						throw new TransmissionException(
+								"request size %d is not in [5;%d]", size,
+								maxBytesPerRequest);
+
+					frame.data = ByteBuffer.allocate(size);
+					frame.data.putInt(size);
+				}
+
+				r = ch.read(frame.data);
+
+				if (r < 0 || frame.data.hasRemaining())
+					return r;
+
+				final ByteBuffer data = frame.data;
+				frame.data = null;
+				data.rewind();
+
+				//
+				// The frame is complete, so a failure of this request does not
+				// affect the following ones.
+				//
+				frame.lane.execute(new Runnable() {
+					public void run() {
+						try {
+							dataReceived(data);
+						} catch (TransmissionException e) {
+							Agency.getFaultManager().handle(e,
+									RAWTCPTransmitter.this);
+						}
+					}
+				});
+			}
 		} catch (IOException e) {
 			throw new TransmissionException(e);
 		}
-
-		if (!data.hasRemaining()) {
-			data.rewind();
-			dataReceived(data);
-			
-			return -1;
-		}
-
-		return r;
 	}
 
 	protected void dataReceived(ByteBuffer data) throws TransmissionException {
@@ -155,7 +182,8 @@ public class RAWTCPTransmitter extends Transmitter {
 	protected void requestDataReceived(ByteBuffer data)
 			throws TransmissionException {
 		Request r;
-		byte[] dataSource, dataTarget, dataCall, dataFuture, codingMethod, args;
+		byte[] dataSource, dataTarget, dataCall, codingMethod, args;
+		FutureId futureId;
 
 		dataSource = new byte[data.getInt()];
 		data.get(dataSource);
@@ -166,8 +194,7 @@ public class RAWTCPTransmitter extends Transmitter {
 		dataCall = new byte[data.getInt()];
 		data.get(dataCall);
 
-		dataFuture = new byte[data.getInt()];
-		data.get(dataFuture);
+		futureId = data.get() == 0 ? null : FutureId.readFrom(data);
 
 		codingMethod = new byte[data.getInt()];
 		data.get(codingMethod);
@@ -176,7 +203,7 @@ public class RAWTCPTransmitter extends Transmitter {
 		data.get(args);
 
 		URI source, target;
-		String call, futureId;
+		String call;
 		CodingMethod cm;
 
 		source = URI.create(new String(dataSource));
@@ -189,8 +216,6 @@ public class RAWTCPTransmitter extends Transmitter {
 			throw new TransmissionException(e);
 		}
 
-		futureId = dataFuture.length == 0 ? null : new String(dataFuture);
-
 		r = new Request(source, target, call, cm, args, futureId);
 
 		try {
@@ -204,10 +229,10 @@ public class RAWTCPTransmitter extends Transmitter {
 
 	protected void futureRequestDataReceived(ByteBuffer data)
 			throws TransmissionException {
-		byte[] dataId, dataTarget, codingMethod, dataValue;
+		byte[] dataTarget, codingMethod, dataValue;
+		FutureId id;
 
-		dataId = new byte[data.getInt()];
-		data.get(dataId);
+		id = FutureId.readFrom(data);
 
 		dataTarget = new byte[data.getInt()];
 		data.get(dataTarget);
@@ -218,12 +243,10 @@ public class RAWTCPTransmitter extends Transmitter {
 		dataValue = new byte[data.getInt()];
 		data.get(dataValue);
 
-		String id;
 		CodingMethod cm;
 		URI target;
 		FutureRequest r;
 
-		id = new String(dataId);
 		target = URI.create(new String(dataTarget));
 
 		try {
@@ -249,7 +272,8 @@ public class RAWTCPTransmitter extends Transmitter {
 		target = r.getTargetURI();
 		data = requestToBytes(r);
 
-		write(target, data);
+		send(new InetSocketAddress(target.getHost(), target.getPort()), data,
+				r.getFutureId());
 	}
 
 	/*
@@ -264,49 +288,15 @@ public class RAWTCPTransmitter extends Transmitter {
 		target = fr.getTarget();
 		data = requestToBytes(fr);
 
-		write(target, data);
-	}
-
-	protected void write(URI target, ByteBuffer data)
-			throws TransmissionException {
-		SocketChannel out;
-		InetSocketAddress socket;
-		TransmissionException ex = null;
-
-		socket = new InetSocketAddress(target.getHost(), target.getPort());
-
-		try {
-			out = SocketChannel.open();
-		} catch (IOException e) {
-			throw new TransmissionException(e);
-		}
-
-		try {
-			out.connect(socket);
-			out.finishConnect();
-			out.write(data);
-		} catch (IOException e) {
-			ex = new TransmissionException(e);
-		}
-
-		try {
-			out.close();
-		} catch (IOException e) {
-			if (ex != null)
-				throw ex;
-			throw new TransmissionException(e);
-		}
-
-		if (ex != null)
-			throw ex;
+		send(new InetSocketAddress(target.getHost(), target.getPort()), data,
+				null);
 	}
 
 	/**
 	 * <pre>
 	 * 4 bytes : full size of the request
 	 * 1 byte  : request type
-	 * 4 bytes : id size
-	 * x bytes : id
+	 * 16 bytes: future id
 	 * 4 bytes : target size
 	 * x bytes : target
 	 * 4 bytes : coding method size
@@ -319,15 +309,13 @@ public class RAWTCPTransmitter extends Transmitter {
 	 * @return
 	 */
 	protected ByteBuffer requestToBytes(FutureRequest r) {
-		byte[] dataId, dataTarget, dataValue, codingMethod;
-		int size = 1 + 5 * 4;
+		byte[] dataTarget, dataValue, codingMethod;
+		int size = 1 + 4 * 4 + FutureId.BYTES;
 
-		dataId = r.getFutureId().getBytes();
 		dataTarget = r.getTarget().toString().getBytes();
 		dataValue = r.getValue();
 		codingMethod = r.getCodingMethod().name().getBytes();
 
-		size += dataId.length;
 		size += dataTarget.length;
 		size += dataValue.length;
 		size += codingMethod.length;
@@ -336,8 +324,7 @@ public class RAWTCPTransmitter extends Transmitter {
 		buffer.putInt(size);
 		buffer.put(TYPE_FUTURE_REQUEST);
 
-		buffer.putInt(dataId.length);
-		buffer.put(dataId);
+		r.getFutureId().writeTo(buffer);
 
 		buffer.putInt(dataTarget.length);
 		buffer.put(dataTarget);
@@ -363,8 +350,8 @@ public class RAWTCPTransmitter extends Transmitter {
 	 * x bytes : target
 	 * 4 bytes : call size
 	 * x bytes : call
-	 * 4 bytes : future id size
-	 * x bytes : future id
+	 * 1 byte  : 1 if there is a future id, 0 else
+	 * 16 bytes: future id, if any
 	 * 4 bytes : coding method size
 	 * x bytes : coding method
 	 * 4 bytes : args size
@@ -375,25 +362,21 @@ public class RAWTCPTransmitter extends Transmitter {
 	 * @return
 	 */
 	protected ByteBuffer requestToBytes(Request r) {
-		byte[] dataSource, dataTarget, dataCall, dataFuture, args, codingMethod;
-		int size = 1 + 7 * Integer.SIZE / 8;
+		byte[] dataSource, dataTarget, dataCall, args, codingMethod;
+		FutureId futureId = r.getFutureId();
+		int size = 1 + 6 * Integer.SIZE / 8 + 1;
 
 		dataSource = r.getSourceURI().toString().getBytes();
 		dataTarget = r.getTargetURI().toString().getBytes();
 		dataCall = r.getCall().getBytes();
 
-		if (r.getFutureId() != null)
-			dataFuture = r.getFutureId().getBytes();
-		else
-			dataFuture = new byte[0];
-
 		args = r.getArgs();
 		codingMethod = r.getCodingMethod().name().getBytes();
 
 		size += dataSource.length;
 		size += dataTarget.length;
 		size += dataCall.length;
-		size += dataFuture.length;
+		size += futureId == null ? 0 : FutureId.BYTES;
 		size += args.length;
 		size += codingMethod.length;
 
@@ -410,8 +393,12 @@ public class RAWTCPTransmitter extends Transmitter {
 		buffer.putInt(dataCall.length);
 		buffer.put(dataCall);
 
-		buffer.putInt(dataFuture.length);
-		buffer.put(dataFuture);
+		if (futureId == null)
+			buffer.put((byte) 0);
+		else {
+			buffer.put((byte) 1);
+			futureId.writeTo(buffer);
+		}
 
 		buffer.putInt(codingMethod.length);
 		buffer.put(codingMethod);
@@ -20,10 +20,8 @@ package org.d3.protocol.xml;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SelectableChannel;
-import java.nio.channels.SocketChannel;
 
 import org.d3.Console;
 import org.d3.annotation.ActorPath;
@@ -45,17 +43,6 @@ public class XMLTCPTransmitter extends XMLTransmitter {
 		Console.info("channel is open ? %s", channel.isOpen());
 	}
 
-	protected void write(ByteBuffer data, String host, int port)
-			throws IOException {
-		InetSocketAddress socket = new InetSocketAddress(host, port);
-		SocketChannel out = SocketChannel.open();
-
-		out.connect(socket);
-		out.finishConnect();
-		out.write(data);
-		out.close();
-	}
-
 	public final SelectableChannel getChannel() {
 		return channel;
 	}
@@ -22,15 +22,15 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.nio.ByteBuffer;
-import java.nio.channels.Channel;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
 import java.nio.charset.Charset;
 import java.util.HashMap;
 
 import org.d3.Console;
 import org.d3.actor.Agency;
-import org.d3.actor.Protocol;
 import org.d3.protocol.FutureRequest;
+import org.d3.protocol.InboundLane;
 import org.d3.protocol.Request;
 import org.d3.protocol.TransmissionException;
 import org.d3.protocol.Transmitter;
@@ -42,6 +42,24 @@ import org.d3.template.Template;
 public abstract class XMLTransmitter extends Transmitter {
 	public static final int XML_PROTOCOL_PORT = 10001;
 
+	/*
+	 * Parser, lane and read buffer of a connection, attached to the key of the
+	 * connection. The buffer is used by the reactor, the parser by the tasks
+	 * of the lane.
+	 */
+	private static class Inbound {
+		final XMLStreamParser parser = new XMLStreamParser(
+				new XMLRequestHandler());
+		final ByteBuffer buffer = ByteBuffer.allocate(16 * 1024);
+		final InboundLane lane;
+		boolean failed;
+
+		Inbound(InboundLane lane) {
+			this.lane = lane;
+			this.failed = false;
+		}
+	}
+
 	// "<?xml version=\"1.0\" encoding=\"{%encoding%}\"?>\n"
 	protected static final String XML_REQUEST_TEMPLATE = "<request>\n"
 			+ " <source>{%source%}</source>\n"
@@ -54,8 +72,6 @@ public abstract class XMLTransmitter extends Transmitter {
 	private Template xmlRequestTemplate;
 	private Template xmlFutureTemplate;
 	private Charset charset;
-	private HashMap<Channel, XMLStreamParser> parsers;
-	private ByteBuffer readBuffer;
 
 	protected XMLTransmitter(String id, InetSocketAddress socketAddress) {
 		super("xml", id, socketAddress);
@@ -63,8 +79,6 @@ public abstract class XMLTransmitter extends Transmitter {
 		xmlRequestTemplate = new Template(XML_REQUEST_TEMPLATE);
 		xmlFutureTemplate = new Template(XML_FUTURE_TEMPLATE);
 		charset = Charset.defaultCharset();
-		parsers = new HashMap<Channel, XMLStreamParser>();
-		readBuffer = ByteBuffer.allocate(Protocol.REQUEST_MAX_SIZE);
 	}
 
 	protected ByteBuffer convert(Request r) {
@@ -76,7 +90,8 @@ public abstract class XMLTransmitter extends Transmitter {
 		env.put("call", r.getCall());
 		env.put("coding_method", r.getCodingMethod().name());
 		env.put("args", new String(r.getArgs()));
-		env.put("future", r.getFutureId());
+		env.put("future", r.getFutureId() == null ? "" : r.getFutureId()
+				.toString());
 
 		return charset.encode(xmlRequestTemplate.toString(env));
 	}
@@ -84,7 +99,7 @@ public abstract class XMLTransmitter extends Transmitter {
 	protected ByteBuffer convert(FutureRequest fr) {
 		HashMap<String, String> env = new HashMap<String, String>();
 
-		env.put("id", fr.getFutureId());
+		env.put("id", fr.getFutureId().toString());
 		env.put("coding", fr.getCodingMethod().name());
 		env.put("value", new String(fr.getValue()));
 		env.put("target", fr.getTarget().toString());
@@ -92,9 +107,6 @@ public abstract class XMLTransmitter extends Transmitter {
 		return charset.encode(xmlFutureTemplate.toString(env));
 	}
 
-	protected abstract void write(ByteBuffer data, String host, int port)
-			throws IOException;
-
 	@Override
 	public CodingMethod getPreferredCodingMethod() {
 		return CodingMethod.HEXABYTES;
@@ -103,27 +115,20 @@ public abstract class XMLTransmitter extends Transmitter {
 	/*
 	 * (non-Javadoc)
 	 * 
-	 * @see org.d3.protocol.Transmitter#close(java.nio.channels.Channel)
-	 */
-	public void close(Channel ch) {
-		if (parsers.containsKey(ch))
-			parsers.remove(ch);
-	}
-
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see
-	 * org.d3.protocol.Transmitter#read(java.nio.channels.ReadableByteChannel)
+	 * @see org.d3.protocol.Transmitter#read(java.nio.channels.SelectionKey)
 	 */
-	public int read(ReadableByteChannel ch) {
+	public int read(SelectionKey key) {
 		checkProtocolThreadAccess();
 
-		if (!parsers.containsKey(ch))
-			parsers.put(ch, new XMLStreamParser(new XMLRequestHandler()));
+		ReadableByteChannel ch = (ReadableByteChannel) key.channel();
+		Inbound inbound = (Inbound) key.attachment();
 
-		XMLStreamParser stream = parsers.get(ch);
-		XMLRequestHandler handler = (XMLRequestHandler) stream.getHandler();
+		if (inbound == null) {
+			inbound = new Inbound(newInboundLane(key));
+			key.attach(inbound);
+		}
+
+		ByteBuffer readBuffer = inbound.buffer;
 
 		int r = -1;
 
@@ -131,31 +136,50 @@ public abstract class XMLTransmitter extends Transmitter {
 			readBuffer.clear();
 			r = ch.read(readBuffer);
 			readBuffer.flip();
-
-			Charset cs = Charset.defaultCharset();
-			stream.parse(cs.decode(readBuffer));
 		} catch (IOException e) {
 			Console.error("error while reading");
 			Console.error("close the channel %s", ch.toString());
 
-			close(ch);
+			close(key);
+			return r;
+		}
 
-			try {
-				ch.close();
-			} catch (IOException e1) {
-				Agency.getFaultManager().handle(e, this);
-			}
+		if (readBuffer.hasRemaining()) {
+			final byte[] chunk = new byte[readBuffer.remaining()];
+			final Inbound state = inbound;
+			final SelectionKey k = key;
+
+			readBuffer.get(chunk);
+
+			inbound.lane.execute(new Runnable() {
+				public void run() {
+					parse(k, state, chunk);
+				}
+			});
+		}
+
+		return r;
+	}
+
+	/*
+	 * Parse a chunk read on a connection and dispatch the requests it
+	 * completes. This is run in the lane of the connection.
+	 */
+	private void parse(SelectionKey key, Inbound inbound, byte[] chunk) {
+		XMLStreamParser stream = inbound.parser;
+		XMLRequestHandler handler = (XMLRequestHandler) stream.getHandler();
+
+		if (inbound.failed)
+			return;
+
+		try {
+			stream.parse(charset.decode(ByteBuffer.wrap(chunk)));
 		} catch (XMLParseException e) {
 			Console.error("parse error while reading : %s", e.getMessage());
-			Console.error("close the channel %s", ch.toString());
+			Console.error("close the channel %s", key.channel().toString());
 
-			close(ch);
-
-			try {
-				ch.close();
-			} catch (IOException e1) {
-				Agency.getFaultManager().handle(e, this);
-			}
+			inbound.failed = true;
+			close(key);
 		}
 
 		try {
@@ -169,8 +193,16 @@ public abstract class XMLTransmitter extends Transmitter {
 		} catch (Exception e) {
 			Agency.getFaultManager().handle(e, null);
 		}
+	}
 
-		return r;
+	private void close(SelectionKey key) {
+		key.cancel();
+
+		try {
+			key.channel().close();
+		} catch (IOException e) {
+			Agency.getFaultManager().handle(e, this);
+		}
 	}
 
 	/*
@@ -182,11 +214,8 @@ public abstract class XMLTransmitter extends Transmitter {
 		ByteBuffer data = convert(request);
 		URI target = request.getTargetURI();
 
-		try {
-			write(data, target.getHost(), target.getPort());
-		} catch (IOException e) {
-			throw new TransmissionException(e);
-		}
+		send(new InetSocketAddress(target.getHost(), target.getPort()), data,
+				request.getFutureId());
 	}
 
 	/*
@@ -198,10 +227,7 @@ public abstract class XMLTransmitter extends Transmitter {
 		ByteBuffer data = convert(request);
 		URI target = request.getTarget();
 
-		try {
-			write(data, target.getHost(), target.getPort());
-		} catch (IOException e) {
-			throw new TransmissionException(e);
-		}
+		send(new InetSocketAddress(target.getHost(), target.getPort()), data,
+				null);
 	}
 }
@@ -20,7 +20,6 @@ package org.d3.protocol.xml;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.SelectableChannel;
 
@@ -43,14 +42,23 @@ public class XMLUDPTransmitter extends XMLTransmitter {
 		channel.socket().bind(socketAddress);
 	}
 
-	protected void write(ByteBuffer data, String host, int port)
+	/**
+	 * Outgoing requests are sent as datagrams, on a connected datagram channel
+	 * per remote endpoint.
+	 */
+	protected SelectableChannel openOutbound(InetSocketAddress address)
 			throws IOException {
-		InetSocketAddress socket = new InetSocketAddress(host, port);
-
 		DatagramChannel out = DatagramChannel.open();
-		out.connect(socket);
-		out.write(data);
-		out.close();
+
+		try {
+			out.configureBlocking(false);
+			out.connect(address);
+		} catch (IOException e) {
+			out.close();
+			throw e;
+		}
+
+		return out;
 	}
 
 	public final SelectableChannel getChannel() {
@@ -24,6 +24,7 @@ import java.util.LinkedList;
 import java.util.Stack;
 
 import org.d3.actor.Agency;
+import org.d3.actor.FutureId;
 import org.d3.protocol.FutureRequest;
 import org.d3.protocol.Request;
 import org.d3.protocol.request.ObjectCoder.CodingMethod;
@@ -38,6 +39,15 @@ public class XMLRequestHandler implements Handler {
 		REQUEST, SOURCE, TARGET, CALL, ARGS, FUTURE, CODING, ID, _TEXT_
 	}
 
+	protected static FutureId parseFutureId(String id) {
+		try {
+			return FutureId.valueOf(id);
+		} catch (NumberFormatException e) {
+			Agency.getFaultManager().handle(e, null);
+			return null;
+		}
+	}
+
 	protected static class RequestData {
 		URI source;
 		URI target;
@@ -92,7 +102,7 @@ public class XMLRequestHandler implements Handler {
 
 		Request get() {
 			return new Request(source, target, name, cm, args == null ? null
-					: args.getBytes(), futureId);
+					: args.getBytes(), parseFutureId(futureId));
 		}
 
 		void clear() {
@@ -139,8 +149,8 @@ public class XMLRequestHandler implements Handler {
 		}
 
 		FutureRequest get() {
-			return new FutureRequest(futureId, coding, value == null ? null
-					: value.getBytes(), target);
+			return new FutureRequest(parseFutureId(futureId), coding,
+					value == null ? null : value.getBytes(), target);
 		}
 
 		void clear() {
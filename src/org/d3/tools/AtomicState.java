@@ -20,16 +20,30 @@ package org.d3.tools;
 
 import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * State shared between threads. Threads can wait until the state reaches a
+ * given value, states being ordered as their enum constants. Waiting threads
+ * are woken up by the change of state, the monitor is only used when threads
+ * are waiting.
+ * 
+ * @author Guilhelm Savin
+ */
 public class AtomicState<K extends Enum<K>> {
 	AtomicReference<K> reference;
+	/**
+	 * Count of threads waiting for a state.
+	 */
+	private volatile int waiters;
 
 	public AtomicState(Class<? extends K> cls, K init) {
 		reference = new AtomicReference<K>(init);
+		waiters = 0;
 	}
 
 	public void set(K k) {
-		reference.set(k);
-		
+		if (reference.getAndSet(k) == k || waiters == 0)
+			return;
+
 		synchronized (reference) {
 			reference.notifyAll();
 		}
@@ -42,12 +56,18 @@ public class AtomicState<K extends Enum<K>> {
 	public K waitForState(K s) throws InterruptedException {
 		K k = reference.get();
 
-		while (k.ordinal() < s.ordinal()) {
-			synchronized (reference) {
-					reference.wait(1000);
+		if (k.ordinal() >= s.ordinal())
+			return k;
+
+		synchronized (reference) {
+			waiters++;
+
+			try {
+				while ((k = reference.get()).ordinal() < s.ordinal())
+					reference.wait();
+			} finally {
+				waiters--;
 			}
-			
-			k = reference.get();
 		}
 
 		return k;
@@ -19,65 +19,103 @@
 package org.d3.tools;
 
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.d3.actor.CallException;
 import org.d3.actor.Future;
+import org.d3.actor.FutureListener;
 
-public class FutureGroup implements Iterable<Future> {
+/**
+ * Group of futures, completed when a count of futures are available or, with
+ * the WAIT_FOR_ALL policy, when all the futures of the group are available.
+ * 
+ * Completion is driven by the listeners of the futures. A WAIT_FOR_ALL group
+ * is closed when its completion is requested, through {@link #await()} or
+ * {@link #getFuture()}, and no more future can be put in it.
+ */
+public class FutureGroup implements Iterable<Future>, FutureListener {
 	public static enum Policy {
 		WAIT_FOR_ONE, WAIT_FOR_ALL
 	}
 
-	CountDownLatch latch;
-	LinkedList<Future> futures;
+	final int required;
+	final ConcurrentLinkedQueue<Future> futures;
+	final AtomicInteger size;
+	final AtomicInteger available;
+	volatile boolean closed;
+	volatile Future done;
 
 	public FutureGroup(int n) {
-		futures = new LinkedList<Future>();
-		latch = n > 0 ? new CountDownLatch(n) : null;
+		futures = new ConcurrentLinkedQueue<Future>();
+		size = new AtomicInteger(0);
+		available = new AtomicInteger(0);
+		required = n;
+		closed = false;
+		done = null;
 	}
 
 	public FutureGroup(Policy p) {
-		futures = new LinkedList<Future>();
-
-		switch (p) {
-		case WAIT_FOR_ONE:
-			latch = new CountDownLatch(1);
-			break;
-		case WAIT_FOR_ALL:
-			break;
-		}
+		this(p == Policy.WAIT_FOR_ONE ? 1 : 0);
 	}
 
 	public void put(Future f) {
-		synchronized (futures) {
-			futures.add(f);
-		}
+		if (required <= 0 && closed)
+			throw new IllegalStateException("group is closed");
 
-		if (latch != null)
-			f.putLatch(latch);
+		futures.add(f);
+		size.incrementAndGet();
+		f.onComplete(this);
 	}
 
-	public void await() throws InterruptedException {
-		if (latch == null) {
-			while (futures.size() > 0) {
-				synchronized (futures) {
-					Future f = futures.poll();
-					f.waitForValue();
+	public void futureAvailable(Future future) {
+		available.incrementAndGet();
+		checkDone();
+	}
+
+	/**
+	 * Get a future initialized once the group is complete. This can be used to
+	 * register listeners rather than waiting.
+	 * 
+	 * @return the future of the group
+	 */
+	public Future getFuture() {
+		if (done == null) {
+			synchronized (this) {
+				if (done == null) {
+					done = new Future();
+					closed = true;
 				}
 			}
-		} else {
-			latch.await();
 		}
+
+		checkDone();
+
+		return done;
+	}
+
+	public void await() throws InterruptedException {
+		getFuture().waitForValue();
 	}
 	
 	public void check() throws CallException, InterruptedException {
-		for (int i = 0; i < futures.size(); i++)
-			futures.get(i).getValue();
+		for (Future f : futures)
+			f.getValue();
 	}
 	
 	public Iterator<Future> iterator() {
 		return futures.iterator();
 	}
+
+	private void checkDone() {
+		Future d = done;
+
+		if (d == null || d.isAvailable())
+			return;
+
+		int target = required > 0 ? required : size.get();
+
+		if (available.get() >= target)
+			d.init(Future.SpecialReturn.VOID);
+	}
 }
@@ -21,16 +21,20 @@ package org.d3.tools;
 import java.util.concurrent.BlockingQueue;
 
 import org.d3.actor.Future;
+import org.d3.actor.FutureListener;
 
-public class FutureToQueue extends Future {
+/**
+ * Future which puts itself in a queue once initialized.
+ */
+public class FutureToQueue extends Future implements FutureListener {
 	BlockingQueue<Future> queue;
 	
 	public FutureToQueue(BlockingQueue<Future> queue) {
 		this.queue = queue;
+		onComplete(this);
 	}
 	
-	public void init(Object o) {
-		super.init(o);
+	public void futureAvailable(Future future) {
 		queue.offer(this);
 	}
 }
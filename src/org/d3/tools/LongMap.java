@@ -0,0 +1,201 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.tools;
+
+/**
+ * Concurrent map using primitive long keys. Keys are not boxed and lookups do
+ * not allocate. The map is split in stripes, each one being an open-addressing
+ * table protected by its own lock. Null values are not allowed.
+ * 
+ * @param <V>
+ *            type of values
+ */
+public class LongMap<V> {
+	private static final int STRIPES = 16;
+	private static final int INITIAL_CAPACITY = 16;
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	private static final class Stripe {
+		long[] keys;
+		Object[] values;
+		int size;
+
+		Stripe() {
+			keys = new long[INITIAL_CAPACITY];
+			values = new Object[INITIAL_CAPACITY];
+			size = 0;
+		}
+
+		int slot(long key) {
+			return (hash(key) >>> 4) & (keys.length - 1);
+		}
+
+		int indexOf(long key) {
+			int mask = keys.length - 1;
+			int i = slot(key);
+
+			while (values[i] != null) {
+				if (keys[i] == key)
+					return i;
+
+				i = (i + 1) & mask;
+			}
+
+			return -1 - i;
+		}
+
+		synchronized Object get(long key) {
+			int i = indexOf(key);
+			return i < 0 ? null : values[i];
+		}
+
+		synchronized Object put(long key, Object value, boolean onlyIfAbsent) {
+			int i = indexOf(key);
+
+			if (i >= 0) {
+				Object old = values[i];
+
+				if (!onlyIfAbsent)
+					values[i] = value;
+
+				return old;
+			}
+
+			if ((size + 1) * 4 > keys.length * 3) {
+				resize();
+				i = indexOf(key);
+			}
+
+			i = -1 - i;
+			keys[i] = key;
+			values[i] = value;
+			size++;
+
+			return null;
+		}
+
+		synchronized Object remove(long key) {
+			int i = indexOf(key);
+
+			if (i < 0)
+				return null;
+
+			Object old = values[i];
+			int mask = keys.length - 1;
+			int j = i;
+
+			values[i] = null;
+			size--;
+
+			//
+			// Shift back the following entries of the cluster so lookups do
+			// not stop on the freed slot.
+			//
+			while (true) {
+				j = (j + 1) & mask;
+
+				if (values[j] == null)
+					break;
+
+				int k = slot(keys[j]);
+
+				if ((j > i && (k <= i || k > j)) || (j < i && k <= i && k > j)) {
+					keys[i] = keys[j];
+					values[i] = values[j];
+					values[j] = null;
+					i = j;
+				}
+			}
+
+			return old;
+		}
+
+		synchronized int size() {
+			return size;
+		}
+
+		private void resize() {
+			long[] oldKeys = keys;
+			Object[] oldValues = values;
+
+			keys = new long[oldKeys.length << 1];
+			values = new Object[oldValues.length << 1];
+
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldValues[i] != null) {
+					int j = -1 - indexOf(oldKeys[i]);
+					keys[j] = oldKeys[i];
+					values[j] = oldValues[i];
+				}
+			}
+		}
+	}
+
+	private final Stripe[] stripes;
+
+	public LongMap() {
+		stripes = new Stripe[STRIPES];
+
+		for (int i = 0; i < STRIPES; i++)
+			stripes[i] = new Stripe();
+	}
+
+	private Stripe stripe(long key) {
+		return stripes[hash(key) & (STRIPES - 1)];
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		return (V) stripe(key).get(key);
+	}
+
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		if (value == null)
+			throw new NullPointerException();
+
+		return (V) stripe(key).put(key, value, false);
+	}
+
+	@SuppressWarnings("unchecked")
+	public V putIfAbsent(long key, V value) {
+		if (value == null)
+			throw new NullPointerException();
+
+		return (V) stripe(key).put(key, value, true);
+	}
+
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		return (V) stripe(key).remove(key);
+	}
+
+	public int size() {
+		int size = 0;
+
+		for (int i = 0; i < STRIPES; i++)
+			size += stripes[i].size();
+
+		return size;
+	}
+}
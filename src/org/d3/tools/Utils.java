@@ -18,6 +18,7 @@
  */
 package org.d3.tools;
 
+import java.lang.reflect.InvocationTargetException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.NetworkInterface;
@@ -34,6 +35,41 @@ import org.d3.remote.RemotePort;
 import org.d3.remote.UnknownAgencyException;
 
 public class Utils {
+	/**
+	 * Create an instance of a class generated at build time for another class.
+	 * The generated class is in the same package, its name is the binary name
+	 * of the class, '$' replaced by '_', followed by a suffix.
+	 * 
+	 * @param cls
+	 *            the class for which the class has been generated
+	 * @param suffix
+	 *            suffix of the generated class
+	 * @param type
+	 *            expected type of the instance
+	 * @return an instance of the generated class, or null if there is not
+	 */
+	public static <T> T newGeneratedInstance(Class<?> cls, String suffix,
+			Class<T> type) {
+		String name = cls.getName();
+		int dot = name.lastIndexOf('.');
+		String generated = name.substring(0, dot + 1)
+				+ name.substring(dot + 1).replace('$', '_') + suffix;
+
+		try {
+			Class<?> gen = Class.forName(generated, true, cls.getClassLoader());
+
+			if (type.isAssignableFrom(gen))
+				return type.cast(gen.getDeclaredConstructor().newInstance());
+		} catch (ClassNotFoundException e) {
+		} catch (NoSuchMethodException e) {
+		} catch (InstantiationException e) {
+		} catch (IllegalAccessException e) {
+		} catch (InvocationTargetException e) {
+		}
+
+		return null;
+	}
+
 	public static RemotePort getRandomRemotePortFromRemoteAgency(
 			InetAddress address, String agencyId) throws HostNotFoundException,
 			UnknownAgencyException, NoRemotePortAvailableException {
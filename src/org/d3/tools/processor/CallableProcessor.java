@@ -0,0 +1,374 @@
+/*
+ * This file is part of d3 <http://d3-project.org>.
+ * 
+ * d3 is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * d3 is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with d3.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Copyright 2010 - 2011 Guilhelm Savin
+ */
+package org.d3.tools.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Annotation processor generating, at build time, the code which is else
+ * created at runtime using javassist or reflection. For each actor class
+ * declaring callables, it generates <code>Actor_Callables</code>, the call
+ * routines of the callables declared by the class, used by the body map. For
+ * each entity class declaring migratable fields, it generates
+ * <code>Entity_Migration</code>, the accessors of the non-private fields used
+ * by the IO map.
+ * 
+ * Generated classes are in the package of the class, their name is the binary
+ * name of the class, '$' replaced by '_', followed by the suffix. Classes
+ * without generated code still work, routines and accessors are then created
+ * at runtime.
+ * 
+ * The processor does not depend on the d3 classes, so it can be compiled
+ * before them.
+ * 
+ * @author Guilhelm Savin
+ * @see org.d3.actor.body.BodyMap
+ * @see org.d3.entity.migration.IOMap
+ */
+@SupportedAnnotationTypes( { CallableProcessor.CALLABLE,
+		CallableProcessor.MIGRATABLE })
+public class CallableProcessor extends AbstractProcessor {
+	static final String CALLABLE = "org.d3.annotation.Callable";
+	static final String MIGRATABLE = "org.d3.entity.Migratable";
+
+	static final String ROUTINES_SUFFIX = "_Callables";
+	static final String MIGRATION_SUFFIX = "_Migration";
+
+	private static final String CALL_ROUTINE = "org.d3.actor.body.BodyMap.CallRoutine";
+	private static final String ROUTINE_PROVIDER = "org.d3.actor.body.BodyMap.RoutineProvider";
+	private static final String CALL_EXCEPTION = "org.d3.actor.CallException";
+	private static final String FIELD_ACCESSOR = "org.d3.entity.migration.IOMap.FieldAccessor";
+	private static final String ACCESSOR_PROVIDER = "org.d3.entity.migration.IOMap.AccessorProvider";
+	private static final String ENTITY = "org.d3.actor.Entity";
+
+	private final Set<String> generated = new HashSet<String>();
+
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	public boolean process(Set<? extends TypeElement> annotations,
+			RoundEnvironment roundEnv) {
+		TypeElement callable = processingEnv.getElementUtils().getTypeElement(
+				CALLABLE);
+		TypeElement migratable = processingEnv.getElementUtils()
+				.getTypeElement(MIGRATABLE);
+
+		LinkedHashSet<TypeElement> actors = new LinkedHashSet<TypeElement>();
+		LinkedHashSet<TypeElement> entities = new LinkedHashSet<TypeElement>();
+
+		if (callable != null) {
+			for (Element e : roundEnv.getElementsAnnotatedWith(callable)) {
+				if (e.getKind() == ElementKind.METHOD)
+					actors.add((TypeElement) e.getEnclosingElement());
+			}
+		}
+
+		if (migratable != null) {
+			for (Element e : roundEnv.getElementsAnnotatedWith(migratable)) {
+				if (e.getKind() == ElementKind.FIELD)
+					entities.add((TypeElement) e.getEnclosingElement());
+			}
+		}
+
+		for (TypeElement type : actors) {
+			if (isAccessible(type))
+				generateRoutines(type);
+		}
+
+		for (TypeElement type : entities) {
+			if (isAccessible(type))
+				generateMigration(type);
+		}
+
+		return false;
+	}
+
+	/*
+	 * Generated classes are in the package of the type, so the type can not be
+	 * private or local.
+	 */
+	private boolean isAccessible(TypeElement type) {
+		Element e = type;
+
+		while (e instanceof TypeElement) {
+			TypeElement t = (TypeElement) e;
+
+			if (t.getModifiers().contains(Modifier.PRIVATE))
+				return false;
+
+			if (t.getNestingKind() == NestingKind.LOCAL
+					|| t.getNestingKind() == NestingKind.ANONYMOUS)
+				return false;
+
+			e = t.getEnclosingElement();
+		}
+
+		return true;
+	}
+
+	private void generateRoutines(TypeElement type) {
+		List<ExecutableElement> methods = new ArrayList<ExecutableElement>();
+		List<String> names = new ArrayList<String>();
+
+		for (ExecutableElement m : ElementFilter.methodsIn(type
+				.getEnclosedElements())) {
+			String name = getCallableName(m);
+
+			if (name != null && m.getModifiers().contains(Modifier.PUBLIC)
+					&& !names.contains(name)) {
+				methods.add(m);
+				names.add(name);
+			}
+		}
+
+		if (methods.isEmpty())
+			return;
+
+		PrintWriter out = open(type, ROUTINES_SUFFIX);
+
+		if (out == null)
+			return;
+
+		String target = erasure(type.asType());
+
+		out.printf("public final class %s implements %s {%n",
+				generatedName(type, ROUTINES_SUFFIX), ROUTINE_PROVIDER);
+
+		for (int i = 0; i < methods.size(); i++) {
+			ExecutableElement m = methods.get(i);
+			StringBuilder args = new StringBuilder();
+			List<? extends VariableElement> params = m.getParameters();
+
+			for (int j = 0; j < params.size(); j++) {
+				if (j > 0)
+					args.append(", ");
+
+				args.append(String.format("(%s) args[%d]", boxed(params.get(j)
+						.asType()), j));
+			}
+
+			out.printf("%n\tstatic final class Routine%d implements %s {%n", i,
+					CALL_ROUTINE);
+			out.printf("\t\tpublic Object call(Object target, Object[] args) {%n");
+			out.printf("\t\t\ttry {%n");
+
+			if (m.getReturnType().getKind() == TypeKind.VOID) {
+				out.printf("\t\t\t\t((%s) target).%s(%s);%n", target, m
+						.getSimpleName(), args);
+				out.printf("\t\t\t\treturn Boolean.TRUE;%n");
+			} else {
+				out.printf("\t\t\t\treturn ((%s) target).%s(%s);%n", target,
+						m.getSimpleName(), args);
+			}
+
+			out.printf("\t\t\t} catch (Exception e) {%n");
+			out.printf("\t\t\t\treturn new %s(e);%n", CALL_EXCEPTION);
+			out.printf("\t\t\t}%n");
+			out.printf("\t\t}%n\t}%n");
+		}
+
+		out.printf("%n\tpublic %s getRoutine(String name) {%n", CALL_ROUTINE);
+
+		for (int i = 0; i < methods.size(); i++) {
+			out.printf("\t\tif (%s.equals(name))%n", literal(names.get(i)));
+			out.printf("\t\t\treturn new Routine%d();%n", i);
+		}
+
+		out.printf("%n\t\treturn null;%n\t}%n}%n");
+		out.close();
+	}
+
+	private void generateMigration(TypeElement type) {
+		TypeElement migratable = processingEnv.getElementUtils()
+				.getTypeElement(MIGRATABLE);
+		List<VariableElement> fields = new ArrayList<VariableElement>();
+
+		for (VariableElement f : ElementFilter.fieldsIn(type
+				.getEnclosedElements())) {
+			Set<Modifier> mods = f.getModifiers();
+
+			if (getAnnotation(f, migratable) != null
+					&& !mods.contains(Modifier.PRIVATE)
+					&& !mods.contains(Modifier.FINAL)
+					&& !mods.contains(Modifier.STATIC))
+				fields.add(f);
+		}
+
+		if (fields.isEmpty())
+			return;
+
+		PrintWriter out = open(type, MIGRATION_SUFFIX);
+
+		if (out == null)
+			return;
+
+		String target = erasure(type.asType());
+
+		out.printf("@SuppressWarnings(\"unchecked\")%n");
+		out.printf("public final class %s implements %s {%n", generatedName(
+				type, MIGRATION_SUFFIX), ACCESSOR_PROVIDER);
+
+		for (int i = 0; i < fields.size(); i++) {
+			VariableElement f = fields.get(i);
+			TypeMirror t = f.asType();
+
+			out.printf("%n\tstatic final class Field%d implements %s {%n", i,
+					FIELD_ACCESSOR);
+			out.printf("\t\tpublic Object get(%s target) {%n", ENTITY);
+			out.printf("\t\t\treturn ((%s) target).%s;%n\t\t}%n%n", target, f
+					.getSimpleName());
+			out.printf("\t\tpublic void set(%s target, Object value) {%n",
+					ENTITY);
+
+			if (t.getKind().isPrimitive()) {
+				out.printf("\t\t\tif (value == null)%n");
+				out.printf("\t\t\t\tthrow new IllegalArgumentException(%s);%n",
+						literal("null value for " + f.getSimpleName()));
+			}
+
+			out.printf("\t\t\t((%s) target).%s = (%s) value;%n\t\t}%n\t}%n",
+					target, f.getSimpleName(), boxed(t));
+		}
+
+		out.printf("%n\tpublic %s getAccessor(String field) {%n",
+				FIELD_ACCESSOR);
+
+		for (int i = 0; i < fields.size(); i++) {
+			out.printf("\t\tif (%s.equals(field))%n", literal(fields.get(i)
+					.getSimpleName().toString()));
+			out.printf("\t\t\treturn new Field%d();%n", i);
+		}
+
+		out.printf("%n\t\treturn null;%n\t}%n}%n");
+		out.close();
+	}
+
+	/*
+	 * Create the source file of a generated class and write its header. Return
+	 * null if the class has already been generated or can not be created.
+	 */
+	private PrintWriter open(TypeElement type, String suffix) {
+		PackageElement pkg = processingEnv.getElementUtils().getPackageOf(
+				type);
+		String name = generatedName(type, suffix);
+		String qualified = pkg.isUnnamed() ? name : pkg.getQualifiedName()
+				+ "." + name;
+
+		if (!generated.add(qualified))
+			return null;
+
+		try {
+			PrintWriter out = new PrintWriter(processingEnv.getFiler()
+					.createSourceFile(qualified, type).openWriter());
+
+			if (!pkg.isUnnamed())
+				out.printf("package %s;%n%n", pkg.getQualifiedName());
+
+			out.printf("/**%n * Generated by %s from %s, do not edit.%n */%n",
+					getClass().getName(), type.getQualifiedName());
+
+			return out;
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+					"unable to generate " + qualified + " : " + e.getMessage(),
+					type);
+			return null;
+		}
+	}
+
+	private String generatedName(TypeElement type, String suffix) {
+		String binary = processingEnv.getElementUtils().getBinaryName(type)
+				.toString();
+		return binary.substring(binary.lastIndexOf('.') + 1).replace('$', '_')
+				+ suffix;
+	}
+
+	private String getCallableName(ExecutableElement m) {
+		TypeElement callable = processingEnv.getElementUtils().getTypeElement(
+				CALLABLE);
+		AnnotationMirror am = getAnnotation(m, callable);
+
+		if (am == null)
+			return null;
+
+		for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> e : am
+				.getElementValues().entrySet()) {
+			if (e.getKey().getSimpleName().contentEquals("value"))
+				return String.valueOf(e.getValue().getValue());
+		}
+
+		return null;
+	}
+
+	private AnnotationMirror getAnnotation(Element e, TypeElement annotation) {
+		if (annotation == null)
+			return null;
+
+		for (AnnotationMirror am : e.getAnnotationMirrors()) {
+			if (am.getAnnotationType().asElement().equals(annotation))
+				return am;
+		}
+
+		return null;
+	}
+
+	private String erasure(TypeMirror t) {
+		return processingEnv.getTypeUtils().erasure(t).toString();
+	}
+
+	private String boxed(TypeMirror t) {
+		if (t.getKind().isPrimitive())
+			return processingEnv.getTypeUtils().boxedClass((PrimitiveType) t)
+					.getQualifiedName().toString();
+
+		return erasure(t);
+	}
+
+	private static String literal(String s) {
+		return "\"" + s.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+}